@@ -0,0 +1,31 @@
+package ir;
+
+import java.io.IOException;
+import java.nio.file.*;
+
+/**
+ * Indice di prova per i benchmark di lettura e ricerca: collezione Zipf scritta in una cartella
+ * temporanea e indicizzata come fa "Main index" (stop list vuota, top 1% per frequenza come stop words).
+ */
+final class BenchIndex {
+    private BenchIndex() {}
+
+    /**
+     * Scrive docs documenti di corpus in dir/data e ne costruisce l'indice in dir.
+     * @param legacy scrive anche il vecchio index.dict testuale (per IndexIO.load)
+     */
+    static IndexFiles build(ZipfCorpus corpus, int docs, Path dir, boolean legacy) throws IOException {
+        Path data = dir.resolve("data");
+        corpus.write(data, docs);
+        IndexFiles files = IndexFiles.in(dir);
+        Indexer indexer = new Indexer(dir.resolve("stoplist.txt"), 1.0); // file assente = stop list vuota
+        indexer.build(data);
+        BinaryIndexWriter.write(indexer.index, files);
+        if (legacy) IndexIO.save(indexer.index, files.legacyDict());
+        IndexIO.saveDocs(indexer.docTable, files.docs());
+        IndexIO.saveCF(indexer.collectionFreq, files.cf());
+        DocLengths.of(indexer.docLengths).save(files.lengths());
+        IndexIO.saveStopWords(files);
+        return files;
+    }
+}
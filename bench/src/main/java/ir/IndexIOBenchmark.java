@@ -0,0 +1,57 @@
+package ir;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Apertura di un indice su disco: il binario mappato (IndexIO.openIndex, non legge le posting
+ * list né i termini nello heap), il vecchio index.dict testuale caricato per intero (IndexIO.load)
+ * e la tabella dei documenti (IndexIO.loadDocs), che si legge a ogni apertura.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IndexIOBenchmark {
+    @Param({"1000", "10000"})
+    public int docs;
+
+    private Path dir;
+    private IndexFiles files;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("ir-bench-index");
+        files = BenchIndex.build(new ZipfCorpus(42), docs, dir, true);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        ZipfCorpus.delete(dir);
+    }
+
+    @Benchmark
+    public int openIndex() throws IOException {
+        Map<String, PostingList> index = IndexIO.openIndex(files);
+        int size = index.size();
+        if (index instanceof Closeable c) c.close();
+        return size;
+    }
+
+    @Benchmark
+    public Map<String, PostingList> load() throws IOException {
+        return IndexIO.load(files.legacyDict());
+    }
+
+    @Benchmark
+    public Map<Integer, String> loadDocs() throws IOException {
+        return IndexIO.loadDocs(files.docs());
+    }
+}
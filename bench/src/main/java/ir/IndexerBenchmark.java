@@ -0,0 +1,55 @@
+package ir;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Indexer.build (due passate: frequenze per le stop words, poi posting list) su una collezione
+ * Zipf scritta una volta per trial in una cartella temporanea. La scrittura su disco dell'indice
+ * non è misurata. Nota: come "Main index", build aggiorna stop_by_freq.cache nella cartella corrente.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class IndexerBenchmark {
+    /** Documenti nella collezione (200 token in media). */
+    @Param({"1000", "10000"})
+    public int docs;
+
+    /** Thread di indicizzazione (1 per confronti stabili tra macchine; -p threads=N per il parallelo). */
+    @Param({"1"})
+    public int threads;
+
+    /** Passata unica invece di due (--single-pass). */
+    @Param({"false", "true"})
+    public boolean singlePass;
+
+    private Path dir;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("ir-bench-data");
+        new ZipfCorpus(42).write(dir, docs);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        ZipfCorpus.delete(dir);
+    }
+
+    @Benchmark
+    public Map<String, PostingList> build() throws IOException {
+        Indexer indexer = new Indexer(dir.resolve("stoplist.txt"), 1.0); // file assente = stop list vuota
+        indexer.setThreads(threads);
+        indexer.setSinglePass(singlePass);
+        indexer.build(dir);
+        return indexer.index;
+    }
+}
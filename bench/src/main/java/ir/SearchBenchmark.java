@@ -0,0 +1,81 @@
+package ir;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Retriever.searchAnd / searchOr su un indice mappato con la PostingCache (come "serve"),
+ * interrogato con un log di query Zipf. Senza QueryCache: ogni operazione valuta la query.
+ * L'indice è condiviso tra i thread (-t N), ogni thread ha il suo Retriever come negli IndexSnapshot.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBenchmark {
+    private static final int QUERIES = 1 << 12;
+
+    /** Indice e log di query, costruiti una volta per trial e condivisi dai thread. */
+    @State(Scope.Benchmark)
+    public static class Index {
+        @Param({"1000", "10000"})
+        public int docs;
+
+        /** Termini per query. */
+        @Param({"2", "4"})
+        public int queryLength;
+
+        private Path dir;
+        Map<String, PostingList> index;
+        Map<Integer, String> docTable;
+        StopWords stopWords;
+        DocLengths lengths;
+        String[] queries;
+
+        @Setup(Level.Trial)
+        public void setup() throws IOException {
+            dir = Files.createTempDirectory("ir-bench-search");
+            ZipfCorpus corpus = new ZipfCorpus(42);
+            IndexFiles files = BenchIndex.build(corpus, docs, dir, false);
+            index = IndexIO.openIndex(files, new PostingCache(256L << 20));
+            docTable = IndexIO.loadDocs(files.docs());
+            stopWords = IndexIO.loadStopWords(files);
+            lengths = IndexIO.loadLengths(files);
+            queries = corpus.queries(QUERIES, queryLength, docs).toArray(new String[0]);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            if (index instanceof Closeable c) c.close();
+            ZipfCorpus.delete(dir);
+        }
+    }
+
+    private Retriever retriever;
+    private String[] queries;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup(Index shared) {
+        retriever = new Retriever(shared.index, shared.docTable, shared.stopWords, shared.lengths);
+        queries = shared.queries;
+    }
+
+    @Benchmark
+    public List<Integer> searchAnd() {
+        return retriever.searchAnd(queries[next++ & (QUERIES - 1)]);
+    }
+
+    @Benchmark
+    public List<Integer> searchOr() {
+        return retriever.searchOr(queries[next++ & (QUERIES - 1)]);
+    }
+}
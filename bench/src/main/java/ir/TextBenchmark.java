@@ -0,0 +1,52 @@
+package ir;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Normalizzazione del testo: Tokenizer.tokenize su documenti Zipf interi e
+ * PorterStemmer.stem su parole estratte con la stessa distribuzione (quindi soprattutto
+ * parole frequenti e corte, come nel flusso di token dell'indicizzazione).
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TextBenchmark {
+    private static final int DOCS = 256, WORDS = 1 << 14; // potenze di 2: indice con & invece di %
+
+    /** Lunghezza media dei documenti in token. */
+    @Param({"200", "2000"})
+    public int docLength;
+
+    private String[] docs;
+    private String[] words;
+    private final Tokenizer tokenizer = new Tokenizer();
+    private final PorterStemmer stemmer = new PorterStemmer();
+    private int next;
+
+    @Setup
+    public void setup() {
+        ZipfCorpus corpus = new ZipfCorpus(50_000, 1.0, docLength, 42);
+        docs = new String[DOCS];
+        for (int i = 0; i < DOCS; i++) docs[i] = corpus.document(i);
+        SplittableRandom rnd = new SplittableRandom(42);
+        words = new String[WORDS];
+        for (int i = 0; i < WORDS; i++) words[i] = corpus.word(corpus.sampleRank(rnd));
+    }
+
+    @Benchmark
+    public List<String> tokenize() {
+        return tokenizer.tokenize(docs[next++ & (DOCS - 1)]);
+    }
+
+    @Benchmark
+    public String stem() {
+        return stemmer.stem(words[next++ & (WORDS - 1)]);
+    }
+}
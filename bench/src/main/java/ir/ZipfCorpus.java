@@ -0,0 +1,141 @@
+package ir;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Collezione sintetica per i benchmark: le parole seguono una legge di Zipf
+ * (la parola di rango r ha probabilità proporzionale a 1/r^s), come nei testi reali,
+ * quindi poche parole frequentissime (le future stop words per frequenza) e una coda lunga di rare.
+ * Le parole sono sillabe inventate con suffissi inglesi (-ing, -ation, -ness...) perché lo
+ * stemmer abbia lavoro vero; il testo ha frasi con maiuscola e punteggiatura per il tokenizer.
+ * Tutto è deterministico dato il seed: il documento i è sempre lo stesso.
+ */
+public final class ZipfCorpus {
+    private static final String[] CONSONANTS = {"b", "c", "d", "f", "g", "l", "m", "n", "p", "r", "s", "t", "v", "z"};
+    private static final String[] VOWELS = {"a", "e", "i", "o", "u"};
+    private static final String[] SUFFIXES = {"", "", "", "s", "ing", "ed", "ation", "ness", "ment", "ly", "er", "ful", "ize", "ical"};
+
+    private final String[] words;   // parola di rango r (0 = la più frequente)
+    private final double[] cdf;     // distribuzione cumulativa dei ranghi
+    private final int meanLength;   // token medi per documento
+    private final long seed;
+
+    /**
+     * @param vocabulary numero di parole distinte
+     * @param exponent   esponente s di Zipf (circa 1 per testi in linguaggio naturale)
+     * @param meanLength lunghezza media dei documenti in token
+     */
+    public ZipfCorpus(int vocabulary, double exponent, int meanLength, long seed) {
+        this.words = new String[vocabulary];
+        this.cdf = new double[vocabulary];
+        this.meanLength = meanLength;
+        this.seed = seed;
+        double sum = 0;
+        for (int r = 0; r < vocabulary; r++) {
+            words[r] = makeWord(r);
+            sum += 1.0 / Math.pow(r + 1, exponent);
+            cdf[r] = sum;
+        }
+        for (int r = 0; r < vocabulary; r++) cdf[r] /= sum;
+    }
+
+    /** Vocabolario di 50000 parole, s = 1, documenti di 200 token in media. */
+    public ZipfCorpus(long seed) {
+        this(50_000, 1.0, 200, seed);
+    }
+
+    // numerazione biiettiva in sillabe consonante+vocale: ranghi diversi danno radici diverse
+    private static String makeWord(int rank) {
+        StringBuilder sb = new StringBuilder();
+        int syllables = CONSONANTS.length * VOWELS.length;
+        int n = rank;
+        do {
+            int s = n % syllables;
+            sb.append(CONSONANTS[s / VOWELS.length]).append(VOWELS[s % VOWELS.length]);
+            n = n / syllables - 1;
+        } while (n >= 0);
+        if (sb.length() < 4) sb.append('r'); // almeno 2 caratteri anche dopo lo stemming
+        // 5 è primo con SUFFIXES.length (14): ranghi consecutivi passano per tutti i suffissi
+        return sb.append(SUFFIXES[(rank * 5) % SUFFIXES.length]).toString();
+    }
+
+    public int vocabulary() { return words.length; }
+
+    /** Parola di rango r (0 = la più frequente). */
+    public String word(int rank) { return words[rank]; }
+
+    /** Rango estratto secondo Zipf. */
+    public int sampleRank(SplittableRandom rnd) {
+        int i = Arrays.binarySearch(cdf, rnd.nextDouble());
+        return Math.min(i >= 0 ? i : -i - 1, words.length - 1);
+    }
+
+    /** Testo del documento docID: frasi di 5-20 parole, lunghezza tra metà e una volta e mezza la media. */
+    public String document(int docID) {
+        StringBuilder sb = new StringBuilder(meanLength * 12);
+        generate(docID, sb);
+        return sb.toString();
+    }
+
+    // ranghi delle parole del documento docID; con text != null ne scrive anche il testo
+    private int[] generate(int docID, StringBuilder text) {
+        SplittableRandom rnd = new SplittableRandom(seed * 0x9E3779B97F4A7C15L + docID);
+        int[] ranks = new int[meanLength / 2 + rnd.nextInt(meanLength + 1)];
+        int sentence = 0;
+        for (int i = 0; i < ranks.length; i++) {
+            ranks[i] = sampleRank(rnd);
+            boolean first = (sentence == 0);
+            if (first) sentence = 5 + rnd.nextInt(16);
+            String sep = (--sentence == 0) ? ". " : (rnd.nextInt(12) == 0 ? ", " : " ");
+            if (text == null) continue;
+            String w = words[ranks[i]];
+            if (first) text.append(Character.toUpperCase(w.charAt(0))).append(w, 1, w.length());
+            else text.append(w);
+            text.append(sep);
+        }
+        return ranks;
+    }
+
+    /** Scrive i documenti 0..docs-1 in dir, un file per documento (doc_000123.txt). */
+    public void write(Path dir, int docs) throws IOException {
+        Files.createDirectories(dir);
+        for (int i = 0; i < docs; i++) {
+            Files.writeString(dir.resolve(String.format("doc_%06d.txt", i)), document(i));
+        }
+    }
+
+    /**
+     * Log di query: ognuna prende length parole distinte da un documento a caso della collezione,
+     * così le parole che compaiono insieme nelle query compaiono insieme anche nei documenti
+     * (come nelle query vere) e gli AND non sono quasi sempre vuoti. Le parole dell'1% più
+     * frequente del vocabolario sono escluse: diventerebbero stop words e la query si accorcerebbe.
+     */
+    public List<String> queries(int count, int length, int docs) {
+        SplittableRandom rnd = new SplittableRandom(seed ^ 0x5DEECE66DL);
+        int skip = (int) Math.ceil(words.length * 0.01);
+        List<String> out = new ArrayList<>(count);
+        while (out.size() < count) {
+            int[] ranks = generate(rnd.nextInt(docs), null);
+            LinkedHashSet<String> terms = new LinkedHashSet<>();
+            for (int tries = 0; terms.size() < length && tries < 4 * ranks.length; tries++) {
+                int r = ranks[rnd.nextInt(ranks.length)];
+                if (r >= skip) terms.add(words[r]);
+            }
+            if (terms.size() == length) out.add(String.join(" ", terms));
+        }
+        return out;
+    }
+
+    /** Cancella una cartella creata per i benchmark (collezione o indice). */
+    public static void delete(Path dir) throws IOException {
+        if (!Files.exists(dir)) return;
+        List<Path> paths;
+        try (Stream<Path> walk = Files.walk(dir)) {
+            paths = walk.sorted(Comparator.reverseOrder()).toList();
+        }
+        for (Path p : paths) Files.deleteIfExists(p);
+    }
+}
@@ -0,0 +1,45 @@
+package ir;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Intersezione con la Vector API (jdk.incubator.vector), caricata da Intersector.simd().
+ * Si confronta un blocco di L docID di a con un blocco di L docID di b
+ * (L = corsie del registro preferito: 8 con AVX2, 16 con AVX-512): ogni elemento
+ * del blocco di b è replicato su tutte le corsie e confrontato con il blocco di a,
+ * la maschera dei match indica quali docID di a scrivere. Avanza il blocco il cui
+ * ultimo docID è minore (entrambi se uguali); le code si finiscono in scalare.
+ *
+ * Compilazione ed esecuzione:
+ *   javac --add-modules jdk.incubator.vector -cp out -d out src-simd/ir/*.java
+ *   java --add-modules jdk.incubator.vector -cp out ir.Main search and "..." --intersect=simd
+ */
+final class SimdIntersector implements Intersector {
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+    private static final int L = SPECIES.length();
+
+    @Override
+    public int intersect(int[] a, int na, int[] b, int nb, int[] out) {
+        int i = 0, j = 0, n = 0;
+        while (i + L <= na && j + L <= nb) {
+            IntVector va = IntVector.fromArray(SPECIES, a, i);
+            VectorMask<Integer> m = va.eq(b[j]);
+            for (int k = 1; k < L; k++) m = m.or(va.eq(b[j + k]));
+            for (long bits = m.toLong(); bits != 0; bits &= bits - 1) {
+                out[n++] = a[i + Long.numberOfTrailingZeros(bits)];
+            }
+            int lastA = a[i + L - 1], lastB = b[j + L - 1];
+            if (lastA <= lastB) i += L;
+            if (lastB <= lastA) j += L;
+        }
+        // coda: merge scalare
+        while (i < na && j < nb) {
+            if (a[i] < b[j]) i++;
+            else if (a[i] > b[j]) j++;
+            else { out[n++] = a[i]; i++; j++; }
+        }
+        return n;
+    }
+}
@@ -0,0 +1,145 @@
+package ir;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Esecuzione di molte query in un solo processo, in parallelo su un pool di thread.
+ * Ogni riga dell'input è una query, oppure "modo<TAB>query" per cambiare modo su quella riga;
+ * righe vuote e commenti (#) sono saltati.
+ * L'output esce in streaming nello stesso ordine dell'input: si tengono in volo al più
+ * WINDOW query per thread e si scrive appena la più vecchia è pronta.
+ * Le query del batch condividono lo snapshot: ogni parola distinta è stemmata una volta
+ * (cache token -> stem) e ogni posting list decodificata una volta (PostingCache).
+ * Con un indice diviso in shard il Searcher è il coordinatore (ShardedSearcher).
+ *
+ * tsv:   riga <TAB> query <TAB> numero risultati <TAB> docID separati da spazio (docID:punteggio per ranked/wand)
+ *        in caso di errore: riga <TAB> query <TAB> ERROR <TAB> messaggio
+ * jsonl: {"line":..,"query":..,"mode":..,"count":..,"results":[docID...]}
+ *        (per ranked/wand results è [{"doc":..,"score":..}], in caso di errore c'è "error")
+ */
+public final class BatchRunner {
+    private static final int WINDOW = 64;
+
+    public enum Format { TSV, JSONL }
+
+    /** Statistiche di un batch. */
+    public record Stats(int queries, int errors, long millis) {}
+
+    private final Searcher searcher;
+    private final int threads;
+    private final Format format;
+    private final String defaultMode;
+    private final int top;
+    private final int limit; // risultati scritti per query, 0 = tutti
+
+    public BatchRunner(Searcher searcher, int threads, Format format, String defaultMode, int top, int limit) {
+        this.searcher = searcher;
+        this.threads = Math.max(1, threads);
+        this.format = format;
+        this.defaultMode = defaultMode;
+        this.top = top;
+        this.limit = limit;
+    }
+
+    private record Line(int number, String mode, String query) {}
+
+    private record Result(String text, boolean error) {}
+
+    public Stats run(BufferedReader in, Writer out) throws IOException {
+        long t0 = System.nanoTime();
+        int queries = 0, errors = 0;
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "batch");
+            t.setDaemon(true);
+            return t;
+        });
+        ArrayDeque<Future<Result>> pending = new ArrayDeque<>();
+        try {
+            int number = 0;
+            for (String raw; (raw = in.readLine()) != null; ) {
+                number++;
+                Line line = parse(number, raw);
+                if (line == null) continue;
+                pending.add(pool.submit(() -> execute(line)));
+                queries++;
+                if (pending.size() >= threads * WINDOW) errors += write(pending.poll(), out);
+            }
+            while (!pending.isEmpty()) errors += write(pending.poll(), out);
+        } finally {
+            pool.shutdownNow();
+        }
+        out.flush();
+        return new Stats(queries, errors, (System.nanoTime() - t0) / 1_000_000);
+    }
+
+    private Line parse(int number, String raw) {
+        String s = raw.strip();
+        if (s.isEmpty() || s.startsWith("#")) return null;
+        int tab = s.indexOf('\t');
+        if (tab < 0) return new Line(number, defaultMode, s);
+        return new Line(number, s.substring(0, tab).strip().toLowerCase(Locale.ROOT), s.substring(tab + 1).strip());
+    }
+
+    private static int write(Future<Result> f, Writer out) throws IOException {
+        Result r;
+        try {
+            r = f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Batch interrotto");
+        } catch (ExecutionException e) {
+            throw new IOException("Query fallita", e.getCause()); // solo Error: le eccezioni diventano righe ERROR
+        }
+        out.write(r.text());
+        out.write('\n');
+        return r.error() ? 1 : 0;
+    }
+
+    private Result execute(Line line) {
+        List<ScoredDoc> results;
+        try {
+            results = searcher.search(line.mode(), line.query(), top);
+        } catch (RuntimeException | IOException e) {
+            // query non valida (IllegalArgumentException), shard remoto che non risponde (IOException)
+            // o errore imprevisto su questa query: riga di errore, il batch continua
+            String msg = (e instanceof IllegalArgumentException || e instanceof IOException) && e.getMessage() != null
+                    ? e.getMessage() : e.toString();
+            return new Result(format == Format.TSV
+                    ? line.number() + "\t" + tsv(line.query()) + "\tERROR\t" + tsv(msg)
+                    : "{\"line\":" + line.number() + ",\"query\":" + Json.quote(line.query())
+                      + ",\"mode\":" + Json.quote(line.mode()) + ",\"error\":" + Json.quote(msg) + "}", true);
+        }
+        boolean ranked = Retriever.isRanked(line.mode());
+        int n = (limit > 0) ? Math.min(limit, results.size()) : results.size();
+        StringBuilder sb = new StringBuilder(32 + 8 * n);
+        if (format == Format.TSV) {
+            sb.append(line.number()).append('\t').append(tsv(line.query())).append('\t').append(results.size()).append('\t');
+            for (int i = 0; i < n; i++) {
+                if (i > 0) sb.append(' ');
+                sb.append(results.get(i).docID());
+                if (ranked) sb.append(':').append(String.format(Locale.ROOT, "%.4f", results.get(i).score()));
+            }
+        } else {
+            sb.append("{\"line\":").append(line.number())
+              .append(",\"query\":").append(Json.quote(line.query()))
+              .append(",\"mode\":").append(Json.quote(line.mode()))
+              .append(",\"count\":").append(results.size())
+              .append(",\"results\":[");
+            for (int i = 0; i < n; i++) {
+                if (i > 0) sb.append(',');
+                ScoredDoc d = results.get(i);
+                if (ranked) sb.append("{\"doc\":").append(d.docID()).append(",\"score\":")
+                              .append(String.format(Locale.ROOT, "%.4f", d.score())).append('}');
+                else sb.append(d.docID());
+            }
+            sb.append("]}");
+        }
+        return new Result(sb.toString(), false);
+    }
+
+    private static String tsv(String s) {
+        return s.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+}
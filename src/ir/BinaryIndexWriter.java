@@ -0,0 +1,124 @@
+package ir;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Scrive l'indice nel formato binario versionato (letto da MappedIndex).
+ *
+ * index.terms:
+ *   dizionario front-coded a blocchi (formato in TermDictionary): per ogni termine
+ *   df, tf massimo, codifica e posizione delle sue liste in index.post e index.pos.
+ * index.post:
+ *   magic "IRPX" | version
+ *   poi, per ogni termine: tf massimo di ciascun blocco di PostingList.BLOCK_SIZE posting,
+ *   seguito, per le liste sparse (codifica SPARSE), da df coppie (gap docID, tf) in variable-byte;
+ *   per le liste dense (codifica BITMAP) dai docID come DocBitmap e poi dai df tf in variable-byte.
+ *   Si salva il tf e non il punteggio massimo perché idf dipende da N, che cambia
+ *   con gli aggiornamenti incrementali: il limite superiore si calcola a query time.
+ * index.pos:
+ *   magic "IRPS" | version
+ *   poi, per ogni termine e per ogni posting: numero posizioni, gap posizioni (variable-byte).
+ *   Separato da index.post così le query booleane non toccano mai le posizioni.
+ *
+ * I termini devono arrivare già ordinati: così il writer funziona anche
+ * in streaming, senza tenere l'indice intero in memoria.
+ */
+public class BinaryIndexWriter implements Closeable {
+    static final int TERMS_MAGIC = 0x49524458; // "IRDX"
+    static final int POST_MAGIC  = 0x49525058; // "IRPX"
+    static final int POS_MAGIC   = 0x49525053; // "IRPS"
+    static final int FORMAT_VERSION = 5;        // v2: posizioni in index.pos, v3: tf massimi per blocco, v4: liste bitmap,
+                                                // v5: dizionario front-coded
+    static final int HEADER_BYTES = 8;          // magic + version
+    static final byte SPARSE = 0, BITMAP = 1;
+    // una lista è densa se è abbastanza lunga e il gap medio tra docID non supera DENSE_GAP
+    static final int DENSE_MIN_DF = 1024;
+    static final int DENSE_GAP = 16;
+
+    private final TermDictionary.Writer terms;
+    private final OutputStream post;
+    private final OutputStream pos;
+    private final ByteArrayOutputStream buf = new ByteArrayOutputStream();
+    private long offset = HEADER_BYTES;
+    private long posOffset = HEADER_BYTES;
+    private String lastTerm = null;
+
+    public BinaryIndexWriter(IndexFiles files) throws IOException {
+        this.terms = new TermDictionary.Writer(files.terms());
+        this.post = new BufferedOutputStream(Files.newOutputStream(files.postings()));
+        this.pos = new BufferedOutputStream(Files.newOutputStream(files.positions()));
+        writeHeader(post, POST_MAGIC);
+        writeHeader(pos, POS_MAGIC);
+    }
+
+    private static void writeHeader(OutputStream out, int magic) throws IOException {
+        DataOutputStream h = new DataOutputStream(out);
+        h.writeInt(magic);
+        h.writeInt(FORMAT_VERSION);
+    }
+
+    /** Salva un indice in memoria ordinando i termini. */
+    public static void write(Map<String, PostingList> index, IndexFiles files) throws IOException {
+        List<String> sorted = new ArrayList<>(index.keySet());
+        Collections.sort(sorted);
+        try (BinaryIndexWriter w = new BinaryIndexWriter(files)) {
+            for (String term : sorted) w.add(term, index.get(term));
+        }
+    }
+
+    public void add(String term, PostingList pl) throws IOException {
+        if (lastTerm != null && term.compareTo(lastTerm) <= 0)
+            throw new IllegalArgumentException("Termini non ordinati: " + lastTerm + " >= " + term);
+        lastTerm = term;
+
+        buf.reset();
+        for (int b = 0; b < pl.blockCount(); b++) VByte.write(buf, pl.blockMaxTf(b));
+        boolean dense = isDense(pl);
+        if (dense) {
+            DocBitmap bm = (pl.bitmap() != null) ? pl.bitmap() : DocBitmap.of(pl);
+            bm.write(buf);
+            for (int i = 0; i < pl.size(); i++) VByte.write(buf, pl.tf(i));
+        } else {
+            int prev = 0;
+            for (int i = 0; i < pl.size(); i++) {
+                VByte.write(buf, pl.docId(i) - prev);
+                VByte.write(buf, pl.tf(i));
+                prev = pl.docId(i);
+            }
+        }
+        buf.writeTo(post);
+        int length = buf.size();
+
+        buf.reset();
+        for (int i = 0; i < pl.size(); i++) {
+            int n = pl.positionCount(i);
+            VByte.write(buf, n);
+            int prevPos = 0;
+            for (int k = 0; k < n; k++) {
+                VByte.write(buf, pl.position(i, k) - prevPos);
+                prevPos = pl.position(i, k);
+            }
+        }
+        buf.writeTo(pos);
+
+        terms.add(term, pl.df(), pl.maxTf(), dense ? BITMAP : SPARSE, offset, length, posOffset, buf.size());
+        offset += length;
+        posOffset += buf.size();
+    }
+
+    static boolean isDense(PostingList pl) {
+        int n = pl.size();
+        return n >= DENSE_MIN_DF && (long) n * DENSE_GAP >= (long) pl.docId(n - 1) - pl.docId(0) + 1;
+    }
+
+    public int termCount() { return terms.termCount(); }
+
+    @Override
+    public void close() throws IOException {
+        post.close();
+        pos.close();
+        terms.close();
+    }
+}
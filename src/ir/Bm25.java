@@ -0,0 +1,35 @@
+package ir;
+
+/**
+ * Okapi BM25 (k1 = 1.2, b = 0.75).
+ * Senza doc.len (indici vecchi) tutti i documenti hanno lunghezza media.
+ */
+public final class Bm25 {
+    static final double K1 = 1.2;
+    static final double B = 0.75;
+
+    private final DocLengths lengths;
+    private final int docCount;
+    private final double avgLength;
+
+    public Bm25(DocLengths lengths, int docCount) {
+        this(lengths, docCount, lengths != null ? lengths.avgLength() : 0.0);
+    }
+
+    /** Con docCount e avgLength della collezione intera (indice diviso in shard). */
+    public Bm25(DocLengths lengths, int docCount, double avgLength) {
+        this.lengths = lengths;
+        this.docCount = docCount;
+        this.avgLength = avgLength;
+    }
+
+    public double idf(int df) {
+        return Math.log(1.0 + (docCount - df + 0.5) / (df + 0.5));
+    }
+
+    public double score(double idf, int tf, int docID) {
+        double norm = 1.0;
+        if (lengths != null && avgLength > 0) norm = lengths.length(docID) / avgLength;
+        return idf * tf * (K1 + 1) / (tf + K1 * (1 - B + B * norm));
+    }
+}
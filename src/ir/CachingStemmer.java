@@ -0,0 +1,52 @@
+package ir;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * PorterStemmer con cache token -> stem condivisa tra thread.
+ * Il vocabolario è zipfiano: poche migliaia di parole coprono quasi tutti i token,
+ * quindi dopo i primi documenti lo stemming diventa una lookup.
+ * La cache è limitata a maxEntries: quando è piena le parole nuove sono stemmate
+ * ma non memorizzate (quelle frequenti sono in genere già entrate all'inizio).
+ * Uno PorterStemmer per thread (non è thread-safe) per i miss.
+ */
+public final class CachingStemmer {
+    private final int maxEntries;
+    private final ConcurrentHashMap<String, String> cache = new ConcurrentHashMap<>();
+    private final ThreadLocal<PorterStemmer> stemmers = ThreadLocal.withInitial(PorterStemmer::new);
+    private final LongAdder hits = new LongAdder(), misses = new LongAdder();
+
+    public CachingStemmer(int maxEntries) {
+        this.maxEntries = Math.max(0, maxEntries);
+    }
+
+    public String stem(String token) {
+        if (token == null) return null;
+        String s = cache.get(token);
+        if (s != null) {
+            hits.increment();
+            return s;
+        }
+        misses.increment();
+        s = stemmers.get().stem(token);
+        if (cache.size() < maxEntries) cache.putIfAbsent(token, s);
+        return s;
+    }
+
+    public long hits() { return hits.sum(); }
+    public long misses() { return misses.sum(); }
+    public int size() { return cache.size(); }
+
+    public double hitRate() {
+        long h = hits.sum(), total = h + misses.sum();
+        return total == 0 ? 0.0 : (double) h / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "stemmer: %d voci, hit %d / miss %d (%.1f%%)",
+                size(), hits(), misses(), 100.0 * hitRate());
+    }
+}
@@ -0,0 +1,28 @@
+package ir;
+
+import java.util.*;
+
+/**
+ * Statistiche di collezione che servono al ranking (BM25, tf-idf): numero di documenti,
+ * lunghezza totale e df dei termini di una query.
+ * Con l'indice diviso in shard ogni shard conosce solo le sue: il coordinatore le somma
+ * (i documenti degli shard sono disgiunti) e le ripassa agli shard, così i punteggi
+ * coincidono con quelli dell'indice non diviso.
+ */
+public record CollectionStats(int docCount, long totalLength, Map<String, Integer> df) {
+
+    public double avgLength() {
+        return docCount == 0 ? 0.0 : (double) totalLength / docCount;
+    }
+
+    /** df del termine, oppure local se il termine non compare (statistiche di un'altra query). */
+    public int df(String term, int local) {
+        return df.getOrDefault(term, local);
+    }
+
+    public CollectionStats plus(CollectionStats other) {
+        Map<String, Integer> sum = new HashMap<>(df);
+        for (Map.Entry<String, Integer> e : other.df.entrySet()) sum.merge(e.getKey(), e.getValue(), Integer::sum);
+        return new CollectionStats(docCount + other.docCount, totalLength + other.totalLength, sum);
+    }
+}
@@ -0,0 +1,18 @@
+package ir;
+
+import java.util.Locale;
+
+/** Cosa fare con i byte non validi nel charset di un documento durante l'indicizzazione. */
+public enum DecodePolicy {
+    /** sostituiti con U+FFFD (che separa i token) */
+    REPLACE,
+    /** scartati */
+    IGNORE,
+    /** il documento intero viene saltato e segnalato */
+    SKIP;
+
+    /** "replace", "ignore" o "skip". */
+    public static DecodePolicy parse(String s) {
+        return valueOf(s.trim().toUpperCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,391 @@
+package ir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Insieme di docID compresso alla Roaring: i 16 bit alti scelgono un contenitore,
+ * i 16 bit bassi stanno nel contenitore, che è
+ * - un array ordinato di char se ha al più ARRAY_MAX elementi
+ * - una bitmap di 65536 bit (1024 long) altrimenti
+ * Su disco un contenitore può essere anche una sequenza di run (inizio, lunghezza),
+ * scelta quando è la forma più compatta; in memoria viene espansa in array o bitmap,
+ * così AND/OR/AND NOT lavorano a parole di 64 bit sulle bitmap.
+ * Immutabile: le operazioni restituiscono un nuovo DocBitmap.
+ */
+public final class DocBitmap {
+    static final int ARRAY_MAX = 4096;
+    private static final int WORDS = 1024;
+    private static final byte ARRAY = 0, BITMAP = 1, RUN = 2;
+
+    private final int[] keys;
+    private final char[][] arrays;   // contenitore array (null se bitmap)
+    private final long[][] bitmaps;  // contenitore bitmap (null se array)
+    private final int[] cards;
+    private final int size;
+    private final int cardinality;
+
+    private DocBitmap(int[] keys, char[][] arrays, long[][] bitmaps, int[] cards, int size) {
+        this.keys = keys;
+        this.arrays = arrays;
+        this.bitmaps = bitmaps;
+        this.cards = cards;
+        this.size = size;
+        int c = 0;
+        for (int k = 0; k < size; k++) c += cards[k];
+        this.cardinality = c;
+    }
+
+    /** Costruisce la bitmap da una sequenza crescente di docID. */
+    public static DocBitmap of(SortedDocIds ids) {
+        Builder b = new Builder(ids.size() / ARRAY_MAX + 1);
+        int n = ids.size(), i = 0;
+        char[] low = new char[Math.min(n, 1 << 16)];
+        while (i < n) {
+            int key = ids.docId(i) >>> 16;
+            int c = 0;
+            while (i < n && ids.docId(i) >>> 16 == key) low[c++] = (char) ids.docId(i++);
+            if (c > ARRAY_MAX) {
+                long[] words = new long[WORDS];
+                for (int k = 0; k < c; k++) words[low[k] >>> 6] |= 1L << low[k];
+                b.add(key, null, words, c);
+            } else {
+                b.add(key, Arrays.copyOf(low, c), null, c);
+            }
+        }
+        return b.build();
+    }
+
+    public int cardinality() { return cardinality; }
+
+    /** Stima dell'occupazione in heap (per le cache con limite in byte). */
+    long heapBytes() {
+        long b = 48 + 8L * size + 4L * keys.length + 4L * cards.length;
+        for (int k = 0; k < size; k++) b += (bitmaps[k] != null) ? 16 + 8L * WORDS : 16 + 2L * arrays[k].length;
+        return b;
+    }
+
+    public boolean contains(int docID) {
+        int k = Arrays.binarySearch(keys, 0, size, docID >>> 16);
+        if (k < 0) return false;
+        char low = (char) docID;
+        if (bitmaps[k] != null) return (bitmaps[k][low >>> 6] & (1L << low)) != 0;
+        return Arrays.binarySearch(arrays[k], low) >= 0;
+    }
+
+    /** docID in ordine crescente. */
+    public int[] toArray() {
+        int[] out = new int[cardinality];
+        int n = 0;
+        for (int k = 0; k < size; k++) {
+            int high = keys[k] << 16;
+            if (bitmaps[k] == null) {
+                for (char c : arrays[k]) out[n++] = high | c;
+                continue;
+            }
+            long[] w = bitmaps[k];
+            for (int j = 0; j < WORDS; j++) {
+                long word = w[j];
+                while (word != 0) {
+                    out[n++] = high | (j << 6) | Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                }
+            }
+        }
+        return out;
+    }
+
+    public void toBuffer(DocIdBuffer out) {
+        out.clear();
+        out.ensureCapacity(cardinality);
+        for (int d : toArray()) out.add(d);
+    }
+
+    // ---- operazioni booleane ----
+
+    public DocBitmap and(DocBitmap o) {
+        Builder b = new Builder(Math.min(size, o.size));
+        int i = 0, j = 0;
+        while (i < size && j < o.size) {
+            if (keys[i] < o.keys[j]) i++;
+            else if (keys[i] > o.keys[j]) j++;
+            else {
+                andContainer(b, keys[i], arrays[i], bitmaps[i], o.arrays[j], o.bitmaps[j]);
+                i++;
+                j++;
+            }
+        }
+        return b.build();
+    }
+
+    public DocBitmap or(DocBitmap o) {
+        Builder b = new Builder(size + o.size);
+        int i = 0, j = 0;
+        while (i < size || j < o.size) {
+            if (j == o.size || (i < size && keys[i] < o.keys[j])) {
+                b.add(keys[i], arrays[i], bitmaps[i], cards[i]);
+                i++;
+            } else if (i == size || keys[i] > o.keys[j]) {
+                b.add(o.keys[j], o.arrays[j], o.bitmaps[j], o.cards[j]);
+                j++;
+            } else {
+                orContainer(b, keys[i], arrays[i], bitmaps[i], o.arrays[j], o.bitmaps[j]);
+                i++;
+                j++;
+            }
+        }
+        return b.build();
+    }
+
+    /** Elementi di this assenti in o. */
+    public DocBitmap andNot(DocBitmap o) {
+        Builder b = new Builder(size);
+        int j = 0;
+        for (int i = 0; i < size; i++) {
+            while (j < o.size && o.keys[j] < keys[i]) j++;
+            if (j == o.size || o.keys[j] != keys[i]) b.add(keys[i], arrays[i], bitmaps[i], cards[i]);
+            else andNotContainer(b, keys[i], arrays[i], bitmaps[i], o.arrays[j], o.bitmaps[j]);
+        }
+        return b.build();
+    }
+
+    private static void andContainer(Builder b, int key, char[] a1, long[] w1, char[] a2, long[] w2) {
+        if (w1 != null && w2 != null) {
+            long[] w = new long[WORDS];
+            int card = 0;
+            for (int k = 0; k < WORDS; k++) card += Long.bitCount(w[k] = w1[k] & w2[k]);
+            b.addWords(key, w, card);
+        } else if (w1 != null || w2 != null) {
+            char[] a = (w1 == null) ? a1 : a2;
+            long[] w = (w1 == null) ? w2 : w1;
+            char[] out = new char[a.length];
+            int n = 0;
+            for (char c : a) if ((w[c >>> 6] & (1L << c)) != 0) out[n++] = c;
+            b.add(key, Arrays.copyOf(out, n), null, n);
+        } else {
+            char[] out = new char[Math.min(a1.length, a2.length)];
+            int n = 0, i = 0, j = 0;
+            while (i < a1.length && j < a2.length) {
+                if (a1[i] < a2[j]) i++;
+                else if (a1[i] > a2[j]) j++;
+                else { out[n++] = a1[i]; i++; j++; }
+            }
+            b.add(key, Arrays.copyOf(out, n), null, n);
+        }
+    }
+
+    private static void orContainer(Builder b, int key, char[] a1, long[] w1, char[] a2, long[] w2) {
+        if (w1 == null && w2 == null) {
+            char[] out = new char[a1.length + a2.length];
+            int n = 0, i = 0, j = 0;
+            while (i < a1.length || j < a2.length) {
+                if (j == a2.length || (i < a1.length && a1[i] < a2[j])) out[n++] = a1[i++];
+                else if (i == a1.length || a1[i] > a2[j]) out[n++] = a2[j++];
+                else { out[n++] = a1[i]; i++; j++; }
+            }
+            if (n <= ARRAY_MAX) {
+                b.add(key, Arrays.copyOf(out, n), null, n);
+                return;
+            }
+            long[] w = new long[WORDS];
+            for (int k = 0; k < n; k++) w[out[k] >>> 6] |= 1L << out[k];
+            b.add(key, null, w, n);
+            return;
+        }
+        long[] w = (w1 != null) ? w1.clone() : w2.clone();
+        if (w1 != null && w2 != null) {
+            for (int k = 0; k < WORDS; k++) w[k] |= w2[k];
+        } else {
+            for (char c : (w1 == null) ? a1 : a2) w[c >>> 6] |= 1L << c;
+        }
+        int card = 0;
+        for (long x : w) card += Long.bitCount(x);
+        b.add(key, null, w, card);
+    }
+
+    private static void andNotContainer(Builder b, int key, char[] a1, long[] w1, char[] a2, long[] w2) {
+        if (w1 == null) {
+            char[] out = new char[a1.length];
+            int n = 0, j = 0;
+            for (char c : a1) {
+                boolean excluded;
+                if (w2 != null) {
+                    excluded = (w2[c >>> 6] & (1L << c)) != 0;
+                } else {
+                    while (j < a2.length && a2[j] < c) j++;
+                    excluded = j < a2.length && a2[j] == c;
+                }
+                if (!excluded) out[n++] = c;
+            }
+            b.add(key, Arrays.copyOf(out, n), null, n);
+            return;
+        }
+        long[] w = w1.clone();
+        if (w2 != null) {
+            for (int k = 0; k < WORDS; k++) w[k] &= ~w2[k];
+        } else {
+            for (char c : a2) w[c >>> 6] &= ~(1L << c);
+        }
+        int card = 0;
+        for (long x : w) card += Long.bitCount(x);
+        b.addWords(key, w, card);
+    }
+
+    // ---- serializzazione ----
+
+    /**
+     * Formato: numero contenitori, poi per ciascuno chiave, tipo, cardinalità - 1 (variable-byte) e
+     *   array:  gap dei valori bassi (variable-byte)
+     *   bitmap: 1024 long
+     *   run:    numero run, poi per ogni run gap dall'ultima fine e lunghezza - 1 (variable-byte)
+     * Il tipo è quello che occupa meno spazio (stime Roaring: 2 byte per valore, 8KB, 4 byte per run).
+     */
+    public void write(OutputStream out) throws IOException {
+        VByte.write(out, size);
+        for (int k = 0; k < size; k++) {
+            int[] runs = runs(k);
+            long arrayBytes = 2L * cards[k], runBytes = 2 + 4L * runs.length / 2;
+            byte type = (runBytes < Math.min(arrayBytes, WORDS * 8)) ? RUN : (cards[k] <= ARRAY_MAX ? ARRAY : BITMAP);
+            VByte.write(out, keys[k]);
+            out.write(type);
+            VByte.write(out, cards[k] - 1);
+            if (type == RUN) {
+                VByte.write(out, runs.length / 2);
+                int end = 0;
+                for (int r = 0; r < runs.length; r += 2) {
+                    VByte.write(out, runs[r] - end);
+                    VByte.write(out, runs[r + 1] - 1);
+                    end = runs[r] + runs[r + 1];
+                }
+            } else if (type == ARRAY) {
+                char[] a = (arrays[k] != null) ? arrays[k] : lows(k);
+                int prev = 0;
+                for (char c : a) { VByte.write(out, c - prev); prev = c; }
+            } else {
+                ByteBuffer w = ByteBuffer.allocate(WORDS * 8);
+                for (long x : bitmaps[k]) w.putLong(x);
+                out.write(w.array());
+            }
+        }
+    }
+
+    public static DocBitmap read(ByteBuffer in) {
+        int n = VByte.read(in);
+        Builder b = new Builder(n);
+        for (int k = 0; k < n; k++) {
+            int key = VByte.read(in);
+            byte type = in.get();
+            int card = VByte.read(in) + 1;
+            if (type == BITMAP) {
+                long[] w = new long[WORDS];
+                for (int j = 0; j < WORDS; j++) w[j] = in.getLong();
+                b.add(key, null, w, card);
+                continue;
+            }
+            char[] low = new char[card];
+            if (type == ARRAY) {
+                int v = 0;
+                for (int j = 0; j < card; j++) low[j] = (char) (v += VByte.read(in));
+            } else {
+                int runs = VByte.read(in), end = 0, c = 0;
+                for (int r = 0; r < runs; r++) {
+                    int start = end + VByte.read(in), len = VByte.read(in) + 1;
+                    for (int v = start; v < start + len; v++) low[c++] = (char) v;
+                    end = start + len;
+                }
+            }
+            if (card <= ARRAY_MAX) {
+                b.add(key, low, null, card);
+            } else {
+                long[] w = new long[WORDS];
+                for (char c : low) w[c >>> 6] |= 1L << c;
+                b.add(key, null, w, card);
+            }
+        }
+        return b.build();
+    }
+
+    /** Run del contenitore k come coppie (inizio, lunghezza). */
+    private int[] runs(int k) {
+        char[] a = (arrays[k] != null) ? arrays[k] : lows(k);
+        int[] r = new int[8];
+        int n = 0;
+        for (int i = 0; i < a.length; ) {
+            int start = a[i], len = 1;
+            while (i + len < a.length && a[i + len] == start + len) len++;
+            if (n + 2 > r.length) r = Arrays.copyOf(r, r.length * 2);
+            r[n++] = start;
+            r[n++] = len;
+            i += len;
+        }
+        return Arrays.copyOf(r, n);
+    }
+
+    private char[] lows(int k) {
+        char[] out = new char[cards[k]];
+        int n = 0;
+        long[] w = bitmaps[k];
+        for (int j = 0; j < WORDS; j++) {
+            long word = w[j];
+            while (word != 0) {
+                out[n++] = (char) ((j << 6) | Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+        }
+        return out;
+    }
+
+    private static final class Builder {
+        private int[] keys;
+        private char[][] arrays;
+        private long[][] bitmaps;
+        private int[] cards;
+        private int size = 0;
+
+        Builder(int capacity) {
+            capacity = Math.max(capacity, 1);
+            keys = new int[capacity];
+            arrays = new char[capacity][];
+            bitmaps = new long[capacity][];
+            cards = new int[capacity];
+        }
+
+        void add(int key, char[] array, long[] words, int card) {
+            if (card == 0) return;
+            if (size == keys.length) {
+                int cap = size * 2;
+                keys = Arrays.copyOf(keys, cap);
+                arrays = Arrays.copyOf(arrays, cap);
+                bitmaps = Arrays.copyOf(bitmaps, cap);
+                cards = Arrays.copyOf(cards, cap);
+            }
+            keys[size] = key;
+            arrays[size] = array;
+            bitmaps[size] = words;
+            cards[size] = card;
+            size++;
+        }
+
+        /** Bitmap risultato di un'operazione: torna array se è diventata sparsa. */
+        void addWords(int key, long[] words, int card) {
+            if (card > ARRAY_MAX) {
+                add(key, null, words, card);
+                return;
+            }
+            char[] low = new char[card];
+            int n = 0;
+            for (int j = 0; j < WORDS; j++) {
+                long word = words[j];
+                while (word != 0) {
+                    low[n++] = (char) ((j << 6) | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            add(key, low, null, card);
+        }
+
+        DocBitmap build() { return new DocBitmap(keys, arrays, bitmaps, cards, size); }
+    }
+}
@@ -0,0 +1,54 @@
+package ir;
+
+import java.util.*;
+
+/** Buffer riusabile di docID crescenti: i risultati intermedi non allocano per posting. */
+public final class DocIdBuffer implements SortedDocIds {
+    private int[] ids;
+    private int size = 0;
+
+    public DocIdBuffer() { this(64); }
+
+    public DocIdBuffer(int capacity) { ids = new int[Math.max(capacity, 1)]; }
+
+    /** Buffer che usa ids (crescenti) così com'è, senza copiarlo. */
+    static DocIdBuffer wrap(int[] ids) {
+        DocIdBuffer b = new DocIdBuffer(1);
+        b.ids = ids;
+        b.size = ids.length;
+        return b;
+    }
+
+    public void clear() { size = 0; }
+
+    public void ensureCapacity(int capacity) {
+        if (capacity > ids.length) ids = Arrays.copyOf(ids, Math.max(capacity, ids.length * 2));
+    }
+
+    public void add(int docID) {
+        if (size == ids.length) ids = Arrays.copyOf(ids, size * 2);
+        ids[size++] = docID;
+    }
+
+    @Override public int size() { return size; }
+    @Override public int docId(int i) { return ids[i]; }
+
+    /** Array interno (valido fino a size()): non modificarlo. */
+    int[] array() { return ids; }
+
+    /** Dopo una scrittura diretta nei primi size elementi di array() (entro ensureCapacity). */
+    void setSize(int size) { this.size = size; }
+
+    public int[] toArray() { return Arrays.copyOf(ids, size); }
+
+    /** Copia immutabile come List (un solo array allocato, i boxing avvengono in lettura). */
+    public List<Integer> toList() { return asList(toArray()); }
+
+    /** Vista List immutabile di un array di docID (non copiato). */
+    static List<Integer> asList(int[] ids) {
+        return new AbstractList<>() {
+            @Override public Integer get(int i) { return ids[i]; }
+            @Override public int size() { return ids.length; }
+        };
+    }
+}
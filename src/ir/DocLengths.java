@@ -0,0 +1,83 @@
+package ir;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Lunghezze dei documenti (in token) per il ranking BM25, file doc.len:
+ *   magic "IRDL" | version | n | n interi (lunghezza del docID i, 0 se assente o cancellato)
+ * La versione è propria di doc.len, indipendente da quella delle posting (BinaryIndexWriter).
+ */
+public final class DocLengths {
+    static final int MAGIC = 0x4952444C; // "IRDL"
+    static final int VERSION = 1;
+    // i doc.len scritti prima di VERSION portano la versione delle posting di allora (2-5), stesso layout
+    private static final int LEGACY_MIN = 2, LEGACY_MAX = 5;
+
+    private final int[] lengths;
+    private final int docCount;
+    private final long totalLength;
+    private final double avgLength;
+
+    private DocLengths(int[] lengths) {
+        this.lengths = lengths;
+        long total = 0;
+        int n = 0;
+        for (int len : lengths) {
+            if (len > 0) { total += len; n++; }
+        }
+        this.docCount = n;
+        this.totalLength = total;
+        this.avgLength = (n == 0) ? 0.0 : (double) total / n;
+    }
+
+    public static DocLengths of(Map<Integer, Integer> lengths) {
+        int max = -1;
+        for (int id : lengths.keySet()) max = Math.max(max, id);
+        int[] a = new int[max + 1];
+        for (Map.Entry<Integer, Integer> e : lengths.entrySet()) a[e.getKey()] = e.getValue();
+        return new DocLengths(a);
+    }
+
+    public int length(int docID) { return docID < lengths.length ? lengths[docID] : 0; }
+
+    /** Numero di documenti vivi (con almeno un token). */
+    public int docCount() { return docCount; }
+
+    public double avgLength() { return avgLength; }
+
+    /** Somma delle lunghezze dei documenti vivi. */
+    public long totalLength() { return totalLength; }
+
+    /** Copia con le lunghezze di added e i docID di deleted azzerati (aggiornamenti incrementali). */
+    public DocLengths update(Map<Integer, Integer> added, BitSet deleted) {
+        int max = lengths.length - 1;
+        for (int id : added.keySet()) max = Math.max(max, id);
+        int[] a = Arrays.copyOf(lengths, max + 1);
+        for (int id = deleted.nextSetBit(0); id >= 0 && id < a.length; id = deleted.nextSetBit(id + 1)) a[id] = 0;
+        for (Map.Entry<Integer, Integer> e : added.entrySet()) a[e.getKey()] = e.getValue();
+        return new DocLengths(a);
+    }
+
+    public void save(Path file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(lengths.length);
+            for (int len : lengths) out.writeInt(len);
+        }
+    }
+
+    public static DocLengths load(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) throw new IOException("File doc.len non valido: " + file);
+            int version = in.readInt();
+            if (version != VERSION && (version < LEGACY_MIN || version > LEGACY_MAX))
+                throw new IOException("Versione formato " + version + " non supportata in " + file + ", reindicizzare");
+            int[] a = new int[in.readInt()];
+            for (int i = 0; i < a.length; i++) a[i] = in.readInt();
+            return new DocLengths(a);
+        }
+    }
+}
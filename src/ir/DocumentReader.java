@@ -0,0 +1,96 @@
+package ir;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.CoderResult;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Lettura di un documento per l'indicizzazione, senza String con il file intero:
+ * i file piccoli sono letti in un buffer, quelli grandi mappati a finestre di
+ * WINDOW byte (FileChannel.map) e decodificati un pezzo alla volta.
+ * La memoria usata non dipende dalla dimensione del documento.
+ * Input non valido nel charset: vedi DecodePolicy.
+ */
+final class DocumentReader extends Reader {
+    static final int SMALL_FILE = 256 * 1024;
+    static final long WINDOW = 64L << 20;
+
+    private final FileChannel channel;
+    private final long size;
+    private final CharsetDecoder decoder;
+    private ByteBuffer bytes;
+    private long windowStart = 0;
+    private boolean flushing = false, done = false;
+
+    private DocumentReader(FileChannel channel, Charset charset, DecodePolicy policy) throws IOException {
+        this.channel = channel;
+        this.size = channel.size();
+        CodingErrorAction action = switch (policy) {
+            case REPLACE -> CodingErrorAction.REPLACE;
+            case IGNORE -> CodingErrorAction.IGNORE;
+            case SKIP -> CodingErrorAction.REPORT;
+        };
+        this.decoder = charset.newDecoder().onMalformedInput(action).onUnmappableCharacter(action);
+        if (size <= SMALL_FILE) {
+            bytes = ByteBuffer.allocate((int) size);
+            while (bytes.hasRemaining() && channel.read(bytes) >= 0) { }
+            bytes.flip();
+        } else {
+            map(0);
+        }
+    }
+
+    static DocumentReader open(Path file, Charset charset, DecodePolicy policy) throws IOException {
+        FileChannel ch = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            return new DocumentReader(ch, charset, policy);
+        } catch (IOException | RuntimeException e) {
+            ch.close();
+            throw e;
+        }
+    }
+
+    private void map(long start) throws IOException {
+        windowStart = start;
+        bytes = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW, size - start));
+    }
+
+    private boolean lastWindow() {
+        return windowStart + bytes.limit() >= size;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (done) return -1;
+        CharBuffer out = CharBuffer.wrap(cbuf, off, len);
+        while (out.hasRemaining()) {
+            if (flushing) {
+                if (decoder.flush(out).isOverflow()) break;
+                done = true;
+                break;
+            }
+            boolean last = lastWindow();
+            CoderResult r = decoder.decode(bytes, out, last);
+            if (r.isError()) r.throwException();
+            if (r.isOverflow()) break;
+            // underflow: finestra finita (restano al più i byte di un carattere spezzato)
+            if (last) flushing = true;
+            else map(windowStart + bytes.position());
+        }
+        int n = out.position() - off;
+        return (n == 0 && done) ? -1 : n;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -8,11 +8,13 @@ import java.nio.file.*;
 import java.util.List;
 import java.util.*;
 import java.io.IOException;
+import java.util.concurrent.ExecutionException;
 
 public class Gui extends JFrame {
     private final JTextField queryField = new JTextField();
     private final JRadioButton andBtn = new JRadioButton("AND", true);
     private final JRadioButton orBtn  = new JRadioButton("OR");
+    private final JRadioButton boolBtn = new JRadioButton("Booleana"); // (a OR b) AND NOT c
     private final JButton searchBtn = new JButton("Cerca");
     private final DefaultListModel<String> listModel = new DefaultListModel<>();
     private final JList<String> resultsList = new JList<>(listModel);
@@ -20,16 +22,12 @@ public class Gui extends JFrame {
     private final JButton reloadBtn = new JButton("Ricarica indice");
 
     // Percorsi di default (stessi usati nel Main)
-    private final Path INDEX_DICT = Paths.get("index.dict");
-    private final Path DOCS_MAP   = Paths.get("docs.map");
-    private final Path CF_FILE    = Paths.get("collection.freq");
-    private final Path STOPLIST   = Paths.get("stoplist.txt");
-    private final Path FREQ_CACHE = Indexer.STOP_BY_FREQ_CACHE;
+    private final IndexFiles FILES = IndexFiles.in(Paths.get(""));
 
-    private Map<String, PostingList> index;
-    private Map<Integer, String> docs;
-    private StopWords stopWords;
-    private Retriever retriever;
+    // indice in uso: le ricerche prendono una versione e la restituiscono, la ricarica la sostituisce
+    private volatile IndexHandle handle;
+    // posting list decodificate (working set delle query), al posto dell'indice intero in heap
+    private final PostingCache postings = new PostingCache(128L << 20);
 
     public Gui() {
         super("IR Mini Search");
@@ -41,8 +39,8 @@ public class Gui extends JFrame {
         // TOP: query + AND/OR + search
         JPanel top = new JPanel(new BorderLayout(8,8));
         JPanel modePanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 8, 0));
-        ButtonGroup bg = new ButtonGroup(); bg.add(andBtn); bg.add(orBtn);
-        modePanel.add(andBtn); modePanel.add(orBtn);
+        ButtonGroup bg = new ButtonGroup(); bg.add(andBtn); bg.add(orBtn); bg.add(boolBtn);
+        modePanel.add(andBtn); modePanel.add(orBtn); modePanel.add(boolBtn);
 
         JPanel leftTop = new JPanel(new BorderLayout(8,8));
         leftTop.add(new JLabel("Query:"), BorderLayout.WEST);
@@ -81,80 +79,131 @@ public class Gui extends JFrame {
             }
         });
 
+        // alla chiusura: ferma il controllo di CURRENT e rilascia la versione aperta (file mappati)
+        addWindowListener(new WindowAdapter() {
+            public void windowClosing(WindowEvent e) {
+                IndexHandle h = handle;
+                if (h != null) h.close();
+            }
+        });
+
         // carica indice allo start
         SwingUtilities.invokeLater(this::loadIndexAsync);
     }
 
     private void loadIndexAsync() {
-        listModel.clear();
-        statusLabel.setText("Carico indice...");
-        searchBtn.setEnabled(false);
+        boolean first = (handle == null);
+        statusLabel.setText(first ? "Carico indice..." : "Ricarico indice...");
+        // durante una ricarica si continua a cercare sulla versione in uso
+        if (first) searchBtn.setEnabled(false);
         reloadBtn.setEnabled(false);
 
         new SwingWorker<Void, Void>() {
             private String message = "OK";
             @Override protected Void doInBackground() {
                 try {
-                    if (!Files.exists(INDEX_DICT) || !Files.exists(DOCS_MAP)) {
-                        message = "index.dict/docs.map mancanti. Esegui l'indicizzazione da CLI.";
-                        return null;
+                    if (first) {
+                        IndexFiles files = IndexVersions.current(FILES);
+                        if (!IndexIO.hasIndex(files) && !Shards.isSharded(files)) {
+                            message = "index.terms/docs.map mancanti. Esegui l'indicizzazione da CLI.";
+                            return null;
+                        }
+                        IndexHandle h = IndexHandle.open(FILES, Gui.this::openIndex);
+                        h.watch(2000); // nuove versioni pubblicate da "Main index" o "Main update"
+                        handle = h;
+                    } else {
+                        handle.reload(true);
                     }
-                    index = IndexIO.load(INDEX_DICT);
-                    docs  = IndexIO.loadDocs(DOCS_MAP);
-                    stopWords = StopWords.loadPrecomputed(CF_FILE, STOPLIST, FREQ_CACHE);
-                    retriever = new Retriever(index, docs, stopWords);
-                } catch (IOException ex) {
+                } catch (IOException | RuntimeException ex) {
                     message = "Errore caricamento: " + ex.getMessage();
                 }
                 return null;
             }
             @Override protected void done() {
-                statusLabel.setText("Indice: " + (index==null ? "—" : index.size()+" termini") + " | " + message);
+                IndexHandle h = handle;
+                statusLabel.setText((h == null ? "Indice: —" : describe(h)) + " | " + message);
                 searchBtn.setEnabled(true);
                 reloadBtn.setEnabled(true);
             }
         }.execute();
     }
 
+    // ogni versione ha le sue cache dei risultati; la cache delle liste è condivisa
+    private IndexHandle.Opened openIndex(IndexFiles files) throws IOException {
+        if (Shards.isSharded(files)) {
+            ShardedSearcher sharded = ShardedSearcher.open(files, postings, List.of());
+            return new IndexHandle.Opened(sharded, sharded.docs(), List.of());
+        }
+        IndexSnapshot snapshot = IndexSnapshot.open(files, postings);
+        QueryCache cache = new QueryCache(1000, 64L << 20);
+        IntersectionCache intersections = new IntersectionCache(500, 32L << 20);
+        snapshot.setCaches(cache, intersections);
+        return new IndexHandle.Opened(snapshot, snapshot.docs(), List.of(cache, intersections));
+    }
+
+    private static String describe(IndexHandle h) {
+        IndexHandle.Version v = h.acquire();
+        try {
+            String size = (v.searcher() instanceof IndexSnapshot s) ? s.index().size() + " termini"
+                    : ((ShardedSearcher) v.searcher()).shards().size() + " shard";
+            return "Indice: " + size + (v.name().isEmpty() ? "" : " (" + v.name() + ")");
+        } finally {
+            h.release(v);
+        }
+    }
+
     private void doSearch() {
         String q = queryField.getText().trim();
         if (q.isEmpty()) {
             JOptionPane.showMessageDialog(this, "Inserisci una query.", "Attenzione", JOptionPane.WARNING_MESSAGE);
             return;
         }
-        if (retriever == null) {
+        IndexHandle h = handle;
+        if (h == null) {
             JOptionPane.showMessageDialog(this, "Indice non caricato.", "Errore", JOptionPane.ERROR_MESSAGE);
             return;
         }
         listModel.clear();
         searchBtn.setEnabled(false);
-        reloadBtn.setEnabled(false);
+        String mode = boolBtn.isSelected() ? "bool" : andBtn.isSelected() ? "and" : "or";
         long t0 = System.nanoTime();
 
-        new SwingWorker<List<Integer>, Void>() {
-            @Override protected List<Integer> doInBackground() {
-                return andBtn.isSelected() ? retriever.searchAnd(q) : retriever.searchOr(q);
+        new SwingWorker<List<String>, Void>() {
+            private String stats = "";
+            @Override protected List<String> doInBackground() throws IOException {
+                // risultati e percorsi dalla stessa versione, anche se intanto ne arriva una nuova
+                IndexHandle.Version v = h.acquire();
+                try {
+                    List<String> lines = new ArrayList<>();
+                    for (ScoredDoc d : v.searcher().search(mode, q, 0)) {
+                        lines.add(String.format("%-6d  %s", d.docID(), v.docs().getOrDefault(d.docID(), "<unknown>")));
+                    }
+                    StringBuilder sb = new StringBuilder("<html>");
+                    for (Object c : v.caches()) sb.append(c).append("<br>");
+                    stats = sb.append(postings).append("<br>").append(h).append("</html>").toString();
+                    return lines;
+                } finally {
+                    h.release(v);
+                }
             }
             @Override protected void done() {
                 try {
-                    List<Integer> ids = get();
+                    List<String> lines = get();
                     long ms = (System.nanoTime()-t0)/1_000_000;
-                    if (ids.isEmpty()) {
+                    if (lines.isEmpty()) {
                         listModel.addElement("Nessun risultato.");
                         statusLabel.setText("0 risultati in " + ms + " ms");
                     } else {
-                        for (int id : ids) {
-                            String path = docs.getOrDefault(id, "<unknown>");
-                            listModel.addElement(String.format("%-6d  %s", id, path));
-                        }
-                        statusLabel.setText(ids.size() + " risultati in " + ms + " ms");
+                        for (String line : lines) listModel.addElement(line);
+                        statusLabel.setText(lines.size() + " risultati in " + ms + " ms");
                     }
                 } catch (Exception ex) {
-                    JOptionPane.showMessageDialog(Gui.this, "Errore ricerca: " + ex.getMessage(),
+                    Throwable cause = (ex instanceof ExecutionException) ? ex.getCause() : ex;
+                    JOptionPane.showMessageDialog(Gui.this, "Errore ricerca: " + cause.getMessage(),
                             "Errore", JOptionPane.ERROR_MESSAGE);
                 } finally {
+                    statusLabel.setToolTipText(stats);
                     searchBtn.setEnabled(true);
-                    reloadBtn.setEnabled(true);
                 }
             }
         }.execute();
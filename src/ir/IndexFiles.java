@@ -0,0 +1,51 @@
+package ir;
+
+import java.nio.file.Path;
+
+/**
+ * Layout dei file di un indice dentro una cartella:
+ *   index.terms      dizionario front-coded a blocchi, mappato (term -> df, offset, lunghezza)
+ *   index.post       posting compresse (gap docID + tf in variable-byte)
+ *   index.pos        posizioni compresse (gap in variable-byte), lette solo per frasi/NEAR
+ *   docs.map         docID\tpath
+ *   collection.freq  term\tcf
+ *   doc.len          lunghezze dei documenti per BM25 (binario)
+ *   docs.stamp       docID\tmtime:size, per riconoscere i file cambiati
+ *   deleted.docs     bitmap dei docID cancellati (aggiornamenti incrementali)
+ *   docs.next        primo docID mai assegnato (aggiornamenti incrementali, vedi IndexUpdater)
+ *   segments/seg_N/  segmenti aggiunti dagli aggiornamenti (index.terms/post/pos)
+ *   shards.map       indice diviso in shard: shard_i\tprimo docID\tultimo docID
+ *   shard_i/         un indice completo per ogni shard (vedi Shards)
+ *   stop_by_freq.cache  stop words per frequenza calcolate con questo indice
+ *   CURRENT          indice versionato: nome della versione in uso (vedi IndexVersions)
+ *   versions/v_N/    le versioni dell'indice, ciascuna con i file qui sopra
+ *   index.dict       vecchio formato testuale (solo lettura, compatibilità)
+ */
+public final class IndexFiles {
+    public final Path dir;
+
+    private IndexFiles(Path dir) { this.dir = dir; }
+
+    public static IndexFiles in(Path dir) { return new IndexFiles(dir); }
+
+    public Path terms()      { return dir.resolve("index.terms"); }
+    public Path postings()   { return dir.resolve("index.post"); }
+    public Path positions()  { return dir.resolve("index.pos"); }
+    public Path docs()       { return dir.resolve("docs.map"); }
+    public Path cf()         { return dir.resolve("collection.freq"); }
+    public Path lengths()    { return dir.resolve("doc.len"); }
+    public Path stamps()     { return dir.resolve("docs.stamp"); }
+    public Path deleted()    { return dir.resolve("deleted.docs"); }
+    public Path nextDoc()    { return dir.resolve("docs.next"); }
+    public Path segmentsDir() { return dir.resolve("segments"); }
+    public Path legacyDict() { return dir.resolve("index.dict"); }
+
+    public Path shards()     { return dir.resolve("shards.map"); }
+    public Path stopByFreq() { return dir.resolve("stop_by_freq.cache"); }
+    public Path current()    { return dir.resolve("CURRENT"); }
+    public Path versionsDir() { return dir.resolve("versions"); }
+
+    public IndexFiles segment(int n) { return in(segmentsDir().resolve("seg_" + n)); }
+    public IndexFiles shard(int n)   { return in(dir.resolve("shard_" + n)); }
+    public IndexFiles version(String name) { return in(versionsDir().resolve(name)); }
+}
@@ -0,0 +1,183 @@
+package ir;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Indice ricaricabile senza fermare le query. La versione in uso sta in un AtomicReference:
+ * ogni query la prende con acquire() e la restituisce con release(), e intanto la versione
+ * resta aperta anche se nel frattempo ne è stata pubblicata un'altra. reload() apre la nuova
+ * versione nel thread che lo chiama (le query continuano sulla vecchia), poi la pubblica con
+ * uno scambio atomico; la vecchia si chiude quando l'ultima query che la usa la restituisce.
+ * Ogni versione ha le sue cache dei risultati: una cache vale per un solo indice e due
+ * versioni possono essere in uso insieme. La PostingCache invece si può condividere
+ * (è per indice) e la chiusura della vecchia versione ne libera le liste.
+ */
+public final class IndexHandle implements Closeable {
+
+    /** Apre l'indice di una cartella: snapshot o shard, con le cache della versione. */
+    public interface Opener {
+        Opened open(IndexFiles files) throws IOException;
+    }
+
+    /** Indice aperto: searcher, docID -> percorso e le sue cache (per le statistiche). */
+    public record Opened(Searcher searcher, Map<Integer, String> docs, List<Object> caches) {}
+
+    /** Una versione aperta; si usa tra acquire() e release(). */
+    public static final class Version {
+        private final String name;
+        private final Opened opened;
+        // riferimenti: 1 dell'handle finché è la versione in uso, più uno per query in corso
+        private final AtomicInteger refs = new AtomicInteger(1);
+
+        private Version(String name, Opened opened) {
+            this.name = name;
+            this.opened = opened;
+        }
+
+        /** Nome della versione (v_N), "" per un indice non versionato. */
+        public String name() { return name; }
+        public Searcher searcher() { return opened.searcher(); }
+        public Map<Integer, String> docs() { return opened.docs(); }
+        public List<Object> caches() { return opened.caches(); }
+
+        private boolean retain() {
+            while (true) {
+                int n = refs.get();
+                if (n <= 0) return false; // già chiusa: il chiamante rilegge la versione in uso
+                if (refs.compareAndSet(n, n + 1)) return true;
+            }
+        }
+    }
+
+    private final IndexFiles root;
+    private final Opener opener;
+    private final AtomicReference<Version> current = new AtomicReference<>();
+    private final Object reloadLock = new Object(); // una ricarica alla volta
+    private final AtomicInteger openVersions = new AtomicInteger();
+    private volatile int reloads = 0;
+    private volatile String lastError = null;
+    private ScheduledExecutorService watcher;
+
+    private IndexHandle(IndexFiles root, Opener opener) {
+        this.root = root;
+        this.opener = opener;
+    }
+
+    /** Apre la versione pubblicata in root (o root stessa se l'indice non è versionato). */
+    public static IndexHandle open(IndexFiles root, Opener opener) throws IOException {
+        IndexHandle h = new IndexHandle(root, opener);
+        h.current.set(h.load(IndexVersions.currentName(root)));
+        return h;
+    }
+
+    private Version load(String name) throws IOException {
+        Version v = new Version(name, opener.open(IndexVersions.resolve(root, name)));
+        openVersions.incrementAndGet();
+        return v;
+    }
+
+    /** Versione in uso, da restituire con release() a fine query. */
+    public Version acquire() {
+        while (true) {
+            Version v = current.get();
+            if (v == null) throw new IllegalStateException("Indice chiuso");
+            if (v.retain()) return v;
+        }
+    }
+
+    public void release(Version v) {
+        if (v.refs.decrementAndGet() > 0) return;
+        // ultima query di una versione sostituita (o dell'handle chiuso)
+        openVersions.decrementAndGet();
+        try {
+            v.opened.searcher().close();
+        } catch (IOException e) {
+            lastError = "Chiusura " + v.name + ": " + e.getMessage();
+        }
+    }
+
+    /** Versione in uso (solo per informazione: per le query usare acquire/release). */
+    public String versionName() {
+        Version v = current.get();
+        return v == null ? "" : v.name;
+    }
+
+    /**
+     * Apre e pubblica la versione indicata ora da CURRENT, se è cambiata (o sempre con force:
+     * per un indice non versionato riscritto sul posto). Le query in corso finiscono sulla vecchia.
+     * @return true se la versione in uso è stata sostituita
+     */
+    public boolean reload(boolean force) throws IOException {
+        synchronized (reloadLock) {
+            Version old = current.get();
+            if (old == null) throw new IllegalStateException("Indice chiuso");
+            String name = IndexVersions.currentName(root);
+            if (!force && name.equals(old.name)) return false;
+            Version fresh;
+            try {
+                fresh = load(name);
+            } catch (IOException | RuntimeException e) {
+                lastError = "Ricarica " + (name.isEmpty() ? root.dir : name) + ": " + e.getMessage();
+                throw e;
+            }
+            if (!current.compareAndSet(old, fresh)) { // chiuso nel frattempo
+                release(fresh);
+                throw new IllegalStateException("Indice chiuso");
+            }
+            reloads++;
+            lastError = null;
+            release(old); // si chiude quando finisce l'ultima query che la usa
+            return true;
+        }
+    }
+
+    /** Controlla CURRENT ogni periodMillis e ricarica quando cambia (thread daemon). */
+    public synchronized void watch(long periodMillis) {
+        if (watcher != null) return;
+        watcher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "index-watch");
+            t.setDaemon(true);
+            return t;
+        });
+        watcher.scheduleWithFixedDelay(() -> {
+            try {
+                reload(false);
+            } catch (IOException | RuntimeException e) {
+                // lastError già impostato; si riprova al prossimo giro (es. versione ancora in scrittura)
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public int reloads() { return reloads; }
+
+    /** Versioni aperte: quella in uso più le sostituite con query ancora in corso. */
+    public int openVersions() { return openVersions.get(); }
+
+    /** Ultimo errore di ricarica o chiusura, null se l'ultima ricarica è riuscita. */
+    public String lastError() { return lastError; }
+
+    @Override
+    public String toString() {
+        String name = versionName();
+        return "indice " + (name.isEmpty() ? "non versionato" : name) + ", ricariche " + reloads
+                + ", versioni aperte " + openVersions.get() + (lastError != null ? ", errore: " + lastError : "");
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (watcher != null) watcher.shutdownNow();
+        }
+        synchronized (reloadLock) {
+            Version v = current.getAndSet(null);
+            if (v != null) release(v);
+        }
+    }
+}
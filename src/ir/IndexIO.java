@@ -5,15 +5,113 @@ import java.nio.file.*;
 import java.util.*;
 
 /**
- * Formato semplice line-based (senza dipendenze):
+ * Formato semplice line-based (senza dipendenze).
+ * L'indice vero e proprio ora è binario (BinaryIndexWriter / MappedIndex);
+ * index.dict resta leggibile per gli indici costruiti con le versioni precedenti.
  * index.dict:
  *   term|df|docID:tf,docID:tf,...
  * docs.map:
  *   docID\tpath
  * collection.freq:
  *   term\tcf
+ * docs.stamp:
+ *   docID\tmtime:size
+ * deleted.docs:
+ *   bitmap binaria (BitSet.toLongArray)
  */
 public class IndexIO {
+    /**
+     * Apre l'indice di una cartella: binario mappato se presente, altrimenti il vecchio index.dict.
+     * Se ci sono segmenti incrementali o documenti cancellati restituisce una vista unificata.
+     */
+    public static Map<String, PostingList> openIndex(IndexFiles files) throws IOException {
+        return openIndex(files, null);
+    }
+
+    /**
+     * Come openIndex(files), con le posting list decodificate tenute in cache (null = nessuna cache).
+     * Il vecchio index.dict è caricato per intero e non usa la cache.
+     */
+    public static Map<String, PostingList> openIndex(IndexFiles files, PostingCache cache) throws IOException {
+        Map<String, PostingList> base;
+        if (Files.exists(files.terms())) base = MappedIndex.open(files);
+        else if (Files.exists(files.legacyDict())) base = load(files.legacyDict());
+        else throw new NoSuchFileException(files.terms().toString());
+
+        List<Integer> segs = listSegments(files);
+        BitSet deleted = loadDeleted(files.deleted());
+        if (segs.isEmpty() && deleted.isEmpty()) {
+            if (base instanceof MappedIndex mi) mi.setPostingCache(cache);
+            return base;
+        }
+        List<Map<String, PostingList>> parts = new ArrayList<>();
+        parts.add(base);
+        for (int n : segs) parts.add(MappedIndex.open(files.segment(n)));
+        SegmentedIndex view = new SegmentedIndex(parts, deleted);
+        view.setPostingCache(cache);
+        return view;
+    }
+
+    /** Numeri dei segmenti presenti in segments/, in ordine crescente. */
+    public static List<Integer> listSegments(IndexFiles files) throws IOException {
+        List<Integer> out = new ArrayList<>();
+        if (!Files.isDirectory(files.segmentsDir())) return out;
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(files.segmentsDir(), "seg_*")) {
+            for (Path p : ds) {
+                if (Files.exists(IndexFiles.in(p).terms()))
+                    out.add(Integer.parseInt(p.getFileName().toString().substring(4)));
+            }
+        }
+        Collections.sort(out);
+        return out;
+    }
+
+    /** Rimuove segmenti e bitmap dei cancellati (dopo una ricostruzione completa o un merge). */
+    public static void clearSegments(IndexFiles files) throws IOException {
+        for (int n : listSegments(files)) {
+            IndexFiles seg = files.segment(n);
+            Files.deleteIfExists(seg.terms());
+            Files.deleteIfExists(seg.postings());
+            Files.deleteIfExists(seg.positions());
+            Files.deleteIfExists(seg.dir);
+        }
+        if (Files.isDirectory(files.segmentsDir())) {
+            try (var rest = Files.list(files.segmentsDir())) {
+                if (rest.findAny().isEmpty()) Files.delete(files.segmentsDir());
+            }
+        }
+        Files.deleteIfExists(files.deleted());
+    }
+
+    /** Lunghezze dei documenti, null se l'indice non ha doc.len (ranking con lunghezze uniformi). */
+    public static DocLengths loadLengths(IndexFiles files) throws IOException {
+        return Files.exists(files.lengths()) ? DocLengths.load(files.lengths()) : null;
+    }
+
+    /**
+     * Stop words dell'indice: stoplist manuale più quelle per frequenza salvate con l'indice
+     * (stop_by_freq.cache nella sua cartella), o in mancanza la cache globale della cartella corrente.
+     */
+    public static StopWords loadStopWords(IndexFiles files) throws IOException {
+        Path byFreq = Files.exists(files.stopByFreq()) ? files.stopByFreq() : Indexer.STOP_BY_FREQ_CACHE;
+        return StopWords.loadPrecomputed(files.cf(), Indexer.STOPLIST_PATH, byFreq);
+    }
+
+    /**
+     * Copia nella cartella dell'indice le stop words per frequenza appena calcolate
+     * (la cache globale è riscritta a ogni indicizzazione, la copia resta con la sua versione).
+     */
+    public static void saveStopWords(IndexFiles files) throws IOException {
+        Path global = Indexer.STOP_BY_FREQ_CACHE;
+        if (!Files.exists(global)) return;
+        if (files.stopByFreq().toAbsolutePath().normalize().equals(global.toAbsolutePath().normalize())) return;
+        Files.copy(global, files.stopByFreq(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    public static boolean hasIndex(IndexFiles files) {
+        return (Files.exists(files.terms()) || Files.exists(files.legacyDict())) && Files.exists(files.docs());
+    }
+
     public static void save(Map<String, PostingList> index, Path file) throws IOException {
         try (BufferedWriter w = Files.newBufferedWriter(file)) {
             for (Map.Entry<String, PostingList> e : index.entrySet()) {
@@ -23,8 +121,7 @@ public class IndexIO {
                 sb.append(term).append("|").append(pl.df()).append("|");
                 List<String> parts = new ArrayList<>();
                 for (int i=0;i<pl.size();i++) {
-                    Posting p = pl.get(i);
-                    parts.add(p.docID + ":" + p.tf);
+                    parts.add(pl.docId(i) + ":" + pl.tf(i));
                 }
                 sb.append(String.join(",", parts));
                 w.write(sb.toString());
@@ -46,9 +143,7 @@ public class IndexIO {
                     String[] p = pair.split(":");
                     int doc = Integer.parseInt(p[0]);
                     int tf = Integer.parseInt(p[1]);
-                    Posting posting = new Posting(doc);
-                    posting.tf = tf;
-                    pl.add(posting);
+                    pl.add(doc, tf);
                 }
             }
             pl.sortByDocId();
@@ -87,4 +182,61 @@ public class IndexIO {
             }
         }
     }
+
+    public static Map<String, Long> loadCF(Path file) throws IOException {
+        Map<String, Long> cf = new HashMap<>();
+        if (!Files.exists(file)) return cf;
+        for (String line : Files.readAllLines(file)) {
+            if (line.isBlank()) continue;
+            int tab = line.indexOf('\t');
+            cf.put(line.substring(0, tab), Long.parseLong(line.substring(tab+1)));
+        }
+        return cf;
+    }
+
+    /** Impronta usata per riconoscere un file modificato: "mtime:size". */
+    public static String stampOf(Path p) throws IOException {
+        return Files.getLastModifiedTime(p).toMillis() + ":" + Files.size(p);
+    }
+
+    /** Impronte di tutti i documenti di una docs.map. */
+    public static Map<Integer, String> stampsOf(Map<Integer, String> docs) throws IOException {
+        Map<Integer, String> stamps = new HashMap<>();
+        for (Map.Entry<Integer, String> e : docs.entrySet()) stamps.put(e.getKey(), stampOf(Paths.get(e.getValue())));
+        return stamps;
+    }
+
+    public static void saveStamps(Map<Integer, String> stamps, Path file) throws IOException {
+        saveDocs(stamps, file); // stesso formato docID\tvalore
+    }
+
+    public static Map<Integer, String> loadStamps(Path file) throws IOException {
+        return Files.exists(file) ? loadDocs(file) : new HashMap<>();
+    }
+
+    public static void saveDeleted(BitSet deleted, Path file) throws IOException {
+        long[] words = deleted.toLongArray();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(words.length);
+            for (long w : words) out.writeLong(w);
+        }
+    }
+
+    public static BitSet loadDeleted(Path file) throws IOException {
+        if (!Files.exists(file)) return new BitSet();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            long[] words = new long[in.readInt()];
+            for (int i = 0; i < words.length; i++) words[i] = in.readLong();
+            return BitSet.valueOf(words);
+        }
+    }
+
+    /** Primo docID libero scritto da un aggiornamento (0 se il file manca). */
+    public static int loadNextDoc(Path file) throws IOException {
+        return Files.exists(file) ? Integer.parseInt(Files.readString(file).strip()) : 0;
+    }
+
+    public static void saveNextDoc(int next, Path file) throws IOException {
+        Files.writeString(file, next + "\n");
+    }
 }
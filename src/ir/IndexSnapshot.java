@@ -0,0 +1,126 @@
+package ir;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Indice aperto una volta e condiviso in sola lettura tra le richieste concorrenti:
+ * posting (mappate), docs.map, stop words e lunghezze non cambiano dopo open().
+ * Il Retriever invece ha buffer suoi e non è thread-safe: ogni richiesta ne prende
+ * uno libero con acquire() e lo restituisce con release(), così i buffer sono riusati
+ * senza che due thread usino lo stesso Retriever. Se ne tengono al più MAX_IDLE liberi;
+ * l'universo dei docID (per i NOT) e la cache token -> stem sono condivisi da tutti:
+ * ogni parola distinta delle query si normalizza una volta.
+ */
+public final class IndexSnapshot implements Searcher {
+    private static final int MAX_IDLE = 64;
+    private static final int STEM_CACHE_SIZE = 200_000;
+
+    private final Map<String, PostingList> index;
+    private final Map<Integer, String> docs;
+    private final StopWords stopWords;
+    private final DocLengths lengths;
+    private final ConcurrentLinkedQueue<Retriever> idle = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+    final CachingStemmer stemmer = new CachingStemmer(STEM_CACHE_SIZE);
+    private volatile DocIdBuffer universe;
+    private volatile QueryCache cache;
+    private volatile IntersectionCache intersections;
+
+    private IndexSnapshot(Map<String, PostingList> index, Map<Integer, String> docs, StopWords stopWords, DocLengths lengths) {
+        this.index = index;
+        this.docs = Collections.unmodifiableMap(docs);
+        this.stopWords = stopWords;
+        this.lengths = lengths;
+    }
+
+    /** Apre l'indice di files; postings può essere null (nessuna cache delle liste). */
+    public static IndexSnapshot open(IndexFiles files, PostingCache postings) throws IOException {
+        Map<String, PostingList> index = IndexIO.openIndex(files, postings);
+        try {
+            Map<Integer, String> docs = IndexIO.loadDocs(files.docs());
+            StopWords sw = IndexIO.loadStopWords(files);
+            return new IndexSnapshot(index, docs, sw, IndexIO.loadLengths(files));
+        } catch (IOException | RuntimeException e) {
+            if (index instanceof Closeable c) c.close();
+            throw e;
+        }
+    }
+
+    /** Cache condivise dai Retriever di questo indice (entrambe thread-safe, null per disattivarle). */
+    public void setCaches(QueryCache cache, IntersectionCache intersections) {
+        this.cache = cache;
+        this.intersections = intersections;
+        while (idle.poll() != null) idleCount.decrementAndGet();
+    }
+
+    public Retriever acquire() {
+        Retriever r = idle.poll();
+        if (r != null) {
+            idleCount.decrementAndGet();
+            return r;
+        }
+        r = new Retriever(index, docs, stopWords, lengths);
+        r.setCache(cache);
+        r.setIntersectionCache(intersections);
+        r.setUniverse(universe());
+        r.setStemmer(stemmer);
+        return r;
+    }
+
+    public void release(Retriever r) {
+        if (idleCount.incrementAndGet() <= MAX_IDLE) idle.offer(r);
+        else idleCount.decrementAndGet();
+    }
+
+    @Override
+    public CollectionStats stats(String query) {
+        Retriever r = acquire();
+        try {
+            return r.stats(query);
+        } finally {
+            release(r);
+        }
+    }
+
+    @Override
+    public List<String> terms(String pattern, int limit) {
+        Retriever r = acquire();
+        try {
+            return r.wildcardTerms(pattern, limit);
+        } finally {
+            release(r);
+        }
+    }
+
+    @Override
+    public List<ScoredDoc> search(String mode, String query, int top, CollectionStats global) {
+        Retriever r = acquire();
+        try {
+            return r.search(mode, query, top, global);
+        } finally {
+            release(r);
+        }
+    }
+
+    private DocIdBuffer universe() {
+        DocIdBuffer u = universe;
+        if (u == null) universe = u = Retriever.universeOf(docs); // calcolo idempotente: una corsa costa solo il doppio lavoro
+        return u;
+    }
+
+    public Map<String, PostingList> index() { return index; }
+
+    /** docID -> percorso (sola lettura). */
+    public Map<Integer, String> docs() { return docs; }
+
+    @Override
+    public void close() throws IOException {
+        idle.clear();
+        idleCount.set(0);
+        if (index instanceof Closeable c) c.close();
+    }
+}
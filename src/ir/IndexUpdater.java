@@ -0,0 +1,158 @@
+package ir;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Aggiornamento incrementale dell'indice, senza ricostruirlo da zero:
+ * - file nuovi o modificati (mtime/size diversi da docs.stamp) finiscono in un
+ *   nuovo segmento segments/seg_N, con docID successivi a tutti quelli esistenti
+ * - il docID vecchio di un file modificato o sparito viene marcato in deleted.docs
+ * - docs.next ricorda il primo docID mai assegnato: è scritto prima del segmento, così
+ *   un aggiornamento interrotto non fa riusare i docID di un segmento già su disco
+ * mergeSegments() fonde base + segmenti in un nuovo indice base eliminando i cancellati.
+ *
+ * collection.freq viene incrementata con i documenti aggiunti; il contributo dei
+ * documenti cancellati non è noto e resta fino alla prossima indicizzazione completa.
+ * Le stop words per frequenza sono quelle già calcolate (stop_by_freq.cache).
+ */
+public class IndexUpdater {
+    private final IndexFiles files;
+    private final StopWords stopWords;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private Charset charset = StandardCharsets.UTF_8;
+    private DecodePolicy decodePolicy = DecodePolicy.REPLACE;
+
+    /** skipped: documenti nuovi o modificati non indicizzati (riprovati al prossimo update). */
+    public record Result(int added, int deleted, int segment, Map<Integer, String> skipped) {}
+
+    public IndexUpdater(IndexFiles files, StopWords stopWords) {
+        this.files = files;
+        this.stopWords = stopWords;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /** Vedi Indexer.setDecoding. */
+    public void setDecoding(Charset charset, DecodePolicy policy) {
+        this.charset = charset;
+        this.decodePolicy = policy;
+    }
+
+    /** Allinea l'indice al contenuto attuale della cartella dataset. */
+    public synchronized Result update(Path datasetDir) throws IOException {
+        Map<Integer, String> docs = IndexIO.loadDocs(files.docs());
+        Map<Integer, String> stamps = IndexIO.loadStamps(files.stamps());
+        BitSet deleted = IndexIO.loadDeleted(files.deleted());
+
+        Map<String, Integer> byPath = new HashMap<>();
+        int maxDocID = deleted.length() - 1;
+        for (Map.Entry<Integer, String> e : docs.entrySet()) {
+            byPath.put(e.getValue(), e.getKey());
+            maxDocID = Math.max(maxDocID, e.getKey());
+        }
+        // docID prenotati ma mai registrati (aggiornamento interrotto o file saltati): non si riusano,
+        // e se ci sono segmenti, che potrebbero contenerli senza un documento, si marcano cancellati
+        int next = IndexIO.loadNextDoc(files.nextDoc());
+        if (next > maxDocID + 1) {
+            if (!IndexIO.listSegments(files).isEmpty()) deleted.set(maxDocID + 1, next);
+            maxDocID = next - 1;
+        }
+
+        List<Path> current = new ArrayList<>();
+        try (var stream = Files.walk(datasetDir)) {
+            stream.filter(Files::isRegularFile).forEach(current::add);
+        }
+        List<Path> changed = new ArrayList<>();
+        int removed = 0;
+        for (Path p : current) {
+            Integer id = byPath.remove(p.toString());
+            if (id == null) {
+                changed.add(p);
+            } else if (!IndexIO.stampOf(p).equals(stamps.get(id))) {
+                markDeleted(id, deleted, docs, stamps);
+                removed++;
+                changed.add(p);
+            }
+        }
+        // quello che resta in byPath non esiste più nel dataset
+        for (int id : byPath.values()) {
+            markDeleted(id, deleted, docs, stamps);
+            removed++;
+        }
+
+        int segment = -1;
+        Map<Integer, Integer> added = new HashMap<>();
+        Map<Integer, String> skipped = Map.of();
+        if (!changed.isEmpty()) {
+            Indexer indexer = new Indexer(stopWords);
+            indexer.setThreads(threads);
+            indexer.setDecoding(charset, decodePolicy);
+            indexer.addDocuments(changed, maxDocID + 1);
+            skipped = indexer.skipped;
+
+            // i docID del segmento sono prenotati prima di scriverlo
+            IndexIO.saveNextDoc(maxDocID + 1 + changed.size(), files.nextDoc());
+            List<Integer> segs = IndexIO.listSegments(files);
+            segment = segs.isEmpty() ? 1 : segs.get(segs.size() - 1) + 1;
+            IndexFiles seg = files.segment(segment);
+            Files.createDirectories(seg.dir);
+            BinaryIndexWriter.write(indexer.index, seg);
+
+            docs.putAll(indexer.docTable);
+            added.putAll(indexer.docLengths);
+            for (Map.Entry<Integer, String> e : indexer.docTable.entrySet())
+                stamps.put(e.getKey(), IndexIO.stampOf(Paths.get(e.getValue())));
+            Map<String, Long> cf = IndexIO.loadCF(files.cf());
+            for (Map.Entry<String, Long> e : indexer.collectionFreq.entrySet()) cf.merge(e.getKey(), e.getValue(), Long::sum);
+            IndexIO.saveCF(cf, files.cf());
+        }
+        DocLengths lengths = IndexIO.loadLengths(files);
+        if (lengths != null) lengths.update(added, deleted).save(files.lengths());
+
+        // docs.map, deleted.docs e docs.stamp per ultimi: se l'aggiornamento si interrompe prima,
+        // il prossimo rivede gli stessi file come nuovi e li mette in un altro segmento, con docID
+        // dopo docs.next; il segmento rimasto a metà ha docID che nessun documento usa
+        IndexIO.saveDeleted(deleted, files.deleted());
+        IndexIO.saveDocs(docs, files.docs());
+        IndexIO.saveStamps(stamps, files.stamps());
+        return new Result(changed.size() - skipped.size(), removed, segment, skipped);
+    }
+
+    private static void markDeleted(int id, BitSet deleted, Map<Integer, String> docs, Map<Integer, String> stamps) {
+        deleted.set(id);
+        docs.remove(id);
+        stamps.remove(id);
+    }
+
+    /** Fonde indice base e segmenti in un nuovo indice base senza i documenti cancellati. */
+    public synchronized void mergeSegments() throws IOException {
+        if (IndexIO.listSegments(files).isEmpty() && IndexIO.loadDeleted(files.deleted()).isEmpty()) return;
+
+        Path tmp = Files.createTempDirectory(files.dir.toAbsolutePath(), "merge-");
+        IndexFiles out = IndexFiles.in(tmp);
+        try {
+            Map<String, PostingList> view = IndexIO.openIndex(files);
+            try (BinaryIndexWriter w = new BinaryIndexWriter(out)) {
+                for (String term : new TreeSet<>(view.keySet())) w.add(term, view.get(term));
+            } finally {
+                if (view instanceof Closeable c) c.close();
+            }
+            Files.move(out.terms(), files.terms(), StandardCopyOption.REPLACE_EXISTING);
+            Files.move(out.postings(), files.postings(), StandardCopyOption.REPLACE_EXISTING);
+            Files.move(out.positions(), files.positions(), StandardCopyOption.REPLACE_EXISTING);
+            IndexIO.clearSegments(files); // anche deleted.docs: i cancellati non sono più nell'indice
+        } finally {
+            Files.deleteIfExists(out.terms());
+            Files.deleteIfExists(out.postings());
+            Files.deleteIfExists(out.positions());
+            Files.deleteIfExists(tmp);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package ir;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Indice versionato: ogni indicizzazione (o aggiornamento) scrive una cartella nuova
+ * versions/v_N e poi la pubblica riscrivendo CURRENT con un rename atomico.
+ * Chi legge apre sempre la versione indicata da CURRENT, quindi non vede mai un indice
+ * scritto a metà; i processi che servono query (IndexHandle) passano alla nuova versione
+ * quando vogliono, e quella vecchia resta intatta finché le sue query non finiscono.
+ * Senza CURRENT l'indice è quello nella cartella principale (layout non versionato).
+ */
+public final class IndexVersions {
+    private static final String PREFIX = "v_";
+
+    private IndexVersions() {}
+
+    public static boolean isVersioned(IndexFiles root) {
+        return Files.exists(root.current());
+    }
+
+    /** Nome della versione pubblicata, "" per un indice non versionato. */
+    public static String currentName(IndexFiles root) throws IOException {
+        return isVersioned(root) ? Files.readString(root.current()).strip() : "";
+    }
+
+    /** Cartella della versione name ("" = la cartella principale). */
+    public static IndexFiles resolve(IndexFiles root, String name) {
+        return name.isEmpty() ? root : root.version(name);
+    }
+
+    /** Cartella dell'indice da aprire: la versione pubblicata, oppure root. */
+    public static IndexFiles current(IndexFiles root) throws IOException {
+        return resolve(root, currentName(root));
+    }
+
+    /** Crea la cartella (vuota) della prossima versione, non ancora pubblicata. */
+    public static IndexFiles next(IndexFiles root) throws IOException {
+        List<Integer> versions = list(root);
+        int n = versions.isEmpty() ? 1 : versions.get(versions.size() - 1) + 1;
+        IndexFiles out = root.version(PREFIX + n);
+        Files.createDirectories(out.dir);
+        return out;
+    }
+
+    /**
+     * Prossima versione come copia di quella pubblicata, da modificare (aggiornamenti incrementali).
+     * index.terms/post/pos, base e segmenti, non sono mai riscritti sul posto (il merge li sostituisce
+     * con un rename) e si condividono con un hard link; gli altri file sono copiati.
+     */
+    public static IndexFiles fork(IndexFiles root) throws IOException {
+        if (!isVersioned(root)) throw new IllegalStateException("Indice non versionato: " + root.dir);
+        IndexFiles from = current(root);
+        IndexFiles out = next(root);
+        try (Stream<Path> walk = Files.walk(from.dir)) {
+            for (Path p : (Iterable<Path>) walk::iterator) {
+                Path target = out.dir.resolve(from.dir.relativize(p).toString());
+                if (Files.isDirectory(p)) {
+                    Files.createDirectories(target);
+                } else if (isImmutable(p)) {
+                    try {
+                        Files.createLink(target, p);
+                    } catch (IOException | UnsupportedOperationException e) {
+                        Files.copy(p, target); // file system senza hard link
+                    }
+                } else {
+                    Files.copy(p, target);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            delete(out);
+            throw e;
+        }
+        return out;
+    }
+
+    private static boolean isImmutable(Path p) {
+        String name = p.getFileName().toString();
+        return name.equals("index.terms") || name.equals("index.post") || name.equals("index.pos");
+    }
+
+    /** Rende version quella in uso: CURRENT è scritto a parte e poi rinominato in un colpo solo. */
+    public static void publish(IndexFiles root, IndexFiles version) throws IOException {
+        Path tmp = root.dir.resolve("CURRENT.tmp");
+        Files.writeString(tmp, version.dir.getFileName().toString() + "\n");
+        try {
+            Files.move(tmp, root.current(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, root.current(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Cancella le versioni più vecchie tenendo le ultime keep e comunque quella pubblicata.
+     * Un processo che usa ancora una versione cancellata continua a leggerla (i file sono già mappati
+     * o caricati); dove il sistema non permette di cancellare file aperti la versione resta.
+     * @return numero di versioni cancellate
+     */
+    public static int prune(IndexFiles root, int keep) throws IOException {
+        String current = currentName(root);
+        List<Integer> versions = list(root);
+        int removed = 0;
+        for (int i = 0; i < versions.size() - Math.max(1, keep); i++) {
+            String name = PREFIX + versions.get(i);
+            if (name.equals(current)) continue;
+            try {
+                delete(root.version(name));
+                removed++;
+            } catch (IOException e) {
+                // file ancora aperti: si riprova al prossimo prune
+            }
+        }
+        return removed;
+    }
+
+    /** Cancella la cartella di una versione (non pubblicata o non più in uso). */
+    public static void delete(IndexFiles version) throws IOException {
+        if (!Files.exists(version.dir)) return;
+        List<Path> paths;
+        try (Stream<Path> walk = Files.walk(version.dir)) {
+            paths = walk.sorted(Comparator.reverseOrder()).toList();
+        }
+        for (Path p : paths) Files.deleteIfExists(p);
+    }
+
+    /** Numeri delle versioni presenti, in ordine crescente. */
+    static List<Integer> list(IndexFiles root) throws IOException {
+        List<Integer> out = new ArrayList<>();
+        if (!Files.isDirectory(root.versionsDir())) return out;
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(root.versionsDir(), PREFIX + "*")) {
+            for (Path p : ds) {
+                try {
+                    out.add(Integer.parseInt(p.getFileName().toString().substring(PREFIX.length())));
+                } catch (NumberFormatException e) {
+                    // non è una versione
+                }
+            }
+        }
+        Collections.sort(out);
+        return out;
+    }
+}
@@ -1,10 +1,13 @@
 package ir;
 
-import java.io.IOException;
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * Costruisce l'inverted index con:
@@ -13,14 +16,22 @@ import java.util.*;
  * - Stop words per frequenza (top %)
  * - Posting list ordinate + skip pointers (span ≈ ⌊√L⌋)
  *
- * Output atteso (salvati da IndexIO):
- *   - index.dict
+ * I file vengono divisi in segmenti contigui elaborati in parallelo
+ * (ognuno con il proprio indice parziale); i parziali sono poi uniti
+ * nell'ordine dei segmenti, quindi i docID restano quelli sequenziali.
+ * Con buildSpimi l'indice non sta mai tutto in memoria: blocchi ordinati
+ * vengono scaricati su disco e uniti alla fine.
+ *
+ * Output atteso (salvati da BinaryIndexWriter / IndexIO):
+ *   - index.terms, index.post
  *   - docs.map
  *   - collection.freq
+ *   - doc.len
  */
 public class Indexer {
     public static final Path STOPLIST_PATH = Paths.get("stoplist.txt");
     public static final Path STOP_BY_FREQ_CACHE = Paths.get("stop_by_freq.cache");
+    static final int STEM_CACHE_SIZE = 500_000;
 
     // Indice: term -> posting list
     Map<String, PostingList> index = new HashMap<>();
@@ -28,10 +39,18 @@ public class Indexer {
     Map<Integer, String> docTable = new HashMap<>();
     // Frequenze globali di collezione: term -> cf
     Map<String, Long> collectionFreq = new HashMap<>();
+    // Lunghezza dei documenti in token (stop words comprese): docID -> lunghezza
+    Map<Integer, Integer> docLengths = new HashMap<>();
+    // Documenti non indicizzati (errore di lettura o input non valido): docID -> motivo
+    Map<Integer, String> skipped = new TreeMap<>();
 
     private final StopWords stopWords;
-    private final Tokenizer tokenizer = new Tokenizer();
-    private final PorterStemmer stemmer = new PorterStemmer();
+    // condiviso tra i thread e tra le due passate: ogni parola distinta si stemma una volta
+    final CachingStemmer stemmer = new CachingStemmer(STEM_CACHE_SIZE);
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private boolean singlePass = false;
+    private Charset charset = StandardCharsets.UTF_8;
+    private DecodePolicy decodePolicy = DecodePolicy.REPLACE;
 
     /**
      * @param stoplistPath          percorso della stop list (una parola per riga, già stemmata o no)
@@ -41,49 +60,186 @@ public class Indexer {
         this.stopWords = new StopWords(stoplistPath, topPercentAsStopWords);
     }
 
+    /** Indexer con stop words già calcolate (aggiornamenti incrementali). */
+    public Indexer(StopWords stopWords) {
+        this.stopWords = stopWords;
+    }
+
+    /** Numero di thread di indicizzazione (default: numero di core). */
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Modalità a passata unica: ogni documento è letto e tokenizzato una sola volta,
+     * le stop words per frequenza vengono tolte dal dizionario alla fine.
+     * Dimezza l'I/O ma tiene in memoria anche le posting dei termini poi scartati.
+     */
+    public void setSinglePass(boolean singlePass) {
+        this.singlePass = singlePass;
+    }
+
+    /**
+     * Charset dei documenti e comportamento sui byte non validi (default UTF-8, REPLACE).
+     * Con SKIP un documento non valido è escluso (finisce in skipped) senza fermare l'indicizzazione.
+     */
+    public void setDecoding(Charset charset, DecodePolicy policy) {
+        this.charset = charset;
+        this.decodePolicy = policy;
+    }
+
     /**
      * Costruisce l'indice percorrendo ricorsivamente la cartella dataset.
      */
     public void build(Path datasetDir) throws IOException {
-        // --- Pass 0: CF (collection frequency) per determinare le stop words per soglia ---
         List<Path> files = new ArrayList<>();
         try (var stream = Files.walk(datasetDir)) {
             stream.filter(Files::isRegularFile).forEach(files::add);
         }
+        for (int docID = 0; docID < files.size(); docID++) docTable.put(docID, files.get(docID).toString());
 
-        for (Path p : files) {
-            String text = Files.readString(p);
-            List<String> toks = tokenizer.tokenize(text);
-            for (String tok : toks) {
-                String t = stemmer.stem(tok.toLowerCase(Locale.ROOT));
-                // incrementa cf
-                Long old = collectionFreq.get(t);
-                if (old == null) collectionFreq.put(t, 1L);
-                else collectionFreq.put(t, old + 1L);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            if (singlePass) {
+                // --- Passata unica: CF e posting insieme, filtrando solo la stop list ---
+                List<Segment> segments = runSegments(pool, files, 0, true, true);
+                mergeStats(segments);
+                stopWords.computeStopByFrequency(collectionFreq);
+                // potatura differita: le posizioni contano già anche le parole rimosse
+                index = mergeIndex(segments);
+                index.keySet().removeIf(stopWords::isStop);
+            } else {
+                // --- Pass 0: CF (collection frequency) per determinare le stop words per soglia ---
+                mergeStats(runSegments(pool, files, 0, true, false));
+
+                // Calcola l'insieme di stop words per frequenza (e salva cache)
+                stopWords.computeStopByFrequency(collectionFreq);
+
+                // --- Pass 1: costruzione indice vero e proprio ---
+                List<Segment> segments = runSegments(pool, files, 0, false, true);
+                mergeStats(segments); // qui solo le lunghezze: le cf sono già complete
+                index = mergeIndex(segments);
             }
+        } finally {
+            pool.shutdown();
+        }
+
+        // Ordina posting list per docID, calcola df e skip pointers
+        for (PostingList pl : index.values()) {
+            pl.sortByDocId();
+            pl.computeSkips(); // span ≈ ⌊√L⌋
         }
+    }
+
+    /**
+     * Indicizza solo i file indicati, con docID consecutivi da firstDocID,
+     * usando le stop words correnti senza ricalcolarle.
+     */
+    public void addDocuments(List<Path> files, int firstDocID) throws IOException {
+        for (int i = 0; i < files.size(); i++) docTable.put(firstDocID + i, files.get(i).toString());
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Segment> segments = runSegments(pool, files, firstDocID, true, true);
+            mergeStats(segments);
+            index = mergeIndex(segments);
+        } finally {
+            pool.shutdown();
+        }
+        for (PostingList pl : index.values()) {
+            pl.sortByDocId();
+            pl.computeSkips();
+        }
+    }
+
+    // unisce collection frequency e lunghezze dei documenti dei segmenti; i documenti saltati escono da docTable
+    private void mergeStats(List<Segment> segments) {
+        for (Segment s : segments) {
+            for (Map.Entry<String, Long> e : s.cf.entrySet()) collectionFreq.merge(e.getKey(), e.getValue(), Long::sum);
+            docLengths.putAll(s.lengths);
+            skipped.putAll(s.skipped);
+            docTable.keySet().removeAll(s.skipped.keySet());
+        }
+    }
 
-        // Calcola l'insieme di stop words per frequenza (e salva cache)
-        stopWords.computeStopByFrequency(collectionFreq);
+    private static Map<String, PostingList> mergeIndex(List<Segment> segments) {
+        if (segments.size() == 1) return segments.get(0).index;
+        // i segmenti sono in ordine di docID: basta accodare
+        Map<String, PostingList> merged = new HashMap<>();
+        for (Segment s : segments) {
+            for (Map.Entry<String, PostingList> e : s.index.entrySet()) {
+                PostingList pl = merged.get(e.getKey());
+                if (pl == null) merged.put(e.getKey(), e.getValue());
+                else pl.append(e.getValue());
+            }
+        }
+        return merged;
+    }
 
-        // --- Pass 1: costruzione indice vero e proprio ---
-        int docID = 0;
-        for (Path p : files) {
-            String text = Files.readString(p);
-            docTable.put(docID, p.toString());
+    /** Indice parziale di un intervallo contiguo di documenti. */
+    private static final class Segment {
+        final Map<String, Long> cf = new HashMap<>();
+        final Map<String, PostingList> index = new HashMap<>();
+        final Map<Integer, Integer> lengths = new HashMap<>();
+        final Map<Integer, String> skipped = new TreeMap<>(); // docID -> motivo
+        long bytes = 0; // stima dell'occupazione in heap (usata dalla modalità a blocchi)
+    }
 
-            Map<String, Posting> local = new HashMap<>(); // accumula tf/posizioni per questo documento
-            int pos = 0;
+    // stime grossolane per il budget di memoria: voce di HashMap + String + PostingList, un posting
+    private static final long TERM_BYTES = 160;
+    private static final long POSTING_BYTES = 16;
 
-            List<String> toks = tokenizer.tokenize(text);
-            for (String tok : toks) {
-                String t = stemmer.stem(tok.toLowerCase(Locale.ROOT));
+    private List<Segment> runSegments(ExecutorService pool, List<Path> files, int firstDocID,
+                                      boolean countCF, boolean postings) throws IOException {
+        // qualche segmento in più dei thread per bilanciare file di dimensioni diverse
+        int n = Math.max(1, (threads == 1) ? 1 : Math.min(files.size(), threads * 4));
+        List<Future<Segment>> futures = new ArrayList<>();
+        for (int k = 0; k < n; k++) {
+            int from = (int) ((long) files.size() * k / n);
+            int to = (int) ((long) files.size() * (k + 1) / n);
+            futures.add(pool.submit(() -> indexSegment(files, from, to, firstDocID, countCF, postings)));
+        }
+        List<Segment> out = new ArrayList<>(futures.size());
+        try {
+            for (Future<Segment> f : futures) out.add(f.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Indicizzazione interrotta", e);
+        } catch (ExecutionException e) {
+            Throwable c = e.getCause();
+            if (c instanceof IOException io) throw io;
+            if (c instanceof RuntimeException re) throw re;
+            throw new IOException(c);
+        }
+        return out;
+    }
 
-                // filtri stop (lista + frequenza)
-                if (stopWords.isStop(t)) {
-                    pos++;
-                    continue;
-                }
+    private Segment indexSegment(List<Path> files, int from, int to, int firstDocID,
+                                 boolean countCF, boolean postings) throws IOException {
+        Segment seg = new Segment();
+        Tokenizer tokenizer = new Tokenizer();
+        for (int i = from; i < to; i++) {
+            indexDocument(seg, firstDocID + i, files.get(i), tokenizer, countCF, postings);
+        }
+        return seg;
+    }
+
+    /**
+     * Tokenizza un documento: con countCF accumula le collection frequency,
+     * con postings aggiunge le sue posting al segmento (saltando i termini già noti come stop).
+     * Tutto passa prima da una mappa locale al documento: se la lettura fallisce
+     * (I/O, o input non valido con DecodePolicy.SKIP) il segmento resta intatto
+     * e il documento viene solo segnalato in seg.skipped.
+     */
+    private void indexDocument(Segment seg, int docID, Path file, Tokenizer tokenizer,
+                               boolean countCF, boolean postings) {
+        Map<String, Posting> local = new HashMap<>(); // accumula tf/posizioni per questo documento
+        int pos = 0;
+
+        // token in streaming dal file: niente String con il documento intero
+        try (Reader in = DocumentReader.open(file, charset, decodePolicy)) {
+            Tokenizer.TokenStream toks = tokenizer.stream(in);
+            for (String tok; (tok = toks.next()) != null; ) {
+                String t = stemmer.stem(tok.toLowerCase(Locale.ROOT));
 
                 // ---- NIENTE lambda: no computeIfAbsent con cattura di docID ----
                 Posting posting = local.get(t);
@@ -91,32 +247,177 @@ public class Indexer {
                     posting = new Posting(docID);
                     local.put(t, posting);
                 }
-                posting.tf++;
-                posting.addPosition(pos);
-
+                posting.tf++; // tutte le occorrenze, stop words comprese: serve per le cf
+                // filtri stop (lista + frequenza): le posizioni contano comunque
+                if (postings && !stopWords.isStop(t)) posting.addPosition(pos);
                 pos++;
             }
+        } catch (IOException e) {
+            seg.skipped.put(docID, file + ": " + e);
+            return;
+        }
+        if (postings) seg.lengths.put(docID, pos);
+
+        // unisci nel dizionario del segmento
+        for (Map.Entry<String, Posting> e : local.entrySet()) {
+            String term = e.getKey();
+            Posting docPosting = e.getValue();
+            if (countCF) seg.cf.merge(term, (long) docPosting.tf, Long::sum);
+            if (!postings || docPosting.positions.isEmpty()) continue; // stop word
+
+            PostingList pl = seg.index.get(term);
+            if (pl == null) {
+                pl = new PostingList();
+                seg.index.put(term, pl);
+                seg.bytes += TERM_BYTES + 2L * term.length();
+            }
+            pl.add(docPosting);
+            seg.bytes += POSTING_BYTES + 4L * docPosting.tf;
+        }
+    }
 
-            // unisci nel dizionario globale
-            for (Map.Entry<String, Posting> e : local.entrySet()) {
-                String term = e.getKey();
-                Posting docPosting = e.getValue();
+    // ---------------------------------------------------------------------
+    // Modalità a blocchi (SPIMI): indice limitato dal disco, non dall'heap
+    // ---------------------------------------------------------------------
 
-                PostingList pl = index.get(term);
-                if (pl == null) {
-                    pl = new PostingList();
-                    index.put(term, pl);
+    /**
+     * Indicizza in passata unica accumulando posting in memoria finché la stima
+     * supera memoryBudget byte; a quel punto il blocco viene scritto su disco come
+     * run ordinata per termine. Alla fine le run sono unite con un merge a k vie
+     * direttamente nei file di out, scartando le stop words per frequenza.
+     *
+     * @return numero di termini scritti nel dizionario
+     */
+    public int buildSpimi(Path datasetDir, IndexFiles out, long memoryBudget) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (var stream = Files.walk(datasetDir)) {
+            stream.filter(Files::isRegularFile).forEach(files::add);
+        }
+        Path runDir = Files.createTempDirectory(out.dir.toAbsolutePath(), "spimi-");
+        List<Path> runs = new ArrayList<>();
+        try {
+            Tokenizer tokenizer = new Tokenizer();
+            Segment block = new Segment();
+            for (int docID = 0; docID < files.size(); docID++) {
+                Path p = files.get(docID);
+                docTable.put(docID, p.toString());
+                indexDocument(block, docID, p, tokenizer, true, true);
+                if (block.bytes >= memoryBudget) {
+                    runs.add(writeRun(block, runDir, runs.size()));
+                    mergeStats(List.of(block));
+                    block = new Segment();
                 }
-                pl.add(docPosting);
             }
+            if (!block.index.isEmpty() || runs.isEmpty()) runs.add(writeRun(block, runDir, runs.size()));
+            mergeStats(List.of(block));
 
-            docID++;
+            stopWords.computeStopByFrequency(collectionFreq);
+            return mergeRuns(runs, out);
+        } finally {
+            for (Path r : runs) Files.deleteIfExists(r);
+            Files.deleteIfExists(runDir);
         }
+    }
 
-        // Ordina posting list per docID, calcola df e skip pointers
-        for (PostingList pl : index.values()) {
-            pl.sortByDocId();
-            pl.computeSkips(); // span ≈ ⌊√L⌋
+    /**
+     * Run su disco: per ogni termine in ordine
+     *   term (UTF) | df | per posting: gap docID, tf, gap posizioni (variable-byte)
+     */
+    private static Path writeRun(Segment block, Path runDir, int n) throws IOException {
+        Path file = runDir.resolve("run" + n + ".bin");
+        List<String> sorted = new ArrayList<>(block.index.keySet());
+        Collections.sort(sorted);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(sorted.size());
+            for (String term : sorted) {
+                PostingList pl = block.index.get(term);
+                out.writeUTF(term);
+                out.writeInt(pl.size());
+                int prevDoc = 0;
+                for (int i = 0; i < pl.size(); i++) {
+                    VByte.write(out, pl.docId(i) - prevDoc);
+                    VByte.write(out, pl.tf(i));
+                    VByte.write(out, pl.positionCount(i));
+                    int prevPos = 0;
+                    for (int k = 0; k < pl.positionCount(i); k++) {
+                        VByte.write(out, pl.position(i, k) - prevPos);
+                        prevPos = pl.position(i, k);
+                    }
+                    prevDoc = pl.docId(i);
+                }
+            }
+        }
+        return file;
+    }
+
+    /** Lettore sequenziale di una run: espone il termine corrente e la sua posting list. */
+    private static final class RunReader implements Closeable {
+        final int order;
+        final DataInputStream in;
+        int remaining;
+        String term;
+        PostingList postings;
+
+        RunReader(Path file, int order) throws IOException {
+            this.order = order;
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)));
+            this.remaining = in.readInt();
+        }
+
+        boolean next() throws IOException {
+            if (remaining == 0) { term = null; postings = null; return false; }
+            remaining--;
+            term = in.readUTF();
+            int df = in.readInt();
+            postings = new PostingList(df);
+            int doc = 0;
+            for (int i = 0; i < df; i++) {
+                doc += VByte.read(in);
+                postings.add(doc, VByte.read(in));
+                int n = VByte.read(in), pos = 0;
+                for (int k = 0; k < n; k++) {
+                    pos += VByte.read(in);
+                    postings.addPosition(pos);
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException { in.close(); }
+    }
+
+    private int mergeRuns(List<Path> runs, IndexFiles out) throws IOException {
+        // a parità di termine vince la run precedente: i docID restano crescenti
+        PriorityQueue<RunReader> heap = new PriorityQueue<>(
+            Comparator.<RunReader, String>comparing(r -> r.term).thenComparingInt(r -> r.order));
+        List<RunReader> readers = new ArrayList<>();
+        try (BinaryIndexWriter writer = new BinaryIndexWriter(out)) {
+            for (int i = 0; i < runs.size(); i++) {
+                RunReader r = new RunReader(runs.get(i), i);
+                readers.add(r);
+                if (r.next()) heap.add(r);
+            }
+            while (!heap.isEmpty()) {
+                RunReader first = heap.poll();
+                String term = first.term;
+                PostingList merged = first.postings;
+                List<RunReader> advanced = new ArrayList<>();
+                advanced.add(first);
+                while (!heap.isEmpty() && heap.peek().term.equals(term)) {
+                    RunReader r = heap.poll();
+                    merged.append(r.postings);
+                    advanced.add(r);
+                }
+                if (!stopWords.isStop(term)) {
+                    merged.computeSkips();
+                    writer.add(term, merged);
+                }
+                for (RunReader r : advanced) if (r.next()) heap.add(r);
+            }
+            return writer.termCount();
+        } finally {
+            for (RunReader r : readers) r.close();
         }
     }
 }
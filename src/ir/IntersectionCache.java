@@ -0,0 +1,149 @@
+package ir;
+
+import java.util.*;
+
+/**
+ * Cache delle intersezioni intermedie per sottoinsiemi di termini (coppie e query AND intere).
+ * Un sottoinsieme entra in cache solo dopo essere stato visto ADMIT_AFTER volte
+ * (così le coppie occasionali non scacciano quelle frequenti); i contatori sono
+ * dimezzati periodicamente per far invecchiare i sottoinsiemi non più richiesti.
+ * I risultati sono tenuti in una QueryCache (LRU, limitata in voci e byte); i sottoinsiemi
+ * presenti sono indicizzati per termine, così una query prova solo quelli che contiene.
+ * Thread-safe.
+ */
+public final class IntersectionCache {
+    static final int ADMIT_AFTER = 2;
+
+    private final QueryCache store;
+    private final Map<String, Integer> seen = new HashMap<>();
+    private final int maxTracked;
+    // sottoinsiemi messi in cache, per termine: si provano solo quelli che esistono. Le voci
+    // scartate dalla LRU restano qui finché una ricerca non le trova assenti o si fa pulizia
+    private final Map<String, List<String>> entries = new HashMap<>();
+    private final Map<String, Set<String>> byTerm = new HashMap<>();
+    private final int maxEntries;
+    private long hits = 0, misses = 0, admitted = 0, rejected = 0;
+
+    public IntersectionCache(int maxEntries, long maxBytes) {
+        this.store = new QueryCache(maxEntries, maxBytes);
+        this.maxEntries = Math.max(1, maxEntries);
+        this.maxTracked = Math.max(64, 8 * maxEntries);
+    }
+
+    static String key(Collection<String> sortedTerms) {
+        return QueryCache.key("and", sortedTerms);
+    }
+
+    void bind(Object index) {
+        synchronized (this) {
+            if (store.bind(index)) {
+                seen.clear();
+                entries.clear();
+                byTerm.clear();
+            }
+        }
+    }
+
+    /**
+     * Il sottoinsieme (di almeno due termini) più grande di terms già in cache, o null.
+     * terms: termini distinti e ordinati; in found finiscono i termini del sottoinsieme trovato.
+     */
+    int[] largestSubset(List<String> terms, List<String> found) {
+        int[] hit = search(terms, found);
+        synchronized (this) {
+            if (hit != null) hits++;
+            else misses++;
+        }
+        return hit;
+    }
+
+    // candidati: le voci registrate per i termini della query e contenute nella query,
+    // dalla più grande (a parità, in ordine di chiave)
+    private synchronized int[] search(List<String> terms, List<String> found) {
+        if (terms.size() < 2) return null;
+        Set<String> query = new HashSet<>(terms);
+        Set<String> contained = new HashSet<>();
+        for (String t : terms) {
+            Set<String> keys = byTerm.get(t);
+            if (keys == null) continue;
+            for (String k : keys) if (query.containsAll(entries.get(k))) contained.add(k);
+        }
+        List<String> candidates = new ArrayList<>(contained);
+        candidates.sort(Comparator.comparingInt((String k) -> -entries.get(k).size()).thenComparing(k -> k));
+        for (String k : candidates) {
+            int[] hit = store.peek(k);
+            if (hit != null) {
+                found.addAll(entries.get(k));
+                return hit;
+            }
+            unregister(k); // scartata dalla LRU
+        }
+        return null;
+    }
+
+    private void register(String key, List<String> sortedTerms) {
+        if (entries.put(key, List.copyOf(sortedTerms)) != null) return;
+        for (String t : sortedTerms) byTerm.computeIfAbsent(t, x -> new HashSet<>()).add(key);
+        if (entries.size() > 2 * maxEntries) {
+            for (String k : new ArrayList<>(entries.keySet())) if (store.peek(k) == null) unregister(k);
+        }
+    }
+
+    private void unregister(String key) {
+        List<String> sub = entries.remove(key);
+        if (sub == null) return;
+        for (String t : sub) {
+            Set<String> keys = byTerm.get(t);
+            if (keys != null && keys.remove(key) && keys.isEmpty()) byTerm.remove(t);
+        }
+    }
+
+    /** Conta una richiesta del sottoinsieme; true se va ammesso in cache adesso. */
+    synchronized boolean admit(String key) {
+        int c = seen.merge(key, 1, Integer::sum);
+        if (seen.size() > maxTracked) age();
+        if (c >= ADMIT_AFTER) {
+            seen.remove(key);
+            admitted++;
+            return true;
+        }
+        rejected++;
+        return false;
+    }
+
+    private void age() {
+        seen.replaceAll((k, v) -> v / 2);
+        seen.values().removeIf(v -> v == 0);
+    }
+
+    boolean contains(String key) { return store.peek(key) != null; }
+
+    /** Mette in cache l'intersezione dei termini (distinti e ordinati) con chiave key(sortedTerms). */
+    synchronized void put(List<String> sortedTerms, int[] ids) {
+        String key = key(sortedTerms);
+        store.put(key, ids);
+        if (store.peek(key) != null) register(key, sortedTerms); // i risultati troppo grandi non entrano
+    }
+
+    public synchronized long hits() { return hits; }
+    public synchronized long misses() { return misses; }
+    public synchronized long admitted() { return admitted; }
+    public synchronized long rejected() { return rejected; }
+
+    public void invalidate() {
+        synchronized (this) {
+            store.invalidate();
+            seen.clear();
+            entries.clear();
+            byTerm.clear();
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        long total = hits + misses;
+        return String.format(Locale.ROOT, "intersezioni: %d voci, %d KB, hit %d / miss %d (%.1f%%), ammesse %d, rifiutate %d, evicted %d",
+                store.size(), store.bytes() / 1024, hits, misses, total == 0 ? 0.0 : 100.0 * hits / total,
+                admitted, rejected, store.evictions());
+    }
+}
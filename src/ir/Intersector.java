@@ -0,0 +1,37 @@
+package ir;
+
+/**
+ * Intersezione di due array ordinati di docID, blocco contro blocco.
+ * SCALAR è il merge classico; l'implementazione SIMD (src-simd/ir/SimdIntersector,
+ * Vector API) si compila a parte e viene caricata per riflessione, così la
+ * compilazione normale non dipende da jdk.incubator.vector.
+ */
+interface Intersector {
+    /**
+     * Scrive in out l'intersezione di a[0..na) e b[0..nb), entrambi crescenti,
+     * e restituisce quanti elementi ha scritto. out deve avere almeno min(na, nb) posti.
+     */
+    int intersect(int[] a, int na, int[] b, int nb, int[] out);
+
+    Intersector SCALAR = (a, na, b, nb, out) -> {
+        int i = 0, j = 0, n = 0;
+        while (i < na && j < nb) {
+            if (a[i] < b[j]) i++;
+            else if (a[i] > b[j]) j++;
+            else { out[n++] = a[i]; i++; j++; }
+        }
+        return n;
+    };
+
+    /**
+     * L'implementazione SIMD, o null se la classe non è nel classpath o il modulo
+     * jdk.incubator.vector non è stato aggiunto (java --add-modules jdk.incubator.vector).
+     */
+    static Intersector simd() {
+        try {
+            return (Intersector) Class.forName("ir.SimdIntersector").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+}
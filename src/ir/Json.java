@@ -0,0 +1,169 @@
+package ir;
+
+import java.util.*;
+
+/**
+ * Quel poco di JSON che serve per le risposte del server, l'output batch
+ * e la lettura delle risposte degli shard remoti (senza dipendenze).
+ */
+final class Json {
+    private Json() {}
+
+    /** s tra virgolette, con l'escape di virgolette, backslash e caratteri di controllo. */
+    static String quote(String s) {
+        StringBuilder sb = new StringBuilder(s.length() + 2);
+        quote(sb, s);
+        return sb.toString();
+    }
+
+    static void quote(StringBuilder sb, String s) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+                    else sb.append(c);
+                }
+            }
+        }
+        sb.append('"');
+    }
+
+    /**
+     * Legge un valore JSON: oggetti come Map, array come List, numeri come Double,
+     * poi String, Boolean e null.
+     * @throws IllegalArgumentException se il testo non è JSON valido
+     */
+    static Object parse(String text) {
+        Parser p = new Parser(text);
+        Object v = p.value();
+        p.skipSpace();
+        if (p.i != text.length()) throw p.error("testo dopo il valore");
+        return v;
+    }
+
+    private static final class Parser {
+        private final String s;
+        private int i = 0;
+
+        Parser(String s) { this.s = s; }
+
+        Object value() {
+            skipSpace();
+            if (i >= s.length()) throw error("fine inattesa");
+            char c = s.charAt(i);
+            return switch (c) {
+                case '{' -> object();
+                case '[' -> array();
+                case '"' -> string();
+                case 't' -> literal("true", Boolean.TRUE);
+                case 'f' -> literal("false", Boolean.FALSE);
+                case 'n' -> literal("null", null);
+                default -> {
+                    if (c == '-' || (c >= '0' && c <= '9')) yield number();
+                    throw error("carattere inatteso '" + c + "'");
+                }
+            };
+        }
+
+        private Map<String, Object> object() {
+            Map<String, Object> out = new LinkedHashMap<>();
+            i++; // {
+            skipSpace();
+            if (peek() == '}') { i++; return out; }
+            while (true) {
+                skipSpace();
+                if (peek() != '"') throw error("attesa una chiave");
+                String key = string();
+                skipSpace();
+                expect(':');
+                out.put(key, value());
+                skipSpace();
+                if (peek() == ',') { i++; continue; }
+                expect('}');
+                return out;
+            }
+        }
+
+        private List<Object> array() {
+            List<Object> out = new ArrayList<>();
+            i++; // [
+            skipSpace();
+            if (peek() == ']') { i++; return out; }
+            while (true) {
+                out.add(value());
+                skipSpace();
+                if (peek() == ',') { i++; continue; }
+                expect(']');
+                return out;
+            }
+        }
+
+        private String string() {
+            StringBuilder sb = new StringBuilder();
+            i++; // "
+            while (true) {
+                if (i >= s.length()) throw error("stringa non chiusa");
+                char c = s.charAt(i++);
+                if (c == '"') return sb.toString();
+                if (c != '\\') { sb.append(c); continue; }
+                if (i >= s.length()) throw error("escape incompleto");
+                char e = s.charAt(i++);
+                switch (e) {
+                    case 'n' -> sb.append('\n');
+                    case 'r' -> sb.append('\r');
+                    case 't' -> sb.append('\t');
+                    case 'b' -> sb.append('\b');
+                    case 'f' -> sb.append('\f');
+                    case 'u' -> {
+                        if (i + 4 > s.length()) throw error("escape incompleto");
+                        try {
+                            sb.append((char) Integer.parseInt(s.substring(i, i + 4), 16));
+                        } catch (NumberFormatException ex) {
+                            throw error("escape non valido");
+                        }
+                        i += 4;
+                    }
+                    default -> sb.append(e); // " \\ /
+                }
+            }
+        }
+
+        private Double number() {
+            int start = i;
+            while (i < s.length() && "+-0123456789.eE".indexOf(s.charAt(i)) >= 0) i++;
+            try {
+                return Double.valueOf(s.substring(start, i));
+            } catch (NumberFormatException e) {
+                throw error("numero non valido");
+            }
+        }
+
+        private Object literal(String word, Object v) {
+            if (!s.startsWith(word, i)) throw error("valore non valido");
+            i += word.length();
+            return v;
+        }
+
+        private char peek() { return i < s.length() ? s.charAt(i) : 0; }
+
+        private void expect(char c) {
+            if (peek() != c) throw error("atteso '" + c + "'");
+            i++;
+        }
+
+        void skipSpace() {
+            while (i < s.length() && Character.isWhitespace(s.charAt(i))) i++;
+        }
+
+        IllegalArgumentException error(String msg) {
+            return new IllegalArgumentException("JSON non valido (" + msg + ", posizione " + i + ")");
+        }
+    }
+}
@@ -1,13 +1,19 @@
 package ir;
 
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.util.*;
 
 public class Main {
-    // Percorsi dove salviamo l'indice
-    static final Path INDEX_DICT = Paths.get("index.dict");
-    static final Path DOCS_MAP   = Paths.get("docs.map");
-    static final Path CF_FILE    = Paths.get("collection.freq");
+    // Cartella dove salviamo l'indice (index.terms, index.post, docs.map, collection.freq)
+    static final IndexFiles FILES = IndexFiles.in(Paths.get(""));
 
     public static void main(String[] args) throws Exception {
         if (args.length < 1) {
@@ -16,46 +22,361 @@ public class Main {
         }
         switch (args[0]) {
             case "index" -> {
-                if (args.length < 3) { System.err.println("Uso: index <cartella_dataset> <stoplist.txt> [freqThresholdPercent=1.0]"); return; }
+                Map<String, String> opts = new HashMap<>();
+                args = splitOptions(args, opts);
+                if (args.length < 3) { System.err.println("Uso: index <cartella_dataset> <stoplist.txt> [freqThresholdPercent=1.0] [--threads=N] [--single-pass] [--mem-budget=256m] [--charset=UTF-8] [--on-malformed=replace|ignore|skip] [--shards=N] [--keep=2] [--in-place]"); return; }
                 Path dataset = Paths.get(args[1]);
                 Path stoplist = Paths.get(args[2]);
                 double thrPct = (args.length >= 4) ? Double.parseDouble(args[3]) : 1.0; // top 1% come stop words
                 Indexer indexer = new Indexer(stoplist, thrPct);
-                indexer.build(dataset);
-                IndexIO.save(indexer.index, INDEX_DICT);
-                IndexIO.saveDocs(indexer.docTable, DOCS_MAP);
-                IndexIO.saveCF(indexer.collectionFreq, CF_FILE);
-                System.out.println("Indicizzazione completata. Termini nel dizionario: " + indexer.index.size());
+                if (opts.containsKey("threads")) indexer.setThreads(Integer.parseInt(opts.get("threads")));
+                indexer.setDecoding(charsetOption(opts), policyOption(opts));
+                indexer.setSinglePass(opts.containsKey("single-pass"));
+                // versionato: si scrive in versions/v_N e si pubblica alla fine, chi serve query non vede file a metà.
+                // --in-place riscrive i file della cartella principale: solo senza CURRENT, e nessuno deve averli aperti
+                boolean versioned = !opts.containsKey("in-place");
+                if (!versioned && IndexVersions.isVersioned(FILES)) {
+                    System.err.println("Indice versionato (" + FILES.current() + "): --in-place non è ammesso, una versione pubblicata potrebbe essere in uso");
+                    return;
+                }
+                IndexFiles out = versioned ? IndexVersions.next(FILES) : FILES;
+                int terms;
+                if (opts.containsKey("mem-budget")) {
+                    // indicizzazione a blocchi: run parziali su disco + merge finale
+                    terms = indexer.buildSpimi(dataset, out, parseBytes(opts.get("mem-budget")));
+                } else {
+                    indexer.build(dataset);
+                    BinaryIndexWriter.write(indexer.index, out);
+                    terms = indexer.index.size();
+                }
+                IndexIO.saveDocs(indexer.docTable, out.docs());
+                IndexIO.saveCF(indexer.collectionFreq, out.cf());
+                DocLengths.of(indexer.docLengths).save(out.lengths());
+                IndexIO.saveStamps(IndexIO.stampsOf(indexer.docTable), out.stamps());
+                IndexIO.saveStopWords(out);
+                IndexIO.clearSegments(out); // ricostruzione completa: niente segmenti incrementali
+                Files.deleteIfExists(out.nextDoc()); // i docID ripartono da 0
+                System.out.println("Indicizzazione completata. Termini nel dizionario: " + terms);
+                System.out.println(indexer.stemmer);
+                reportSkipped(indexer.skipped);
+                if (opts.containsKey("shards")) {
+                    // partizione per documenti: shard_i/ con intervalli di docID disgiunti
+                    int n = Shards.split(out, Integer.parseInt(opts.get("shards")));
+                    System.out.println("Indice diviso in " + n + " shard (" + out.shards() + ")");
+                } else {
+                    Shards.clear(out);
+                }
+                if (versioned) publish(out, opts);
+            }
+            case "update" -> {
+                Map<String, String> opts = new HashMap<>();
+                args = splitOptions(args, opts);
+                if (args.length < 2) { System.err.println("Uso: update <cartella_dataset> [--threads=N] [--merge-at=4] [--charset=UTF-8] [--on-malformed=replace|ignore|skip] [--keep=2]"); return; }
+                if (Shards.isSharded(IndexVersions.current(FILES))) { System.err.println("Indice diviso in shard: gli aggiornamenti incrementali non sono supportati, reindicizzare con index --shards=N"); return; }
+                // versionato: l'aggiornamento lavora su una copia della versione pubblicata
+                boolean versioned = IndexVersions.isVersioned(FILES);
+                IndexFiles out = versioned ? IndexVersions.fork(FILES) : FILES;
+                StopWords sw = IndexIO.loadStopWords(out);
+                IndexUpdater updater = new IndexUpdater(out, sw);
+                if (opts.containsKey("threads")) updater.setThreads(Integer.parseInt(opts.get("threads")));
+                updater.setDecoding(charsetOption(opts), policyOption(opts));
+                IndexUpdater.Result r = updater.update(Paths.get(args[1]));
+                System.out.println("Aggiornamento completato. Documenti aggiunti: " + r.added() + ", cancellati: " + r.deleted()
+                        + (r.segment() > 0 ? ", segmento seg_" + r.segment() : ""));
+                reportSkipped(r.skipped());
+                int mergeAt = Integer.parseInt(opts.getOrDefault("merge-at", "4"));
+                if (IndexIO.listSegments(out).size() >= mergeAt) {
+                    // la CLI deve comunque aspettare la fine del merge prima di pubblicare e uscire
+                    System.out.println("Merge dei segmenti...");
+                    updater.mergeSegments();
+                    System.out.println("Merge completato.");
+                }
+                if (versioned) {
+                    if (r.added() == 0 && r.deleted() == 0) IndexVersions.delete(out); // niente da pubblicare
+                    else publish(out, opts);
+                }
             }
             case "search" -> {
-                if (args.length < 3) { System.err.println("Uso: search <and|or> \"query...\""); return; }
+                Map<String, String> opts = new HashMap<>();
+                args = splitOptions(args, opts);
+                if (args.length < 3) { System.err.println("Uso: search <and|or|bool|phrase|near/K|ranked|wand> \"query...\" [--top=10] [--intersect=gallop|scalar|simd] [--remote=url,...]"); return; }
                 String mode = args[1].toLowerCase(Locale.ROOT);
                 String q = String.join(" ", Arrays.copyOfRange(args, 2, args.length));
-                Map<String, PostingList> index = IndexIO.load(INDEX_DICT);
-                Map<Integer, String> docs = IndexIO.loadDocs(DOCS_MAP);
-                StopWords sw = StopWords.loadPrecomputed(CF_FILE, Indexer.STOPLIST_PATH, Indexer.STOP_BY_FREQ_CACHE);
-                Retriever r = new Retriever(index, docs, sw);
-                List<Integer> results = switch (mode) {
-                    case "and" -> r.searchAnd(q);
-                    case "or"  -> r.searchOr(q);
-                    default -> { System.err.println("Modo non valido, usa and|or"); yield List.of(); }
-                };
+                if (opts.containsKey("intersect")) selectIntersector(opts.get("intersect"));
+                int top = Integer.parseInt(opts.getOrDefault("top", "10"));
+                // ranked: BM25 esaustivo; wand: tf-idf con pruning WAND/block-max; bool: (a OR b) AND NOT c
+                List<ScoredDoc> results;
+                Map<Integer, String> docs;
+                IndexFiles files = IndexVersions.current(FILES);
+                if (Shards.isSharded(files)) {
+                    // la query va a tutti gli shard in parallelo
+                    try (ShardedSearcher sharded = ShardedSearcher.open(files, null, remotesOption(opts))) {
+                        docs = sharded.docs();
+                        try {
+                            results = sharded.search(mode, q, top);
+                        } catch (IllegalArgumentException e) {
+                            System.err.println(e.getMessage());
+                            results = List.of();
+                        }
+                    }
+                } else {
+                    Map<String, PostingList> index = IndexIO.openIndex(files);
+                    docs = IndexIO.loadDocs(files.docs());
+                    Retriever r = new Retriever(index, docs, IndexIO.loadStopWords(files), IndexIO.loadLengths(files));
+                    try {
+                        results = r.search(mode, q, top);
+                    } catch (IllegalArgumentException e) {
+                        System.err.println(e.getMessage());
+                        results = List.of();
+                    }
+                }
                 if (results.isEmpty()) {
                     System.out.println("Nessun risultato.");
+                } else if (Retriever.isRanked(mode)) {
+                    int rank = 1;
+                    for (ScoredDoc d : results) {
+                        System.out.printf(Locale.ROOT, "%d\t%d\t%.4f\t%s%n", rank++, d.docID(), d.score(), docs.get(d.docID()));
+                    }
                 } else {
                     System.out.println("DocIDs (" + results.size() + "):");
-                    for (int id : results) System.out.println(id + "\t" + docs.get(id));
+                    for (ScoredDoc d : results) System.out.println(d.docID() + "\t" + docs.get(d.docID()));
+                }
+            }
+            case "serve" -> {
+                Map<String, String> opts = new HashMap<>();
+                splitOptions(args, opts);
+                // TCP_NODELAY per le risposte di SearchServer (vedi lì), prima di creare il primo HttpServer;
+                // solo per questo comando e solo se non è già stato scelto con -D
+                if (System.getProperty("sun.net.httpserver.nodelay") == null) System.setProperty("sun.net.httpserver.nodelay", "true");
+                if (opts.containsKey("intersect")) selectIntersector(opts.get("intersect"));
+                // --dir: indice in un'altra cartella, es. uno shard servito da un processo suo
+                IndexFiles root = opts.containsKey("dir") ? IndexFiles.in(Paths.get(opts.get("dir"))) : FILES;
+                // indice aperto una volta, condiviso da tutte le richieste; ricaricabile con POST /reload o --watch
+                PostingCache postings = new PostingCache(parseBytes(opts.getOrDefault("posting-cache", "256m")));
+                IndexHandle handle = IndexHandle.open(root, files -> openIndex(files, postings, opts, true));
+                if (opts.containsKey("watch")) handle.watch(opts.get("watch").equals("true") ? 1000 : Long.parseLong(opts.get("watch")));
+                String host = opts.getOrDefault("host", "127.0.0.1");
+                int port = Integer.parseInt(opts.getOrDefault("port", "8080"));
+                SearchServer server = new SearchServer(handle, new InetSocketAddress(host, port));
+                if (!opts.containsKey("remote")) server.reportCache(postings);
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                    server.stop(2);
+                    handle.close();
+                }));
+                server.start();
+                IndexHandle.Version v = handle.acquire();
+                try {
+                    System.out.println("In ascolto su http://" + host + ":" + server.address().getPort()
+                            + "/search?q=...&mode=and (" + (server.usesVirtualThreads() ? "virtual thread" : "pool di thread") + ", "
+                            + describe(v.searcher()) + ", " + v.docs().size() + " documenti"
+                            + (v.name().isEmpty() ? "" : ", versione " + v.name()) + ")");
+                } finally {
+                    handle.release(v);
+                }
+            }
+            case "batch" -> {
+                Map<String, String> opts = new HashMap<>();
+                args = splitOptions(args, opts);
+                if (args.length < 2) { System.err.println("Uso: batch <file_query|-> [--format=tsv|jsonl] [--mode=and] [--threads=N] [--top=10] [--limit=0] [--out=file] [--posting-cache=512m] [--remote=url,...]"); return; }
+                if (opts.containsKey("intersect")) selectIntersector(opts.get("intersect"));
+                // un solo snapshot per tutto il batch: ogni termine è normalizzato e decodificato una volta
+                PostingCache postings = new PostingCache(parseBytes(opts.getOrDefault("posting-cache", "512m")));
+                int threads = Integer.parseInt(opts.getOrDefault("threads", String.valueOf(Runtime.getRuntime().availableProcessors())));
+                BatchRunner.Format format = BatchRunner.Format.valueOf(opts.getOrDefault("format", "tsv").toUpperCase(Locale.ROOT));
+                // cache delle query ripetute nel batch
+                IndexHandle.Opened opened = openIndex(IndexVersions.current(FILES), postings, opts, false);
+                try (Searcher searcher = opened.searcher();
+                     BufferedReader in = args[1].equals("-")
+                             ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                             : Files.newBufferedReader(Paths.get(args[1]));
+                     Writer out = opts.containsKey("out")
+                             ? Files.newBufferedWriter(Paths.get(opts.get("out")))
+                             : new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16)) {
+                    BatchRunner runner = new BatchRunner(searcher, threads, format,
+                            opts.getOrDefault("mode", "and").toLowerCase(Locale.ROOT),
+                            Integer.parseInt(opts.getOrDefault("top", "10")),
+                            Integer.parseInt(opts.getOrDefault("limit", "0")));
+                    BatchRunner.Stats st = runner.run(in, out);
+                    System.err.printf(Locale.ROOT, "Query: %d (errori %d) in %d ms, %.0f query/s%n", st.queries(), st.errors(), st.millis(),
+                            st.millis() == 0 ? 0.0 : 1000.0 * st.queries() / st.millis());
+                    for (Object c : opened.caches()) System.err.println(c);
+                    System.err.println(postings);
+                    if (searcher instanceof IndexSnapshot snapshot) System.err.println(snapshot.stemmer);
+                }
+            }
+            case "terms" -> {
+                Map<String, String> opts = new HashMap<>();
+                args = splitOptions(args, opts);
+                if (args.length < 2) { System.err.println("Uso: terms <pattern con * e ?> | terms <da> <a> [--limit=100]"); return; }
+                int limit = Integer.parseInt(opts.getOrDefault("limit", "100"));
+                List<IndexFiles> parts = new ArrayList<>();
+                IndexFiles files = IndexVersions.current(FILES);
+                if (Shards.isSharded(files)) {
+                    for (Shards.Shard sh : Shards.list(files)) parts.add(sh.files());
+                } else {
+                    parts.add(files);
+                }
+                // con gli shard: unione dei dizionari, primi limit in ordine
+                TreeSet<String> found = new TreeSet<>();
+                for (IndexFiles f : parts) {
+                    Map<String, PostingList> index = IndexIO.openIndex(f);
+                    Retriever r = new Retriever(index, Map.of(), null); // serve solo il dizionario
+                    found.addAll((args.length >= 3) ? r.rangeTerms(args[1], args[2], limit) : r.wildcardTerms(args[1], limit));
+                    if (index instanceof Closeable c) c.close();
+                }
+                List<String> terms = new ArrayList<>(found).subList(0, Math.min(limit, found.size()));
+                for (String t : terms) System.out.println(t);
+                System.out.println("Termini: " + terms.size() + (terms.size() == limit ? " (limite raggiunto)" : ""));
+            }
+            case "reload" -> {
+                // chiede a un server in esecuzione di passare alla versione pubblicata dell'indice
+                Map<String, String> opts = new HashMap<>();
+                splitOptions(args, opts);
+                String url = opts.getOrDefault("url", "http://127.0.0.1:8080") + "/reload" + (opts.containsKey("force") ? "?force=1" : "");
+                try {
+                    HttpResponse<String> resp = HttpClient.newHttpClient().send(
+                            HttpRequest.newBuilder(URI.create(url)).POST(HttpRequest.BodyPublishers.noBody()).build(),
+                            HttpResponse.BodyHandlers.ofString());
+                    (resp.statusCode() == 200 ? System.out : System.err).println(resp.body());
+                } catch (IOException e) {
+                    System.err.println("Server " + url + " non raggiungibile: " + e);
                 }
             }
             default -> usage();
         }
     }
 
+    /** Pubblica una versione appena scritta e cancella le più vecchie (--keep, default 2). */
+    private static void publish(IndexFiles version, Map<String, String> opts) throws IOException {
+        IndexVersions.publish(FILES, version);
+        int pruned = IndexVersions.prune(FILES, Integer.parseInt(opts.getOrDefault("keep", "2")));
+        System.out.println("Versione pubblicata: " + version.dir.getFileName()
+                + (pruned > 0 ? " (versioni vecchie cancellate: " + pruned + ")" : "")
+                + ". I server con --watch la caricano da soli, gli altri con: reload");
+    }
+
+    /**
+     * Apre l'indice di files: uno snapshot, oppure il coordinatore se è diviso in shard
+     * (--remote=url,... per shard in altri processi). Le cache dei risultati sono dello snapshot.
+     */
+    private static IndexHandle.Opened openIndex(IndexFiles files, PostingCache postings, Map<String, String> opts, boolean intersect)
+            throws IOException {
+        List<Object> caches = new ArrayList<>();
+        if (Shards.isSharded(files)) {
+            ShardedSearcher sharded = ShardedSearcher.open(files, postings, remotesOption(opts));
+            setCaches(sharded.shards(), caches, intersect);
+            return new IndexHandle.Opened(sharded, sharded.docs(), caches);
+        }
+        IndexSnapshot snapshot = IndexSnapshot.open(files, postings);
+        setCaches(List.of(snapshot), caches, intersect);
+        return new IndexHandle.Opened(snapshot, snapshot.docs(), caches);
+    }
+
+    private static String describe(Searcher s) {
+        if (s instanceof ShardedSearcher sharded) {
+            boolean remote = sharded.shards().get(0) instanceof RemoteShard;
+            return sharded.shards().size() + " shard" + (remote ? " remoti" : "");
+        }
+        return (s instanceof IndexSnapshot snapshot) ? snapshot.index().size() + " termini" : s.toString();
+    }
+
+    private static Charset charsetOption(Map<String, String> opts) {
+        return Charset.forName(opts.getOrDefault("charset", "UTF-8"));
+    }
+
+    private static DecodePolicy policyOption(Map<String, String> opts) {
+        return DecodePolicy.parse(opts.getOrDefault("on-malformed", "replace"));
+    }
+
+    /** --remote=url,url,...: un indirizzo per shard, nell'ordine di shards.map (vuota = shard in questo processo). */
+    private static List<URI> remotesOption(Map<String, String> opts) {
+        List<URI> out = new ArrayList<>();
+        for (String u : opts.getOrDefault("remote", "").split(",")) {
+            if (!u.isBlank()) out.add(URI.create(u.strip()));
+        }
+        return out;
+    }
+
+    /**
+     * Cache delle query (e delle intersezioni se intersect) per gli snapshot tra searchers:
+     * una cache vale per un solo indice, quindi con N shard locali ne ha una ciascuno con 1/N del budget.
+     * Le cache create finiscono in caches, per le statistiche.
+     */
+    private static void setCaches(List<Searcher> searchers, List<Object> caches, boolean intersect) {
+        int n = searchers.size();
+        for (Searcher s : searchers) {
+            if (!(s instanceof IndexSnapshot snapshot)) continue; // shard remoto: ha le sue cache
+            QueryCache cache = new QueryCache(10_000 / n, (128L << 20) / n);
+            IntersectionCache intersections = intersect ? new IntersectionCache(2_000 / n, (64L << 20) / n) : null;
+            snapshot.setCaches(cache, intersections);
+            caches.add(cache);
+            if (intersections != null) caches.add(intersections);
+        }
+    }
+
+    /** I documenti saltati non fermano l'indicizzazione: si elencano alla fine. */
+    private static void reportSkipped(Map<Integer, String> skipped) {
+        if (skipped.isEmpty()) return;
+        System.err.println("Documenti saltati: " + skipped.size());
+        for (String reason : skipped.values()) System.err.println("  " + reason);
+    }
+
+    /** gallop (default), scalar o simd (Vector API, se compilata e il modulo è presente). */
+    private static void selectIntersector(String name) {
+        switch (name) {
+            case "gallop" -> QueryEngine.setIntersector(null);
+            case "scalar" -> QueryEngine.setIntersector(Intersector.SCALAR);
+            case "simd" -> {
+                Intersector simd = Intersector.simd();
+                if (simd == null) System.err.println("SIMD non disponibile (compilare src-simd e usare --add-modules jdk.incubator.vector): uso il galloping");
+                QueryEngine.setIntersector(simd);
+            }
+            default -> System.err.println("Intersezione non valida: " + name + ", usa gallop|scalar|simd");
+        }
+    }
+
+    /** Separa le opzioni "--nome=valore" (o "--flag") dagli argomenti posizionali. */
+    private static String[] splitOptions(String[] args, Map<String, String> opts) {
+        List<String> positional = new ArrayList<>();
+        for (String a : args) {
+            if (a.startsWith("--")) {
+                int eq = a.indexOf('=');
+                if (eq < 0) opts.put(a.substring(2), "true");
+                else opts.put(a.substring(2, eq), a.substring(eq + 1));
+            } else {
+                positional.add(a);
+            }
+        }
+        return positional.toArray(new String[0]);
+    }
+
+    /** "512k", "256m", "2g" o un numero di byte. */
+    private static long parseBytes(String v) {
+        String s = v.trim().toLowerCase(Locale.ROOT);
+        long mult = switch (s.isEmpty() ? ' ' : s.charAt(s.length() - 1)) {
+            case 'k' -> 1L << 10;
+            case 'm' -> 1L << 20;
+            case 'g' -> 1L << 30;
+            default -> 1L;
+        };
+        if (mult > 1) s = s.substring(0, s.length() - 1);
+        return Long.parseLong(s) * mult;
+    }
+
     private static void usage() {
         System.out.println("""
             Comandi:
-              index <cartella_dataset> <stoplist.txt> [freqThresholdPercent=1.0]
-              search <and|or> "query..."
+              index <cartella_dataset> <stoplist.txt> [freqThresholdPercent=1.0] [--threads=N] [--single-pass] [--mem-budget=256m]
+                    [--charset=UTF-8] [--on-malformed=replace|ignore|skip] [--shards=N] [--keep=2] [--in-place]
+              update <cartella_dataset> [--threads=N] [--merge-at=4] [--charset=UTF-8] [--on-malformed=replace|ignore|skip] [--keep=2]
+              search <and|or|bool|phrase|near/K|ranked|wand> "query..." [--top=10] [--intersect=gallop|scalar|simd] [--remote=url,...]
+              terms <pattern con * e ?> | terms <da> <a> [--limit=100]
+              batch <file_query|-> [--format=tsv|jsonl] [--mode=and] [--threads=N] [--top=10] [--limit=0] [--out=file]
+                    (una query per riga, oppure modo<TAB>query; output nello stesso ordine)
+              serve [--port=8080] [--host=127.0.0.1] [--posting-cache=256m] [--intersect=gallop|scalar|simd] [--dir=cartella]
+                    [--remote=url,...]   (indice a shard: --remote=uno shard per indirizzo, es. serve --dir=shard_0 --port=8081)
+                    [--watch[=ms]]       (ricarica quando cambia CURRENT; altrimenti POST /reload)
+              reload [--url=http://127.0.0.1:8080] [--force]
             """);
     }
 }
@@ -0,0 +1,72 @@
+package ir;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * File dell'indice mappato in sola lettura, con header magic + versione.
+ * Una singola mappatura non può superare 2GB: il file è mappato a blocchi
+ * e slice() restituisce una vista indipendente (sicura tra thread).
+ */
+final class MappedFile implements Closeable {
+    private static final long CHUNK = 1L << 30;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer[] chunks;
+
+    private MappedFile(FileChannel channel) throws IOException {
+        this.channel = channel;
+        long size = channel.size();
+        int n = (int) ((size + CHUNK - 1) / CHUNK);
+        this.chunks = new MappedByteBuffer[n];
+        for (int c = 0; c < n; c++) {
+            long start = c * CHUNK;
+            chunks[c] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(CHUNK, size - start));
+        }
+    }
+
+    static MappedFile open(Path file, int magic) throws IOException {
+        FileChannel ch = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            ByteBuffer h = ByteBuffer.allocate(BinaryIndexWriter.HEADER_BYTES);
+            ch.read(h, 0);
+            checkHeader(h.getInt(0), h.getInt(4), magic, file);
+            return new MappedFile(ch);
+        } catch (IOException | RuntimeException e) {
+            ch.close();
+            throw e;
+        }
+    }
+
+    static void checkHeader(int magic, int version, int expected, Path file) throws IOException {
+        if (magic != expected) throw new IOException("File indice non valido: " + file);
+        if (version != BinaryIndexWriter.FORMAT_VERSION)
+            throw new IOException("Versione formato " + version + " non supportata in " + file + ", reindicizzare");
+    }
+
+    ByteBuffer slice(long offset, int length) {
+        int c = (int) (offset / CHUNK);
+        long start = c * CHUNK;
+        if (offset + length <= start + chunks[c].capacity()) {
+            ByteBuffer b = chunks[c].duplicate();
+            b.position((int) (offset - start));
+            b.limit(b.position() + length);
+            return b;
+        }
+        // lista a cavallo di due blocchi: mappatura dedicata
+        try {
+            return channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException { channel.close(); }
+}
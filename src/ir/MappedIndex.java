@@ -0,0 +1,146 @@
+package ir;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * Indice binario aperto in sola lettura (formato in BinaryIndexWriter).
+ * Il dizionario (TermDictionary) è front-coded e resta nel file mappato: all'apertura
+ * non si legge nessun termine e l'heap non cresce con il vocabolario.
+ * index.post e index.pos vengono mappati con FileChannel.map e ogni posting list
+ * è decodificata solo quando una query la chiede (le posizioni solo se servono),
+ * quindi il sistema operativo carica in memoria soltanto le pagine toccate.
+ * Le liste dense salvate come bitmap restano disponibili come DocBitmap (PostingList.bitmap()).
+ * Con una PostingCache le liste decodificate restano in memoria (LRU) tra una query e l'altra.
+ */
+public class MappedIndex extends AbstractMap<String, PostingList> implements SortedTerms, Closeable {
+    private final TermDictionary dict;
+    private final MappedFile postings;
+    private final MappedFile positions;
+    private volatile PostingCache cache; // null = si decodifica a ogni accesso
+
+    private MappedIndex(TermDictionary dict, MappedFile postings, MappedFile positions) {
+        this.dict = dict;
+        this.postings = postings;
+        this.positions = positions;
+    }
+
+    public static MappedIndex open(IndexFiles files) throws IOException {
+        TermDictionary dict = TermDictionary.open(files.terms());
+        MappedFile post = null;
+        try {
+            post = MappedFile.open(files.postings(), BinaryIndexWriter.POST_MAGIC);
+            MappedFile pos = MappedFile.open(files.positions(), BinaryIndexWriter.POS_MAGIC);
+            return new MappedIndex(dict, post, pos);
+        } catch (IOException | RuntimeException e) {
+            try (dict) {
+                if (post != null) post.close();
+            }
+            throw e;
+        }
+    }
+
+    private TermDictionary.TermInfo find(Object key) {
+        return (key instanceof String s) ? dict.get(s) : null;
+    }
+
+    /** Tiene le liste decodificate in cache (null per disattivarla). */
+    public void setPostingCache(PostingCache cache) {
+        PostingCache old = this.cache;
+        if (old != null && old != cache) old.invalidate(this);
+        this.cache = cache;
+    }
+
+    @Override
+    public PostingList get(Object key) {
+        if (!(key instanceof String term)) return null;
+        PostingCache c = cache;
+        return (c == null) ? load(term) : c.get(this, term, this::load);
+    }
+
+    private PostingList load(String term) {
+        TermDictionary.TermInfo t = dict.get(term);
+        return t == null ? null : decode(t);
+    }
+
+    @Override
+    public boolean containsKey(Object key) { return find(key) != null; }
+
+    @Override
+    public int size() { return dict.size(); }
+
+    /** Document frequency senza decodificare la posting list (0 se assente). */
+    public int df(String term) {
+        TermDictionary.TermInfo t = dict.get(term);
+        return t == null ? 0 : t.df();
+    }
+
+    @Override
+    public Iterator<String> termsFrom(String from) {
+        Iterator<TermDictionary.TermInfo> it = dict.from(from);
+        return new Iterator<>() {
+            @Override public boolean hasNext() { return it.hasNext(); }
+            @Override public String next() { return it.next().term(); }
+        };
+    }
+
+    private PostingList decode(TermDictionary.TermInfo t) {
+        ByteBuffer b = postings.slice(t.postOffset(), t.postLength());
+        PostingList pl = new PostingList(t.df());
+        int[] blockMax = new int[(t.df() + PostingList.BLOCK_SIZE - 1) / PostingList.BLOCK_SIZE];
+        for (int k = 0; k < blockMax.length; k++) blockMax[k] = VByte.read(b);
+        DocBitmap bm = null;
+        if (t.encoding() == BinaryIndexWriter.BITMAP) {
+            bm = DocBitmap.read(b);
+            for (int doc : bm.toArray()) pl.add(doc, VByte.read(b));
+        } else {
+            int doc = 0;
+            for (int k = 0; k < t.df(); k++) {
+                doc += VByte.read(b);
+                pl.add(doc, VByte.read(b));
+            }
+        }
+        pl.computeSkips();
+        pl.setBitmap(bm);
+        pl.setBlockMaxTf(blockMax, t.maxTf());
+        pl.setLazyPositions(positions.slice(t.posOffset(), t.posLength()));
+        return pl;
+    }
+
+    /** I termini in ordine, senza decodificare nessuna posting list. */
+    @Override
+    public Set<String> keySet() {
+        return new AbstractSet<>() {
+            @Override public int size() { return dict.size(); }
+            @Override public boolean contains(Object o) { return find(o) != null; }
+            @Override public Iterator<String> iterator() { return termsFrom(""); }
+        };
+    }
+
+    /** Scansione completa (merge, riscrittura): non passa dalla cache per non svuotarla. */
+    @Override
+    public Set<Entry<String, PostingList>> entrySet() {
+        return new AbstractSet<>() {
+            @Override public int size() { return dict.size(); }
+            @Override public Iterator<Entry<String, PostingList>> iterator() {
+                Iterator<TermDictionary.TermInfo> it = dict.from("");
+                return new Iterator<>() {
+                    @Override public boolean hasNext() { return it.hasNext(); }
+                    @Override public Entry<String, PostingList> next() {
+                        TermDictionary.TermInfo t = it.next();
+                        return new SimpleImmutableEntry<>(t.term(), decode(t));
+                    }
+                };
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        setPostingCache(null);
+        try (dict; positions) {
+            postings.close();
+        }
+    }
+}
@@ -4,147 +4,156 @@ package ir;
  * Implementazione leggera del Porter Stemmer (regole base).
  * Nota: sufficiente per il progetto; non usa librerie esterne.
  * (Ispirato alle regole originali di Porter; semplificato).
+ *
+ * Lavora sul posto in un buffer char[] riusato: nessuna String intermedia tra i passi,
+ * una sola String alla fine (nessuna se il termine non cambia).
+ * Non è thread-safe: un'istanza per thread (o CachingStemmer).
  */
 public class PorterStemmer {
+    private static final String[][] STEP2 = {
+        {"ational","ate"},{"tional","tion"},{"enci","ence"},{"anci","ance"},
+        {"izer","ize"},{"abli","able"},{"alli","al"},{"entli","ent"},{"eli","e"},
+        {"ousli","ous"},{"ization","ize"},{"ation","ate"},{"ator","ate"},{"alism","al"},
+        {"iveness","ive"},{"fulness","ful"},{"ousness","ous"},{"aliti","al"},
+        {"iviti","ive"},{"biliti","ble"}
+    };
+    private static final String[][] STEP3 = {
+        {"icate","ic"},{"ative",""},{"alize","al"},{"iciti","ic"},{"ical","ic"},{"ful",""},{"ness",""}
+    };
+    private static final String[] STEP4 = {"al","ance","ence","er","ic","able","ible","ant","ement","ment","ent",
+                                           "ion","ou","ism","ate","iti","ous","ive","ize"};
+
+    private char[] b = new char[32];
+    private int k; // lunghezza della parola in b
+
     public String stem(String s) {
         if (s == null || s.length() < 3) return s;
-        s = step1a(s);
-        s = step1b(s);
-        s = step1c(s);
-        s = step2(s);
-        s = step3(s);
-        s = step4(s);
-        s = step5a(s);
-        s = step5b(s);
-        return s;
+        int n = s.length();
+        if (n + 1 > b.length) b = new char[n + 16]; // +1: step1b può aggiungere una 'e'
+        s.getChars(0, n, b, 0);
+        k = n;
+        stemBuffer();
+        if (k == n) {
+            int i = 0;
+            while (i < n && b[i] == s.charAt(i)) i++;
+            if (i == n) return s; // invariato: nessuna allocazione
+        }
+        return new String(b, 0, k);
     }
 
-    // ----- helpers -----
-    private boolean isVowel(char ch) {
-        return "aeiou".indexOf(ch) >= 0;
+    private void stemBuffer() {
+        step1a();
+        step1b();
+        step1c();
+        step2();
+        step3();
+        step4();
+        step5a();
+        step5b();
     }
-    private boolean hasVowel(String s) {
-        for (char c : s.toCharArray()) if (isVowel(c)) return true;
+
+    // ----- helpers (su b[0..end)) -----
+    private static boolean isVowel(char ch) {
+        return ch == 'a' || ch == 'e' || ch == 'i' || ch == 'o' || ch == 'u';
+    }
+    private boolean hasVowel(int end) {
+        for (int i = 0; i < end; i++) if (isVowel(b[i])) return true;
         return false;
     }
-    private int measure(String s) {
+    private int measure(int end) {
         // m = #VC sequences
         boolean prevVowel = false; int m = 0;
-        for (char c : s.toCharArray()) {
-            boolean v = isVowel(c);
+        for (int i = 0; i < end; i++) {
+            boolean v = isVowel(b[i]);
             if (!prevVowel && v) prevVowel = true;
             else if (prevVowel && !v) { m++; prevVowel = false; }
         }
         return m;
     }
-    private boolean ends(String s, String suf) { return s.endsWith(suf); }
-    private String replaceEnd(String s, String suf, String rep) {
-        return s.substring(0, s.length()-suf.length()) + rep;
+    private boolean ends(String suf) {
+        int n = suf.length(), off = k - n;
+        if (off < 0) return false;
+        for (int i = 0; i < n; i++) if (b[off + i] != suf.charAt(i)) return false;
+        return true;
+    }
+    /** Sostituisce tutto da stemLen in poi con rep. */
+    private void setTo(int stemLen, String rep) {
+        rep.getChars(0, rep.length(), b, stemLen);
+        k = stemLen + rep.length();
     }
-    private boolean cvc(String s) {
-        if (s.length() < 3) return false;
-        char c1 = s.charAt(s.length()-3), c2 = s.charAt(s.length()-2), c3 = s.charAt(s.length()-1);
-        return !isVowel(c1) && isVowel(c2) && !isVowel(c3) && "wxy".indexOf(c3) < 0;
+    private boolean cvc(int end) {
+        if (end < 3) return false;
+        char c1 = b[end-3], c2 = b[end-2], c3 = b[end-1];
+        return !isVowel(c1) && isVowel(c2) && !isVowel(c3) && c3 != 'w' && c3 != 'x' && c3 != 'y';
+    }
+    private boolean doubleConsonant(int end) {
+        if (end < 2) return false;
+        char a = b[end-1], c = b[end-2];
+        return a == c && !isVowel(a);
     }
 
     // ----- steps (semplificati) -----
-    private String step1a(String s) {
-        if (ends(s,"sses")) return replaceEnd(s,"sses","ss");
-        if (ends(s,"ies")) return replaceEnd(s,"ies","i");
-        if (ends(s,"ss")) return s;
-        if (ends(s,"s")) return s.substring(0, s.length()-1);
-        return s;
-    }
-    private String step1b(String s) {
-        if (ends(s,"eed")) {
-            String stem = s.substring(0, s.length()-3);
-            if (measure(stem) > 0) return replaceEnd(s,"eed","ee");
-            else return s;
+    private void step1a() {
+        if (ends("sses")) k -= 2;
+        else if (ends("ies")) k -= 2;
+        else if (ends("ss")) return;
+        else if (ends("s")) k--;
+    }
+    private void step1b() {
+        if (ends("eed")) {
+            if (measure(k-3) > 0) k--;
+            return;
         }
         boolean flag = false;
-        if (ends(s,"ed")) {
-            String stem = s.substring(0, s.length()-2);
-            if (hasVowel(stem)) { s = stem; flag = true; }
-        } else if (ends(s,"ing")) {
-            String stem = s.substring(0, s.length()-3);
-            if (hasVowel(stem)) { s = stem; flag = true; }
+        if (ends("ed")) {
+            if (hasVowel(k-2)) { k -= 2; flag = true; }
+        } else if (ends("ing")) {
+            if (hasVowel(k-3)) { k -= 3; flag = true; }
         }
         if (flag) {
-            if (ends(s,"at")||ends(s,"bl")||ends(s,"iz")) return s+"e";
-            if (doubleConsonant(s)) return s.substring(0, s.length()-1);
-            if (measure(s)==1 && cvc(s)) return s+"e";
+            if (ends("at") || ends("bl") || ends("iz")) b[k++] = 'e';
+            else if (doubleConsonant(k)) k--;
+            else if (measure(k) == 1 && cvc(k)) b[k++] = 'e';
         }
-        return s;
     }
-    private boolean doubleConsonant(String s) {
-        if (s.length()<2) return false;
-        char a=s.charAt(s.length()-1), b=s.charAt(s.length()-2);
-        return a==b && !isVowel(a);
+    private void step1c() {
+        if (ends("y") && hasVowel(k-1)) b[k-1] = 'i';
     }
-    private String step1c(String s) {
-        if (ends(s,"y")) {
-            String stem = s.substring(0, s.length()-1);
-            if (hasVowel(stem)) return stem+"i";
-        }
-        return s;
-    }
-    private String step2(String s) {
-        String[][] map = {
-            {"ational","ate"},{"tional","tion"},{"enci","ence"},{"anci","ance"},
-            {"izer","ize"},{"abli","able"},{"alli","al"},{"entli","ent"},{"eli","e"},
-            {"ousli","ous"},{"ization","ize"},{"ation","ate"},{"ator","ate"},{"alism","al"},
-            {"iveness","ive"},{"fulness","ful"},{"ousness","ous"},{"aliti","al"},
-            {"iviti","ive"},{"biliti","ble"}
-        };
+    private void step2() { replaceFirst(STEP2); }
+    private void step3() { replaceFirst(STEP3); }
+    /** Il primo suffisso della tabella che corrisponde decide: sostituito se m(stem) > 0. */
+    private void replaceFirst(String[][] map) {
         for (String[] r : map) {
-            if (ends(s,r[0])) {
-                String stem = s.substring(0, s.length()-r[0].length());
-                if (measure(stem)>0) return stem + r[1];
-                return s;
+            if (ends(r[0])) {
+                int stem = k - r[0].length();
+                if (measure(stem) > 0) setTo(stem, r[1]);
+                return;
             }
         }
-        return s;
     }
-    private String step3(String s) {
-        String[][] map = {
-            {"icate","ic"},{"ative",""},{"alize","al"},{"iciti","ic"},{"ical","ic"},{"ful",""},{"ness",""}
-        };
-        for (String[] r : map) {
-            if (ends(s,r[0])) {
-                String stem = s.substring(0, s.length()-r[0].length());
-                if (measure(stem)>0) return stem + r[1];
-                return s;
-            }
-        }
-        return s;
-    }
-    private String step4(String s) {
-        String[] suf = {"al","ance","ence","er","ic","able","ible","ant","ement","ment","ent",
-                        "ion","ou","ism","ate","iti","ous","ive","ize"};
-        for (String x : suf) {
-            if (ends(s,x)) {
-                String stem = s.substring(0, s.length()-x.length());
-                if (measure(stem)>1) {
+    private void step4() {
+        for (String x : STEP4) {
+            if (ends(x)) {
+                int stem = k - x.length();
+                if (measure(stem) > 1) {
                     if (x.equals("ion")) {
-                        if (stem.endsWith("s")||stem.endsWith("t")) return stem;
-                        else return s;
+                        if (stem > 0 && (b[stem-1] == 's' || b[stem-1] == 't')) k = stem;
+                        return;
                     }
-                    return stem;
+                    k = stem;
                 }
-                return s;
+                return;
             }
         }
-        return s;
     }
-    private String step5a(String s) {
-        if (ends(s,"e")) {
-            String stem = s.substring(0, s.length()-1);
-            if (measure(stem)>1 || (measure(stem)==1 && !cvc(stem))) return stem;
+    private void step5a() {
+        if (ends("e")) {
+            int stem = k - 1;
+            int m = measure(stem);
+            if (m > 1 || (m == 1 && !cvc(stem))) k = stem;
         }
-        return s;
     }
-    private String step5b(String s) {
-        if (measure(s)>1 && doubleConsonant(s) && s.endsWith("l")) return s.substring(0,s.length()-1);
-        return s;
+    private void step5b() {
+        if (measure(k) > 1 && doubleConsonant(k) && b[k-1] == 'l') k--;
     }
 }
@@ -0,0 +1,108 @@
+package ir;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Cache LRU delle posting list decodificate, limitata in byte (PostingList.heapBytes()).
+ * MappedIndex e SegmentedIndex decodificano una lista al primo accesso e la tengono qui:
+ * in heap resta solo il working set delle query, non l'indice intero.
+ * Le voci sono per indice (identità dell'oggetto), quindi la stessa cache può essere
+ * condivisa tra indici diversi; close() dell'indice rimuove le sue voci.
+ * Le liste in cache sono condivise tra le query: nessuno deve modificarle.
+ * Thread-safe: i metodi sono synchronized, la decodifica avviene fuori dal lock.
+ */
+public final class PostingCache {
+    private static final int ENTRY_OVERHEAD = 96; // oggetti chiave/voce della mappa, stima
+
+    private final long maxBytes;
+    private final LinkedHashMap<Key, PostingList> map = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Key, Long> sizes = new HashMap<>(); // byte contati all'inserimento
+    private long bytes = 0;
+    private long hits = 0, misses = 0, evictions = 0, evictedBytes = 0;
+
+    public PostingCache(long maxBytes) {
+        this.maxBytes = Math.max(0, maxBytes);
+    }
+
+    // chiave per identità dell'indice: equals/hashCode delle Map confronterebbero i contenuti
+    private record Key(Object owner, String term) {
+        @Override public boolean equals(Object o) {
+            return o instanceof Key k && k.owner == owner && k.term.equals(term);
+        }
+        @Override public int hashCode() {
+            return 31 * System.identityHashCode(owner) + term.hashCode();
+        }
+    }
+
+    /**
+     * Lista di term per owner: dalla cache, oppure decodificata con load e memorizzata.
+     * Con accessi concorrenti allo stesso termine più thread possono decodificarlo,
+     * ma la cache ne tiene una sola copia.
+     */
+    PostingList get(Object owner, String term, Function<String, PostingList> load) {
+        Key key = new Key(owner, term);
+        synchronized (this) {
+            PostingList pl = map.get(key);
+            if (pl != null) {
+                hits++;
+                return pl;
+            }
+            misses++;
+        }
+        PostingList pl = load.apply(term);
+        if (pl == null) return null; // termine assente: non si memorizza
+        long size = ENTRY_OVERHEAD + 2L * term.length() + pl.heapBytes();
+        synchronized (this) {
+            PostingList other = map.get(key);
+            if (other != null) return other;
+            if (size > maxBytes) return pl; // lista troppo grande per la cache
+            map.put(key, pl);
+            sizes.put(key, size);
+            bytes += size;
+            Iterator<Map.Entry<Key, PostingList>> it = map.entrySet().iterator();
+            while (bytes > maxBytes && it.hasNext()) {
+                Key k = it.next().getKey(); // ordine di accesso: prima la meno recente
+                long s = sizes.remove(k);
+                bytes -= s;
+                evictedBytes += s;
+                it.remove();
+                evictions++;
+            }
+        }
+        return pl;
+    }
+
+    /** Rimuove le liste di un indice (chiuso o sostituito). */
+    synchronized void invalidate(Object owner) {
+        Iterator<Key> it = map.keySet().iterator();
+        while (it.hasNext()) {
+            Key k = it.next();
+            if (k.owner == owner) {
+                bytes -= sizes.remove(k);
+                it.remove();
+            }
+        }
+    }
+
+    public synchronized void invalidate() {
+        map.clear();
+        sizes.clear();
+        bytes = 0;
+    }
+
+    public synchronized long hits() { return hits; }
+    public synchronized long misses() { return misses; }
+    public synchronized long evictions() { return evictions; }
+    public synchronized long evictedBytes() { return evictedBytes; }
+    public synchronized int size() { return map.size(); }
+    public synchronized long bytes() { return bytes; }
+
+    @Override
+    public synchronized String toString() {
+        long total = hits + misses;
+        return String.format(Locale.ROOT, "posting cache: %d liste, %d KB / %d KB, hit %d / miss %d (%.1f%%), evicted %d (%d KB)",
+                map.size(), bytes / 1024, maxBytes / 1024, hits, misses, total == 0 ? 0.0 : 100.0 * hits / total,
+                evictions, evictedBytes / 1024);
+    }
+}
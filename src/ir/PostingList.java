@@ -1,33 +1,296 @@
 package ir;
 
+import java.nio.ByteBuffer;
 import java.util.*;
 
-public class PostingList {
-    private final List<Posting> postings = new ArrayList<>();
-    // skip pointers come mappa: indice -> indiceSaltato
-    private final Map<Integer, Integer> skips = new HashMap<>();
+/**
+ * Posting list compatta: docID, tf e posizioni in array int paralleli,
+ * senza un oggetto per posting. Le posizioni del posting i stanno in
+ * positions[posStart[i] .. posStart[i+1]).
+ * Gli skip pointer sono impliciti: dall'indice i multiplo di span si salta a i+span.
+ * Le liste lette da MappedIndex decodificano le posizioni solo al primo accesso, e così
+ * quelle unite da SegmentedIndex, che le copiano dalle parti solo quando servono.
+ * Per il top-k con pruning la lista è divisa in blocchi di BLOCK_SIZE posting,
+ * ciascuno con il suo tf massimo (letto dall'indice o calcolato al bisogno).
+ * Le liste dense lette dall'indice hanno anche i docID come DocBitmap, per AND/OR/NOT a parole.
+ */
+public class PostingList implements SortedDocIds {
+    public static final int BLOCK_SIZE = 128;
 
-    public void add(Posting p) { postings.add(p); }
-    public void sortByDocId() { postings.sort(Comparator.comparingInt(a -> a.docID)); }
-    public int size() { return postings.size(); }
-    public boolean isEmpty() { return postings.isEmpty(); }
-    public Posting get(int i) { return postings.get(i); }
-    public int df() { return postings.size(); }
-    public Integer skipFrom(int i) { return skips.get(i); }
+    private int[] docIds;
+    private int[] tfs;
+    private int[] posStart;
+    private int[] positions = new int[0];
+    private int size = 0;
+    private int skipSpan = 0;
+    // posizioni ancora da decodificare (slice di index.pos), null se già in memoria
+    private volatile ByteBuffer lazyPositions;
+    // oppure: posizioni da copiare dalle liste unite, null se già in memoria
+    private volatile MergedPositions lazyMerged;
+    // tf massimo per blocco e della lista intera, null/-1 finché non servono
+    private int[] blockMaxTf;
+    private int maxTf = -1;
+    private DocBitmap bitmap; // solo per le liste salvate come bitmap
 
-    public void computeSkips() {
-        skips.clear();
-        int L = postings.size();
-        if (L < 4) return;
-        int span = (int)Math.floor(Math.sqrt(L));
-        for (int i = 0; i + span < L; i += span) {
-            skips.put(i, i + span);
+    public PostingList() { this(4); }
+
+    public PostingList(int capacity) {
+        capacity = Math.max(capacity, 1);
+        docIds = new int[capacity];
+        tfs = new int[capacity];
+        posStart = new int[capacity + 1];
+    }
+
+    public void add(Posting p) {
+        add(p.docID, p.tf);
+        for (int pos : p.positions) addPosition(pos);
+    }
+
+    public void add(int docID, int tf) {
+        if (size == docIds.length) {
+            int cap = size * 2;
+            docIds = Arrays.copyOf(docIds, cap);
+            tfs = Arrays.copyOf(tfs, cap);
+            posStart = Arrays.copyOf(posStart, cap + 1);
         }
+        docIds[size] = docID;
+        tfs[size] = tf;
+        posStart[size + 1] = posStart[size];
+        size++;
+        blockMaxTf = null;
+        maxTf = -1;
+        bitmap = null;
+    }
+
+    /** Aggiunge una posizione all'ultimo posting inserito. */
+    public void addPosition(int pos) {
+        int end = posStart[size];
+        if (end == positions.length) positions = Arrays.copyOf(positions, Math.max(8, end * 2));
+        positions[end] = pos;
+        posStart[size]++;
+    }
+
+    public int blockCount() { return (size + BLOCK_SIZE - 1) / BLOCK_SIZE; }
+
+    /** Ultimo docID del blocco b. */
+    public int blockLastDoc(int b) { return docIds[Math.min(size, (b + 1) * BLOCK_SIZE) - 1]; }
+
+    public int blockMaxTf(int b) { return blockMax()[b]; }
+
+    public int maxTf() {
+        if (maxTf < 0) {
+            int m = 0;
+            for (int v : blockMax()) m = Math.max(m, v);
+            maxTf = m;
+        }
+        return maxTf;
+    }
+
+    /** Massimi già noti (letti dall'indice): evita di ricalcolarli. */
+    void setBlockMaxTf(int[] blockMaxTf, int maxTf) {
+        this.blockMaxTf = blockMaxTf;
+        this.maxTf = maxTf;
+    }
+
+    private int[] blockMax() {
+        int[] m = blockMaxTf;
+        if (m == null) {
+            m = new int[blockCount()];
+            for (int i = 0; i < size; i++) m[i / BLOCK_SIZE] = Math.max(m[i / BLOCK_SIZE], tfs[i]);
+            blockMaxTf = m;
+        }
+        return m;
+    }
+
+    /** docID come bitmap compressa, null se la lista è sparsa (o costruita in memoria). */
+    public DocBitmap bitmap() { return bitmap; }
+
+    void setBitmap(DocBitmap bitmap) { this.bitmap = bitmap; }
+
+    /** Le posizioni verranno decodificate da b (formato index.pos) al primo accesso. */
+    void setLazyPositions(ByteBuffer b) { lazyPositions = b; }
+
+    // parti concatenate in ordine, senza i posting con docID in skip
+    private record MergedPositions(List<PostingList> parts, BitSet skip) {}
+
+    /**
+     * Le posizioni verranno copiate al primo accesso da parts, di cui questa lista è la
+     * concatenazione senza i docID in skip (SegmentedIndex): AND/OR e ranking non le leggono.
+     */
+    void setLazyPositions(List<PostingList> parts, BitSet skip) { lazyMerged = new MergedPositions(parts, skip); }
+
+    private void ensurePositions() {
+        if (lazyPositions != null) loadPositions();
+        else if (lazyMerged != null) loadMergedPositions();
+    }
+
+    private synchronized void loadMergedPositions() {
+        MergedPositions m = lazyMerged;
+        if (m == null) return;
+        int[] p = new int[Math.max(8, size)];
+        int end = 0, i = 0;
+        for (PostingList part : m.parts()) {
+            for (int j = 0; j < part.size(); j++) {
+                if (m.skip().get(part.docId(j))) continue;
+                int n = part.positionCount(j);
+                if (end + n > p.length) p = Arrays.copyOf(p, Math.max(end + n, p.length * 2));
+                for (int k = 0; k < n; k++) p[end++] = part.position(j, k);
+                posStart[++i] = end;
+            }
+        }
+        positions = p;
+        lazyMerged = null;
+    }
+
+    private synchronized void loadPositions() {
+        ByteBuffer b = lazyPositions;
+        if (b == null) return;
+        int[] p = new int[Math.max(8, size)];
+        int end = 0;
+        for (int i = 0; i < size; i++) {
+            int n = VByte.read(b), pos = 0;
+            if (end + n > p.length) p = Arrays.copyOf(p, Math.max(end + n, p.length * 2));
+            for (int k = 0; k < n; k++) {
+                pos += VByte.read(b);
+                p[end++] = pos;
+            }
+            posStart[i + 1] = end;
+        }
+        positions = p;
+        lazyPositions = null;
+    }
+
+    /**
+     * Stima dell'occupazione in heap (per PostingCache). Le posizioni non ancora decodificate
+     * contano per il caso peggiore, una posizione per ogni byte di index.pos.
+     */
+    long heapBytes() {
+        long b = 64 + 4L * (docIds.length + tfs.length + posStart.length + positions.length);
+        ByteBuffer lazy = lazyPositions;
+        if (lazy != null) b += 4L * lazy.remaining();
+        MergedPositions merged = lazyMerged;
+        if (merged != null) for (PostingList part : merged.parts()) b += part.heapBytes(); // tenute vive fino alla copia
+        int[] m = blockMaxTf;
+        if (m != null) b += 16 + 4L * m.length;
+        if (bitmap != null) b += bitmap.heapBytes();
+        return b;
+    }
+
+    /** Accoda tutti i posting di other (usato per unire segmenti contigui). */
+    public void append(PostingList other) {
+        other.ensurePositions();
+        for (int i = 0; i < other.size; i++) {
+            add(other.docIds[i], other.tfs[i]);
+            for (int k = other.posStart[i]; k < other.posStart[i + 1]; k++) addPosition(other.positions[k]);
+        }
+    }
+
+    public void sortByDocId() {
+        boolean sorted = true;
+        for (int i = 1; i < size && sorted; i++) sorted = docIds[i - 1] <= docIds[i];
+        if (sorted) return;
+
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) order[i] = i;
+        Arrays.sort(order, Comparator.comparingInt(i -> docIds[i]));
+        int[] d = new int[docIds.length], t = new int[tfs.length];
+        int[] ps = new int[posStart.length], p = new int[positions.length];
+        for (int k = 0; k < size; k++) {
+            int i = order[k];
+            d[k] = docIds[i];
+            t[k] = tfs[i];
+            int n = posStart[i + 1] - posStart[i];
+            System.arraycopy(positions, posStart[i], p, ps[k], n);
+            ps[k + 1] = ps[k] + n;
+        }
+        docIds = d; tfs = t; posStart = ps; positions = p;
+    }
+
+    public int size() { return size; }
+    public boolean isEmpty() { return size == 0; }
+    public int df() { return size; }
+    public int docId(int i) { return docIds[i]; }
+
+    /** Array interno dei docID (valido fino a size()): non modificarlo. */
+    int[] docIdArray() { return docIds; }
+    public int tf(int i) { return tfs[i]; }
+    public int positionCount(int i) { ensurePositions(); return posStart[i + 1] - posStart[i]; }
+
+    /**
+     * true se la lista ha le posizioni (sempre per una lista vuota). Le liste del vecchio
+     * index.dict hanno solo docID e tf: frasi e NEAR non si possono valutare.
+     */
+    public boolean hasPositions() {
+        ensurePositions();
+        return size == 0 || posStart[size] > 0;
+    }
+    public int position(int i, int k) { ensurePositions(); return positions[posStart[i] + k]; }
+
+    /** true se il posting i contiene la posizione pos (ricerca binaria, le posizioni sono crescenti). */
+    public boolean hasPosition(int i, int pos) {
+        ensurePositions();
+        return Arrays.binarySearch(positions, posStart[i], posStart[i + 1], pos) >= 0;
+    }
+
+    /** Vista Posting dell'elemento i (alloca: nei cicli usare docId/tf/position). */
+    public Posting get(int i) {
+        ensurePositions();
+        Posting p = new Posting(docIds[i]);
+        p.tf = tfs[i];
+        for (int k = posStart[i]; k < posStart[i + 1]; k++) p.addPosition(positions[k]);
+        return p;
+    }
+
+    /** Indice di destinazione dello skip pointer che parte da i, -1 se non c'è. */
+    public int skipFrom(int i) {
+        if (skipSpan == 0 || i % skipSpan != 0 || i + skipSpan >= size) return -1;
+        return i + skipSpan;
+    }
+
+    public void computeSkips() {
+        skipSpan = (size < 4) ? 0 : (int) Math.floor(Math.sqrt(size));
     }
 
     public List<Integer> docIds() {
-        List<Integer> ids = new ArrayList<>(postings.size());
-        for (Posting p : postings) ids.add(p.docID);
+        List<Integer> ids = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) ids.add(docIds[i]);
         return ids;
     }
+
+    public Cursor cursor() { return new Cursor(); }
+
+    /**
+     * Iteratore sui docID che non alloca durante la scansione.
+     * Prima di nextDoc()/advance() è posizionato prima del primo posting.
+     */
+    public final class Cursor {
+        public static final int NO_MORE_DOCS = Integer.MAX_VALUE;
+        private int i = -1;
+
+        public int docID() {
+            if (i < 0) return -1;
+            return i < size ? docIds[i] : NO_MORE_DOCS;
+        }
+
+        public int nextDoc() {
+            if (i < size) i++;
+            return docID();
+        }
+
+        /** Avanza al primo docID >= target (mai all'indietro), seguendo gli skip pointer. */
+        public int advance(int target) {
+            if (i < 0) i = 0;
+            while (i < size && docIds[i] < target) {
+                int s = skipFrom(i);
+                if (s >= 0 && docIds[s] <= target) i = s;
+                else i++;
+            }
+            return docID();
+        }
+
+        public int tf() { return tfs[i]; }
+
+        /** Indice del posting corrente nella lista. */
+        public int index() { return i; }
+    }
 }
@@ -0,0 +1,89 @@
+package ir;
+
+import java.util.*;
+
+/**
+ * Cache LRU dei risultati delle query booleane (docID come int[]).
+ * La chiave è la query normalizzata: modo + termini stemmati senza stop words,
+ * ordinati e senza duplicati per AND/OR (commutativi), l'albero normalizzato per bool.
+ * Limiti: numero di voci e byte stimati; si scarta la voce usata meno di recente.
+ * La cache è legata a un indice: se un Retriever la usa con un indice diverso
+ * (es. dopo "Ricarica indice") viene svuotata.
+ * Thread-safe: i metodi pubblici sono synchronized.
+ */
+public final class QueryCache {
+    private static final int ENTRY_OVERHEAD = 96; // oggetti chiave/voce della mappa, stima
+
+    private final int maxEntries;
+    private final long maxBytes;
+    private final LinkedHashMap<String, int[]> map = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes = 0;
+    private long hits = 0, misses = 0, evictions = 0;
+    private Object index; // indice a cui si riferiscono i risultati
+
+    public QueryCache(int maxEntries, long maxBytes) {
+        this.maxEntries = Math.max(1, maxEntries);
+        this.maxBytes = Math.max(0, maxBytes);
+    }
+
+    static String key(String mode, Collection<String> terms) {
+        return mode + ':' + String.join(" ", terms);
+    }
+
+    /** Svuota la cache se index non è quello dei risultati memorizzati; true se l'ha svuotata. */
+    synchronized boolean bind(Object index) {
+        if (this.index == index) return false;
+        invalidate();
+        this.index = index;
+        return true;
+    }
+
+    synchronized int[] get(String key) {
+        int[] ids = map.get(key);
+        if (ids == null) misses++;
+        else hits++;
+        return ids;
+    }
+
+    /** Come get() ma senza contare hit/miss (ricerche esplorative, es. sottoinsiemi). */
+    synchronized int[] peek(String key) {
+        return map.get(key);
+    }
+
+    synchronized void put(String key, int[] ids) {
+        long size = sizeOf(key, ids);
+        if (size > maxBytes) return; // risultato troppo grande per la cache
+        int[] old = map.put(key, ids);
+        if (old != null) bytes -= sizeOf(key, old);
+        bytes += size;
+        Iterator<Map.Entry<String, int[]>> it = map.entrySet().iterator();
+        while ((map.size() > maxEntries || bytes > maxBytes) && it.hasNext()) {
+            Map.Entry<String, int[]> e = it.next(); // ordine di accesso: prima la meno recente
+            bytes -= sizeOf(e.getKey(), e.getValue());
+            it.remove();
+            evictions++;
+        }
+    }
+
+    private static long sizeOf(String key, int[] ids) {
+        return ENTRY_OVERHEAD + 2L * key.length() + 4L * ids.length;
+    }
+
+    public synchronized void invalidate() {
+        map.clear();
+        bytes = 0;
+    }
+
+    public synchronized long hits() { return hits; }
+    public synchronized long misses() { return misses; }
+    public synchronized long evictions() { return evictions; }
+    public synchronized int size() { return map.size(); }
+    public synchronized long bytes() { return bytes; }
+
+    @Override
+    public synchronized String toString() {
+        long total = hits + misses;
+        return String.format(Locale.ROOT, "cache: %d voci, %d KB, hit %d / miss %d (%.1f%%), evicted %d",
+                map.size(), bytes / 1024, hits, misses, total == 0 ? 0.0 : 100.0 * hits / total, evictions);
+    }
+}
@@ -0,0 +1,206 @@
+package ir;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Valutazione booleana multi-via in una sola passata.
+ * AND: la lista più rara guida e le altre vengono raggiunte con il galloping;
+ * OR: merge a k vie con un min-heap su array di int; AND NOT: differenza con galloping.
+ * Le liste dense (PostingList.bitmap() != null) usano invece le operazioni a parole
+ * di DocBitmap: tutte dense -> AND/OR/AND NOT sulle bitmap; miste -> le dense sono
+ * interrogate con contains() al posto del galloping.
+ * I risultati sono scritti in un DocIdBuffer riusabile: nessuna allocazione per posting.
+ * out non deve coincidere con nessuno degli input.
+ */
+final class QueryEngine {
+    // null = galloping (default); altrimenti AND a coppie con l'Intersector scelto (--intersect=scalar|simd)
+    private static volatile Intersector intersector;
+
+    private QueryEngine() {}
+
+    static void setIntersector(Intersector i) { intersector = i; }
+
+    static void and(SortedDocIds[] lists, DocIdBuffer out) {
+        and(lists, out, null);
+    }
+
+    /**
+     * Come and(lists, out); scratch (null = allocato al bisogno) è il secondo buffer
+     * degli AND a coppie con un Intersector, riusabile tra le query come out.
+     */
+    static void and(SortedDocIds[] lists, DocIdBuffer out, DocIdBuffer scratch) {
+        out.clear();
+        int n = lists.length;
+        if (n == 0) return;
+        SortedDocIds[] ls = lists.clone();
+        Arrays.sort(ls, Comparator.comparingInt(SortedDocIds::size)); // crescente per df
+        if (ls[0].size() == 0) return;
+        DocBitmap[] bm = bitmaps(ls);
+        if (bm != null && n > 1) {
+            DocBitmap acc = bm[0];
+            for (int j = 1; j < n && acc.cardinality() > 0; j++) acc = acc.and(bm[j]);
+            acc.toBuffer(out);
+            return;
+        }
+        Intersector x = intersector;
+        if (x != null && n > 1) {
+            intersectBlocks(x, ls, out, scratch != null ? scratch : new DocIdBuffer(ls[0].size()));
+            return;
+        }
+        out.ensureCapacity(ls[0].size());
+
+        int[] pos = new int[n];
+        SortedDocIds lead = ls[0];
+        int i = 0;
+        outer:
+        while (i < lead.size()) {
+            int target = lead.docId(i);
+            for (int j = 1; j < n; j++) {
+                DocBitmap b = bitmap(ls[j]);
+                if (b != null) {
+                    if (b.contains(target)) continue;
+                    i++;
+                    continue outer;
+                }
+                pos[j] = ls[j].gallop(pos[j], target);
+                if (pos[j] == ls[j].size()) return;
+                int d = ls[j].docId(pos[j]);
+                if (d != target) {
+                    // target mancante in ls[j]: la guida salta direttamente a d
+                    i = lead.gallop(i + 1, d);
+                    continue outer;
+                }
+            }
+            out.add(target);
+            i++;
+        }
+    }
+
+    static void or(SortedDocIds[] lists, DocIdBuffer out) {
+        out.clear();
+        // le liste dense si uniscono a parole, il risultato entra nel merge come una lista sola
+        DocBitmap dense = null;
+        int sparse = 0;
+        for (SortedDocIds l : lists) {
+            DocBitmap b = bitmap(l);
+            if (b == null) sparse++;
+            else dense = (dense == null) ? b : dense.or(b);
+        }
+        if (dense != null) {
+            if (sparse == 0) {
+                dense.toBuffer(out);
+                return;
+            }
+            DocIdBuffer merged = new DocIdBuffer(dense.cardinality());
+            dense.toBuffer(merged);
+            SortedDocIds[] rest = new SortedDocIds[sparse + 1];
+            int r = 0;
+            for (SortedDocIds l : lists) if (bitmap(l) == null) rest[r++] = l;
+            rest[r] = merged;
+            lists = rest;
+        }
+        int n = lists.length;
+        int total = 0;
+        for (SortedDocIds l : lists) total += l.size();
+        out.ensureCapacity(total);
+
+        // heap di indici di lista ordinato sul docID corrente
+        int[] heap = new int[n];
+        int[] pos = new int[n];
+        int h = 0;
+        for (int j = 0; j < n; j++) {
+            if (lists[j].size() > 0) heap[h++] = j;
+        }
+        for (int k = h / 2 - 1; k >= 0; k--) siftDown(heap, h, k, lists, pos);
+
+        int last = -1;
+        while (h > 0) {
+            int j = heap[0];
+            int d = lists[j].docId(pos[j]);
+            if (d != last) { out.add(d); last = d; }
+            if (++pos[j] == lists[j].size()) heap[0] = heap[--h];
+            siftDown(heap, h, 0, lists, pos);
+        }
+    }
+
+    /** Documenti di a assenti in b: si scorre a e si fa galloping in b. */
+    static void andNot(SortedDocIds a, SortedDocIds b, DocIdBuffer out) {
+        out.clear();
+        DocBitmap ba = bitmap(a), bb = bitmap(b);
+        if (ba != null && bb != null) {
+            ba.andNot(bb).toBuffer(out);
+            return;
+        }
+        out.ensureCapacity(a.size());
+        int j = 0;
+        for (int i = 0; i < a.size(); i++) {
+            int d = a.docId(i);
+            if (bb != null) {
+                if (!bb.contains(d)) out.add(d);
+                continue;
+            }
+            j = b.gallop(j, d);
+            if (j == b.size() || b.docId(j) != d) out.add(d);
+        }
+    }
+
+    /**
+     * AND a coppie sugli array di docID (dalla lista più rara), alternando out e scratch:
+     * si parte da quello giusto perché l'ultimo passo scriva in out, senza copie finali.
+     */
+    private static void intersectBlocks(Intersector x, SortedDocIds[] ls, DocIdBuffer out, DocIdBuffer scratch) {
+        int n = ls[0].size();
+        out.ensureCapacity(n);
+        scratch.ensureCapacity(n);
+        int[] acc = ids(ls[0]); // sola lettura: può essere l'array interno della lista
+        int[] next = ((ls.length - 1) % 2 == 1) ? out.array() : scratch.array();
+        int[] spare = (next == out.array()) ? scratch.array() : out.array();
+        for (int j = 1; j < ls.length && n > 0; j++) {
+            n = x.intersect(acc, n, ids(ls[j]), ls[j].size(), next);
+            acc = next;
+            next = spare;
+            spare = acc;
+        }
+        out.setSize(n); // n > 0 solo se tutti i passi sono stati fatti, e l'ultimo ha scritto in out
+    }
+
+    private static int[] ids(SortedDocIds l) {
+        if (l instanceof PostingList pl) return pl.docIdArray();
+        if (l instanceof DocIdBuffer b) return b.array();
+        int[] a = new int[l.size()];
+        for (int i = 0; i < a.length; i++) a[i] = l.docId(i);
+        return a;
+    }
+
+    private static DocBitmap bitmap(SortedDocIds l) {
+        return (l instanceof PostingList pl) ? pl.bitmap() : null;
+    }
+
+    /** Le bitmap di tutte le liste, null se almeno una è sparsa. */
+    private static DocBitmap[] bitmaps(SortedDocIds[] lists) {
+        DocBitmap[] out = new DocBitmap[lists.length];
+        for (int j = 0; j < lists.length; j++) {
+            if ((out[j] = bitmap(lists[j])) == null) return null;
+        }
+        return out;
+    }
+
+    private static void siftDown(int[] heap, int h, int k, SortedDocIds[] lists, int[] pos) {
+        int x = heap[k];
+        int dx = (h > 0) ? lists[x].docId(pos[x]) : 0;
+        while (true) {
+            int c = 2 * k + 1;
+            if (c >= h) break;
+            int dc = lists[heap[c]].docId(pos[heap[c]]);
+            if (c + 1 < h) {
+                int dr = lists[heap[c + 1]].docId(pos[heap[c + 1]]);
+                if (dr < dc) { c++; dc = dr; }
+            }
+            if (dx <= dc) break;
+            heap[k] = heap[c];
+            k = c;
+        }
+        heap[k] = x;
+    }
+}
@@ -0,0 +1,18 @@
+package ir;
+
+import java.util.List;
+
+/** Albero di una query booleana prodotto da QueryParser. */
+public sealed interface QueryNode {
+    /** Parola della query (prima della normalizzazione: testo così come scritto). */
+    record Term(String text) implements QueryNode {}
+
+    /** Frase tra virgolette: termini consecutivi. */
+    record Phrase(String text) implements QueryNode {}
+
+    record And(List<QueryNode> clauses) implements QueryNode {}
+
+    record Or(List<QueryNode> clauses) implements QueryNode {}
+
+    record Not(QueryNode clause) implements QueryNode {}
+}
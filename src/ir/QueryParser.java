@@ -0,0 +1,95 @@
+package ir;
+
+import java.util.*;
+
+/**
+ * Parser a discesa ricorsiva per le query booleane:
+ *   expr    := and ( OR and )*
+ *   and     := unary ( [AND] unary )*      (due operandi affiancati = AND implicito)
+ *   unary   := NOT unary | primary
+ *   primary := ( expr ) | "frase" | parola        (parola con * o ?: tutti i termini che corrispondono)
+ * Gli operatori vanno scritti in maiuscolo; in minuscolo sono parole normali.
+ */
+public final class QueryParser {
+    private final List<String> tokens;
+    private int i = 0;
+
+    private QueryParser(List<String> tokens) { this.tokens = tokens; }
+
+    public static QueryNode parse(String query) {
+        QueryParser p = new QueryParser(lex(query));
+        if (p.tokens.isEmpty()) throw new IllegalArgumentException("Query vuota");
+        QueryNode n = p.or();
+        if (p.i < p.tokens.size()) throw new IllegalArgumentException("Query non valida: '" + p.tokens.get(p.i) + "' inatteso");
+        return n;
+    }
+
+    /** Divide la query in parole, parentesi e frasi (le frasi mantengono la virgoletta iniziale). */
+    private static List<String> lex(String q) {
+        List<String> out = new ArrayList<>();
+        int n = q.length(), k = 0;
+        while (k < n) {
+            char c = q.charAt(k);
+            if (Character.isWhitespace(c)) {
+                k++;
+            } else if (c == '(' || c == ')') {
+                out.add(String.valueOf(c));
+                k++;
+            } else if (c == '"') {
+                int end = q.indexOf('"', k + 1);
+                if (end < 0) throw new IllegalArgumentException("Query non valida: virgolette non chiuse");
+                out.add(q.substring(k, end));
+                k = end + 1;
+            } else {
+                int start = k;
+                while (k < n && !Character.isWhitespace(q.charAt(k)) && "()\"".indexOf(q.charAt(k)) < 0) k++;
+                out.add(q.substring(start, k));
+            }
+        }
+        return out;
+    }
+
+    private QueryNode or() {
+        List<QueryNode> clauses = new ArrayList<>();
+        clauses.add(and());
+        while (accept("OR")) clauses.add(and());
+        return clauses.size() == 1 ? clauses.get(0) : new QueryNode.Or(clauses);
+    }
+
+    private QueryNode and() {
+        List<QueryNode> clauses = new ArrayList<>();
+        clauses.add(unary());
+        while (i < tokens.size() && !peek("OR") && !peek(")")) {
+            accept("AND");
+            clauses.add(unary());
+        }
+        return clauses.size() == 1 ? clauses.get(0) : new QueryNode.And(clauses);
+    }
+
+    private QueryNode unary() {
+        if (accept("NOT")) return new QueryNode.Not(unary());
+        return primary();
+    }
+
+    private QueryNode primary() {
+        if (i >= tokens.size()) throw new IllegalArgumentException("Query non valida: operando mancante alla fine");
+        String t = tokens.get(i++);
+        if (t.equals("(")) {
+            QueryNode n = or();
+            if (!accept(")")) throw new IllegalArgumentException("Query non valida: parentesi non chiusa");
+            return n;
+        }
+        if (t.startsWith("\"")) return new QueryNode.Phrase(t.substring(1));
+        if (t.equals(")") || t.equals("AND") || t.equals("OR"))
+            throw new IllegalArgumentException("Query non valida: '" + t + "' inatteso");
+        return new QueryNode.Term(t);
+    }
+
+    private boolean peek(String t) { return i < tokens.size() && tokens.get(i).equals(t); }
+
+    private boolean accept(String t) {
+        if (!peek(t)) return false;
+        i++;
+        return true;
+    }
+}
@@ -0,0 +1,217 @@
+package ir;
+
+import java.util.*;
+
+/**
+ * Pianificazione e valutazione di un albero QueryNode.
+ * Il costo di ogni nodo è stimato dai df dell'indice:
+ *   termine = df, frase = df minimo, AND = costo minimo delle clausole positive,
+ *   OR = somma, NOT = documenti esclusi dal resto.
+ * Valutazione:
+ * - i termini semplici di un AND sono intersecati insieme (QueryEngine.and),
+ *   le clausole composte in ordine di costo crescente
+ * - ogni clausola è valutata solo sui candidati già sopravvissuti (filter),
+ *   quindi un OR sotto un AND costa quanto la clausola più rara, non la somma
+ * - NOT diventa una differenza rispetto ai candidati (galloping nella lista esclusa)
+ * - un risultato intermedio vuoto interrompe subito la valutazione
+ * Non è thread-safe: un planner per query.
+ */
+final class QueryPlanner {
+    private static final DocIdBuffer EMPTY = new DocIdBuffer(1);
+    static final int MAX_EXPANSION = 1000; // termini per un singolo pattern con * o ?
+
+    private final Retriever retriever;
+    private final Map<String, PostingList> lists = new HashMap<>(); // lookup condivisi nella query
+
+    QueryPlanner(Retriever retriever) { this.retriever = retriever; }
+
+    /** Documenti che soddisfano la query già normalizzata (null = neutra), in ordine di docID. */
+    SortedDocIds evaluate(QueryNode normalized) {
+        return (normalized == null) ? EMPTY : evaluate(normalized, null);
+    }
+
+    /**
+     * Termini stemmati e stop words rimosse; restituisce null per un nodo
+     * neutro (solo stop words), che non vincola il risultato.
+     * Una parola con * o ? diventa l'OR dei termini del dizionario che corrispondono
+     * (un OR vuoto se nessuno corrisponde).
+     */
+    QueryNode normalize(QueryNode n) {
+        if (n instanceof QueryNode.Term t && Retriever.isWildcard(t.text())) {
+            List<String> terms = retriever.wildcardTerms(t.text(), MAX_EXPANSION + 1);
+            if (terms.size() > MAX_EXPANSION) throw tooManyTerms(t.text());
+            List<QueryNode> or = new ArrayList<>();
+            for (String s : terms) or.add(new QueryNode.Term(s));
+            return or.size() == 1 ? or.get(0) : new QueryNode.Or(or);
+        }
+        if (n instanceof QueryNode.Term t) {
+            List<QueryNode> terms = new ArrayList<>();
+            for (String s : retriever.normalizedTerms(t.text())) terms.add(new QueryNode.Term(s));
+            return combine(terms, true);
+        }
+        if (n instanceof QueryNode.Phrase p) {
+            List<String> terms = retriever.normalizedTerms(p.text());
+            if (terms.isEmpty()) return null;
+            return terms.size() == 1 ? new QueryNode.Term(terms.get(0)) : p;
+        }
+        if (n instanceof QueryNode.Not not) {
+            QueryNode inner = normalize(not.clause());
+            return (inner == null) ? null : new QueryNode.Not(inner);
+        }
+        boolean and = n instanceof QueryNode.And;
+        List<QueryNode> out = new ArrayList<>();
+        for (QueryNode c : and ? ((QueryNode.And) n).clauses() : ((QueryNode.Or) n).clauses()) {
+            QueryNode x = normalize(c);
+            if (x == null) continue;
+            // appiattisce AND dentro AND e OR dentro OR
+            if (and && x instanceof QueryNode.And a) out.addAll(a.clauses());
+            else if (!and && x instanceof QueryNode.Or o) out.addAll(o.clauses());
+            else out.add(x);
+        }
+        return combine(out, and);
+    }
+
+    static IllegalArgumentException tooManyTerms(String pattern) {
+        return new IllegalArgumentException("Query non valida: '" + pattern + "' corrisponde a più di " + MAX_EXPANSION + " termini");
+    }
+
+    /** Parole con * o ? dell'albero (ancora da espandere), in ordine di apparizione. */
+    static List<String> wildcards(QueryNode n) {
+        List<String> out = new ArrayList<>();
+        collectWildcards(n, out);
+        return out;
+    }
+
+    private static void collectWildcards(QueryNode n, List<String> out) {
+        if (n instanceof QueryNode.Term t && Retriever.isWildcard(t.text())) out.add(t.text());
+        else if (n instanceof QueryNode.Not not) collectWildcards(not.clause(), out);
+        else if (n instanceof QueryNode.And a) for (QueryNode c : a.clauses()) collectWildcards(c, out);
+        else if (n instanceof QueryNode.Or o) for (QueryNode c : o.clauses()) collectWildcards(c, out);
+    }
+
+    private static QueryNode combine(List<QueryNode> clauses, boolean and) {
+        if (clauses.isEmpty()) return null;
+        if (clauses.size() == 1) return clauses.get(0);
+        return and ? new QueryNode.And(clauses) : new QueryNode.Or(clauses);
+    }
+
+    /** Stima del numero di documenti restituiti dal nodo (normalizzato). */
+    long cost(QueryNode n) {
+        if (n instanceof QueryNode.Term t) {
+            PostingList pl = list(t.text());
+            return (pl == null) ? 0 : pl.size();
+        }
+        if (n instanceof QueryNode.Phrase p) {
+            long min = Long.MAX_VALUE;
+            for (String s : retriever.normalizedTerms(p.text())) min = Math.min(min, cost(new QueryNode.Term(s)));
+            return min;
+        }
+        if (n instanceof QueryNode.Not not) return Math.max(0, universeSize() - cost(not.clause()));
+        if (n instanceof QueryNode.Or o) {
+            long sum = 0;
+            for (QueryNode c : o.clauses()) sum += cost(c);
+            return Math.min(sum, universeSize());
+        }
+        long min = universeSize();
+        for (QueryNode c : ((QueryNode.And) n).clauses()) {
+            if (!(c instanceof QueryNode.Not)) min = Math.min(min, cost(c));
+        }
+        return min;
+    }
+
+    private long universeSize() { return retriever.universe().size(); }
+
+    private PostingList list(String term) {
+        return lists.computeIfAbsent(term, retriever::postings);
+    }
+
+    /** Valuta n ristretto ai documenti di filter (null = nessuna restrizione). */
+    private SortedDocIds evaluate(QueryNode n, SortedDocIds filter) {
+        if (n instanceof QueryNode.Term t) {
+            PostingList pl = list(t.text());
+            if (pl == null) return EMPTY;
+            return (filter == null) ? pl : intersect(List.of(filter, pl));
+        }
+        if (n instanceof QueryNode.Phrase p) {
+            DocIdBuffer out = new DocIdBuffer();
+            for (int d : retriever.searchPhrase(p.text())) out.add(d);
+            return (filter == null) ? out : intersect(List.of(filter, out));
+        }
+        if (n instanceof QueryNode.Not not) {
+            SortedDocIds base = (filter == null) ? retriever.universe() : filter;
+            return difference(base, evaluate(not.clause(), base));
+        }
+        if (n instanceof QueryNode.Or o) {
+            List<SortedDocIds> parts = new ArrayList<>();
+            for (QueryNode c : o.clauses()) {
+                if (cost(c) == 0) continue;
+                SortedDocIds r = evaluate(c, filter);
+                if (r.size() > 0) parts.add(r);
+            }
+            if (parts.isEmpty()) return EMPTY;
+            if (parts.size() == 1) return parts.get(0);
+            DocIdBuffer out = new DocIdBuffer();
+            QueryEngine.or(parts.toArray(new SortedDocIds[0]), out);
+            return out;
+        }
+        return evaluateAnd((QueryNode.And) n, filter);
+    }
+
+    private SortedDocIds evaluateAnd(QueryNode.And and, SortedDocIds filter) {
+        List<PostingList> terms = new ArrayList<>();
+        List<QueryNode> composite = new ArrayList<>();
+        List<QueryNode> negated = new ArrayList<>();
+        for (QueryNode c : and.clauses()) {
+            if (c instanceof QueryNode.Not not) {
+                negated.add(not.clause());
+            } else if (c instanceof QueryNode.Term t) {
+                PostingList pl = list(t.text());
+                if (pl == null) return EMPTY; // termine assente: AND vuoto senza valutare il resto
+                terms.add(pl);
+            } else {
+                if (cost(c) == 0) return EMPTY;
+                composite.add(c);
+            }
+        }
+        composite.sort(Comparator.comparingLong(this::cost));
+        long termCost = Long.MAX_VALUE;
+        for (PostingList pl : terms) termCost = Math.min(termCost, pl.size());
+
+        SortedDocIds cur = filter;
+        int k = 0;
+        // clausole composte più selettive dei termini: prima, come filtro
+        while (k < composite.size() && cost(composite.get(k)) < termCost) {
+            cur = evaluate(composite.get(k++), cur);
+            if (cur.size() == 0) return EMPTY;
+        }
+        if (!terms.isEmpty()) {
+            List<SortedDocIds> all = new ArrayList<>(terms);
+            if (cur != null) all.add(cur);
+            cur = (all.size() == 1) ? all.get(0) : intersect(all);
+            if (cur.size() == 0) return EMPTY;
+        }
+        while (k < composite.size()) {
+            cur = evaluate(composite.get(k++), cur);
+            if (cur.size() == 0) return EMPTY;
+        }
+        if (cur == null) cur = retriever.universe(); // solo clausole NOT
+        for (QueryNode c : negated) {
+            cur = difference(cur, evaluate(c, cur));
+            if (cur.size() == 0) return EMPTY;
+        }
+        return cur;
+    }
+
+    private SortedDocIds intersect(List<SortedDocIds> parts) {
+        DocIdBuffer out = new DocIdBuffer(); // resta come risultato intermedio: nuovo a ogni nodo
+        QueryEngine.and(parts.toArray(new SortedDocIds[0]), out, retriever.scratch());
+        return out;
+    }
+
+    private static SortedDocIds difference(SortedDocIds a, SortedDocIds b) {
+        if (b.size() == 0) return a;
+        DocIdBuffer out = new DocIdBuffer();
+        QueryEngine.andNot(a, b, out);
+        return out;
+    }
+}
@@ -0,0 +1,115 @@
+package ir;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * Shard servito da un altro processo ("Main serve --dir=shard_i"), interrogato via HTTP:
+ * /termstats per le statistiche, /terms per le espansioni dei pattern e /search con limit massimo, in forma "shard" (punteggi esatti,
+ * senza percorsi) e, per il ranking, con le statistiche globali del coordinatore (vedi SearchServer).
+ * Errori di query (400) diventano IllegalArgumentException, gli altri IOException.
+ */
+public final class RemoteShard implements Searcher {
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    private final URI base;
+    private final HttpClient http;
+
+    /** base: indirizzo del server dello shard, es. http://127.0.0.1:8081 */
+    public RemoteShard(URI base) {
+        String s = base.toString();
+        this.base = URI.create(s.endsWith("/") ? s.substring(0, s.length() - 1) : s);
+        // HTTP/1.1: il server del JDK non parla HTTP/2 e il tentativo di upgrade costa una richiesta lenta
+        this.http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).connectTimeout(Duration.ofSeconds(5)).build();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public CollectionStats stats(String query) throws IOException {
+        Map<String, Object> json = get("/termstats?q=" + encode(query));
+        Map<String, Integer> df = new HashMap<>();
+        for (Map.Entry<String, Object> e : ((Map<String, Object>) json.get("df")).entrySet()) {
+            df.put(e.getKey(), ((Number) e.getValue()).intValue());
+        }
+        return new CollectionStats(((Number) json.get("docs")).intValue(), ((Number) json.get("length")).longValue(), df);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<String> terms(String pattern, int limit) throws IOException {
+        List<String> out = new ArrayList<>();
+        for (Object t : (List<Object>) get("/terms?q=" + encode(pattern) + "&limit=" + limit).get("terms")) out.add((String) t);
+        return out;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<ScoredDoc> search(String mode, String query, int top, CollectionStats global) throws IOException {
+        StringBuilder url = new StringBuilder("/search?shard=1&limit=").append(Integer.MAX_VALUE)
+                .append("&top=").append(top)
+                .append("&mode=").append(encode(mode))
+                .append("&q=").append(encode(query));
+        if (global != null) {
+            StringBuilder df = new StringBuilder();
+            for (Map.Entry<String, Integer> e : global.df().entrySet()) {
+                if (df.length() > 0) df.append(',');
+                df.append(encode(e.getKey())).append(':').append(e.getValue());
+            }
+            url.append("&docs=").append(global.docCount())
+               .append("&length=").append(global.totalLength())
+               .append("&df=").append(encode(df.toString()));
+        }
+        Map<String, Object> json = get(url.toString());
+        List<Object> results = (List<Object>) json.get("results");
+        List<ScoredDoc> out = new ArrayList<>(results.size());
+        for (Object o : results) {
+            Map<String, Object> r = (Map<String, Object>) o;
+            Number score = (Number) r.get("score");
+            out.add(new ScoredDoc(((Number) r.get("doc")).intValue(), score != null ? score.doubleValue() : 0.0));
+        }
+        return out;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> get(String pathAndQuery) throws IOException {
+        HttpRequest req = HttpRequest.newBuilder(URI.create(base + pathAndQuery)).timeout(TIMEOUT).GET().build();
+        HttpResponse<String> resp;
+        try {
+            resp = http.send(req, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Richiesta a " + base + " interrotta");
+        } catch (IOException e) {
+            throw new IOException("Shard " + base + " non raggiungibile: " + e, e);
+        }
+        Map<String, Object> json;
+        try {
+            json = (Map<String, Object>) Json.parse(resp.body());
+        } catch (IllegalArgumentException | ClassCastException e) {
+            throw new IOException("Risposta non valida da " + base + ": " + e.getMessage());
+        }
+        if (resp.statusCode() == 400) throw new IllegalArgumentException(String.valueOf(json.get("error")));
+        if (resp.statusCode() != 200) throw new IOException("Shard " + base + ": HTTP " + resp.statusCode() + " " + json.get("error"));
+        return json;
+    }
+
+    private static String encode(String s) {
+        return URLEncoder.encode(s, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String toString() { return base.toString(); }
+
+    @Override
+    public void close() {
+        // HttpClient (JDK 17) non ha close(): le connessioni inattive si chiudono da sole
+    }
+}
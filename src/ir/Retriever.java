@@ -4,106 +4,580 @@ import java.util.*;
 
 public class Retriever {
     private final Map<String, PostingList> index;
-    @SuppressWarnings("unused")
     private final Map<Integer, String> docs;
     private final Tokenizer tokenizer = new Tokenizer();
     private final PorterStemmer stemmer = new PorterStemmer();
+    private CachingStemmer sharedStemmer; // se presente, al posto di stemmer (condiviso tra Retriever)
     private final StopWords stopWords;
+    private final DocLengths lengths; // null per indici senza doc.len
+    private final DocIdBuffer results = new DocIdBuffer(); // riusato tra le query AND/OR
+    private final DocIdBuffer scratch = new DocIdBuffer(); // secondo buffer degli AND a coppie (--intersect)
+    private DocIdBuffer universe; // tutti i docID, per i NOT senza clausole positive
+    private QueryCache cache; // null = nessuna cache
+    private IntersectionCache intersections; // null = nessuna cache delle intersezioni
 
     public Retriever(Map<String, PostingList> index, Map<Integer, String> docs, StopWords sw) {
+        this(index, docs, sw, null);
+    }
+
+    public Retriever(Map<String, PostingList> index, Map<Integer, String> docs, StopWords sw, DocLengths lengths) {
         this.index = index;
         this.docs = docs;
         this.stopWords = sw;
+        this.lengths = lengths;
+    }
+
+    /**
+     * Esegue una query in uno dei modi della CLI: and, or, bool, phrase, near/K (docID in ordine,
+     * punteggio 0) oppure ranked, wand (primi top per punteggio).
+     * @throws IllegalArgumentException se il modo o la query non sono validi
+     */
+    public List<ScoredDoc> search(String mode, String query, int top) {
+        return search(mode, query, top, null);
+    }
+
+    /**
+     * Come search(mode, query, top), ma ranked e wand usano le statistiche global
+     * (null = quelle di questo indice): così uno shard dà i punteggi dell'indice intero.
+     */
+    public List<ScoredDoc> search(String mode, String query, int top, CollectionStats global) {
+        if (mode.equals("ranked")) return searchRanked(query, top, global);
+        if (mode.equals("wand")) return searchWand(query, top, global);
+        List<Integer> ids = switch (mode) {
+            case "and" -> searchAnd(query);
+            case "or" -> searchOr(query);
+            case "bool" -> searchBoolean(query);
+            case "phrase" -> searchPhrase(query);
+            default -> {
+                if (!mode.startsWith("near/")) throw new IllegalArgumentException("Modo non valido, usa and|or|bool|phrase|near/K|ranked|wand");
+                try {
+                    yield searchNear(query, Integer.parseInt(mode.substring(5)));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Modo non valido: " + mode);
+                }
+            }
+        };
+        List<ScoredDoc> out = new ArrayList<>(ids.size());
+        for (int id : ids) out.add(new ScoredDoc(id, 0.0));
+        return out;
+    }
+
+    static boolean isRanked(String mode) {
+        return mode.equals("ranked") || mode.equals("wand");
+    }
+
+    /** Statistiche di questo indice per i termini della query (da sommare tra gli shard). */
+    public CollectionStats stats(String query) {
+        Map<String, Integer> df = new HashMap<>();
+        for (String t : normalizedTerms(query)) {
+            PostingList pl = index.get(t);
+            if (pl != null) df.put(t, pl.df());
+        }
+        return (lengths != null)
+                ? new CollectionStats(lengths.docCount(), lengths.totalLength(), df)
+                : new CollectionStats(docs.size(), 0, df);
     }
 
     public List<Integer> searchAnd(String query) {
         List<String> terms = normalizedTerms(query);
-        if (terms.isEmpty()) return List.of();
-        List<PostingList> lists = new ArrayList<>();
-        for (String t : terms) {
+        return cached(QueryCache.key("and", new TreeSet<>(terms)), () -> andTerms(terms, results));
+    }
+
+    public List<Integer> searchOr(String query) {
+        List<String> terms = normalizedTerms(query);
+        return cached(QueryCache.key("or", new TreeSet<>(terms)), () -> orTerms(terms, results));
+    }
+
+    /** AND multi-via in una passata: guida la lista più rara, le altre con galloping. */
+    public void searchAnd(String query, DocIdBuffer out) {
+        andTerms(normalizedTerms(query), out);
+    }
+
+    /** OR multi-via in una passata (merge a k vie). */
+    public void searchOr(String query, DocIdBuffer out) {
+        orTerms(normalizedTerms(query), out);
+    }
+
+    private void andTerms(List<String> terms, DocIdBuffer out) {
+        out.clear();
+        if (terms.isEmpty()) return;
+        List<String> distinct = new ArrayList<>(new TreeSet<>(terms));
+        Map<String, PostingList> lists = new HashMap<>();
+        for (String t : distinct) {
             PostingList pl = index.get(t);
-            if (pl == null) return List.of(); // un termine non presente -> AND vuoto
-            lists.add(pl);
+            if (pl == null) return; // un termine non presente -> AND vuoto
+            lists.put(t, pl);
         }
-        lists.sort(Comparator.comparingInt(a -> a.df())); // crescente per df
-        PostingList acc = lists.get(0);
-        for (int i = 1; i < lists.size(); i++) {
-            acc = andWithSkips(acc, lists.get(i));
-            if (acc.isEmpty()) break;
+        IntersectionCache ic = intersections;
+        if (ic == null || distinct.size() < 2) {
+            QueryEngine.and(lists.values().toArray(new PostingList[0]), out, scratch);
+            return;
         }
-        return acc.docIds();
+        // si riparte dal sottoinsieme più grande già intersecato, poi solo i termini restanti
+        List<String> found = new ArrayList<>();
+        int[] cached = ic.largestSubset(distinct, found);
+        List<SortedDocIds> parts = new ArrayList<>();
+        if (cached != null) parts.add(DocIdBuffer.wrap(cached));
+        for (String t : distinct) if (!found.contains(t)) parts.add(lists.get(t));
+        if (parts.size() == 1) copy(parts.get(0), out);
+        else QueryEngine.and(parts.toArray(new SortedDocIds[0]), out, scratch);
+        if (found.size() < distinct.size()) admitSubsets(ic, distinct, lists, out);
     }
 
-    public List<Integer> searchOr(String query) {
-        List<String> terms = normalizedTerms(query);
-        if (terms.isEmpty()) return List.of();
+    /** Conta le coppie e la query intera; quelle ammesse vengono materializzate in cache. */
+    private static void admitSubsets(IntersectionCache ic, List<String> terms, Map<String, PostingList> lists, DocIdBuffer result) {
+        if (terms.size() > 2) {
+            if (ic.admit(IntersectionCache.key(terms))) ic.put(terms, result.toArray());
+        }
+        DocIdBuffer pair = null;
+        for (int i = 0; i < terms.size(); i++) {
+            for (int j = i + 1; j < terms.size(); j++) {
+                List<String> sub = List.of(terms.get(i), terms.get(j));
+                String key = IntersectionCache.key(sub);
+                if (ic.contains(key) || !ic.admit(key)) continue;
+                if (terms.size() == 2) {
+                    ic.put(sub, result.toArray());
+                    continue;
+                }
+                if (pair == null) pair = new DocIdBuffer();
+                QueryEngine.and(new SortedDocIds[] { lists.get(terms.get(i)), lists.get(terms.get(j)) }, pair);
+                ic.put(sub, pair.toArray());
+            }
+        }
+    }
+
+    private void orTerms(List<String> terms, DocIdBuffer out) {
+        out.clear();
         List<PostingList> lists = new ArrayList<>();
         for (String t : terms) {
             PostingList pl = index.get(t);
             if (pl != null) lists.add(pl);
         }
+        QueryEngine.or(lists.toArray(new PostingList[0]), out);
+    }
+
+    /**
+     * Query booleana completa, es. (a OR b) AND NOT c, con frasi tra virgolette.
+     * Le clausole sono riordinate per df e valutate da QueryPlanner.
+     * @throws IllegalArgumentException se la query non è sintatticamente valida
+     */
+    public List<Integer> searchBoolean(String query) {
+        QueryPlanner planner = new QueryPlanner(this);
+        QueryNode n = planner.normalize(QueryParser.parse(query));
+        return cached(QueryCache.key("bool", List.of(String.valueOf(n))), () -> copy(planner.evaluate(n), results));
+    }
+
+    public void searchBoolean(String query, DocIdBuffer out) {
+        QueryPlanner planner = new QueryPlanner(this);
+        copy(planner.evaluate(planner.normalize(QueryParser.parse(query))), out);
+    }
+
+    private static void copy(SortedDocIds r, DocIdBuffer out) {
+        out.clear();
+        out.ensureCapacity(r.size());
+        for (int i = 0; i < r.size(); i++) out.add(r.docId(i));
+    }
+
+    /** Usa una cache dei risultati AND/OR/bool (null per disattivarla), svuotata se era di un altro indice. */
+    public void setCache(QueryCache cache) {
+        if (cache != null) cache.bind(index);
+        this.cache = cache;
+    }
+
+    /** Usa una cache delle intersezioni parziali per gli AND (null per disattivarla). */
+    public void setIntersectionCache(IntersectionCache intersections) {
+        if (intersections != null) intersections.bind(index);
+        this.intersections = intersections;
+    }
+
+    /** Risultato dalla cache, oppure calcolato in results da search e memorizzato. */
+    private List<Integer> cached(String key, Runnable search) {
+        int[] hit = (cache == null) ? null : cache.get(key);
+        if (hit != null) return DocIdBuffer.asList(hit);
+        search.run();
+        int[] ids = results.toArray();
+        if (cache != null) cache.put(key, ids);
+        return DocIdBuffer.asList(ids);
+    }
+
+    PostingList postings(String term) { return index.get(term); }
+
+    /** Buffer di lavoro per QueryEngine.and: il suo contenuto non sopravvive alla chiamata. */
+    DocIdBuffer scratch() { return scratch; }
+
+    /** Termini del dizionario che iniziano con prefix, in ordine (al più limit). */
+    public List<String> prefixTerms(String prefix, int limit) {
+        return wildcardTerms(prefix + "*", limit);
+    }
+
+    /** Termini t del dizionario con from <= t < to, in ordine (al più limit). */
+    public List<String> rangeTerms(String from, String to, int limit) {
+        List<String> out = new ArrayList<>();
+        for (Iterator<String> it = SortedTerms.termsFrom(index, from); it.hasNext() && out.size() < limit; ) {
+            String t = it.next();
+            if (t.compareTo(to) >= 0) break;
+            out.add(t);
+        }
+        return out;
+    }
+
+    /**
+     * Termini del dizionario che corrispondono al pattern (* = qualsiasi sequenza, ? = un carattere),
+     * in ordine (al più limit). Si enumera solo l'intervallo del prefisso letterale prima del primo
+     * carattere jolly. Il pattern è confrontato con i termini già stemmati: comput* trova comput, computer...
+     */
+    public List<String> wildcardTerms(String pattern, int limit) {
+        String p = pattern.toLowerCase(Locale.ROOT);
+        int w = 0;
+        while (w < p.length() && p.charAt(w) != '*' && p.charAt(w) != '?') w++;
+        String prefix = p.substring(0, w);
+        List<String> out = new ArrayList<>();
+        for (Iterator<String> it = SortedTerms.termsFrom(index, prefix); it.hasNext() && out.size() < limit; ) {
+            String t = it.next();
+            if (!t.startsWith(prefix)) break;
+            if (globMatch(p, t)) out.add(t);
+        }
+        return out;
+    }
+
+    static boolean isWildcard(String s) {
+        return s.indexOf('*') >= 0 || s.indexOf('?') >= 0;
+    }
+
+    // confronto greedy con ritorno all'ultimo '*' (lineare nel caso comune)
+    private static boolean globMatch(String p, String t) {
+        int i = 0, j = 0, star = -1, mark = 0;
+        while (j < t.length()) {
+            if (i < p.length() && (p.charAt(i) == '?' || p.charAt(i) == t.charAt(j))) {
+                i++;
+                j++;
+            } else if (i < p.length() && p.charAt(i) == '*') {
+                star = i++;
+                mark = j;
+            } else if (star >= 0) {
+                i = star + 1;
+                j = ++mark;
+            } else {
+                return false;
+            }
+        }
+        while (i < p.length() && p.charAt(i) == '*') i++;
+        return i == p.length();
+    }
+
+    DocIdBuffer universe() {
+        if (universe == null) universe = universeOf(docs);
+        return universe;
+    }
+
+    /** Stemming con una cache token -> stem condivisa (es. tra le query di un batch). */
+    void setStemmer(CachingStemmer stemmer) { this.sharedStemmer = stemmer; }
+
+    /** Universo già calcolato, condiviso tra più Retriever dello stesso indice (sola lettura). */
+    void setUniverse(DocIdBuffer universe) { this.universe = universe; }
+
+    static DocIdBuffer universeOf(Map<Integer, String> docs) {
+        int[] ids = docs.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+        DocIdBuffer u = new DocIdBuffer(ids.length);
+        for (int id : ids) u.add(id);
+        return u;
+    }
+
+    /**
+     * Ranking BM25 in OR sui termini della query, document-at-a-time sui cursori.
+     * Restituisce solo i primi k documenti (punteggio decrescente), tenuti in un
+     * min-heap di dimensione k: un documento entra solo se batte il peggiore.
+     */
+    public List<ScoredDoc> searchRanked(String query, int k) {
+        return searchRanked(query, k, null);
+    }
+
+    /** searchRanked con N, lunghezza media e df presi da global (null = quelli locali). */
+    public List<ScoredDoc> searchRanked(String query, int k, CollectionStats global) {
+        if (k <= 0) return List.of();
+        List<PostingList> lists = new ArrayList<>();
+        List<String> terms = new ArrayList<>();
+        for (String t : new LinkedHashSet<>(normalizedTerms(query))) {
+            PostingList pl = index.get(t);
+            if (pl != null) {
+                lists.add(pl);
+                terms.add(t);
+            }
+        }
+        if (lists.isEmpty()) return List.of();
+
+        Bm25 bm25 = (global != null)
+                ? new Bm25(lengths, global.docCount(), global.avgLength())
+                : new Bm25(lengths, lengths != null ? lengths.docCount() : docs.size());
+        int n = lists.size();
+        PostingList.Cursor[] cur = new PostingList.Cursor[n];
+        double[] idf = new double[n];
+        for (int j = 0; j < n; j++) {
+            cur[j] = lists.get(j).cursor();
+            cur[j].nextDoc();
+            int df = lists.get(j).df();
+            idf[j] = bm25.idf(global != null ? global.df(terms.get(j), df) : df);
+        }
+
+        // in testa il peggiore: punteggio minore, a parità docID maggiore
+        PriorityQueue<ScoredDoc> heap = new PriorityQueue<>(k, WORST_FIRST);
+        while (true) {
+            int doc = PostingList.Cursor.NO_MORE_DOCS;
+            for (PostingList.Cursor c : cur) doc = Math.min(doc, c.docID());
+            if (doc == PostingList.Cursor.NO_MORE_DOCS) break;
+            double score = 0;
+            for (int j = 0; j < n; j++) {
+                if (cur[j].docID() == doc) {
+                    score += bm25.score(idf[j], cur[j].tf(), doc);
+                    cur[j].nextDoc();
+                }
+            }
+            offer(heap, k, doc, score);
+        }
+        return drainDescending(heap);
+    }
+
+    /**
+     * Top-k disgiuntivo con tf-idf, w = (1 + ln tf) * ln(N / df), con pruning WAND + block-max.
+     * Ogni termine ha un limite superiore (dal tf massimo della lista) e ogni blocco di
+     * posting il suo (dal tf massimo del blocco): i documenti la cui somma dei limiti non
+     * supera il k-esimo punteggio corrente vengono saltati senza essere valutati.
+     * Il risultato coincide con la valutazione esaustiva.
+     */
+    public List<ScoredDoc> searchWand(String query, int k) {
+        return searchWand(query, k, null);
+    }
+
+    /** searchWand con N e df presi da global (null = quelli locali). */
+    public List<ScoredDoc> searchWand(String query, int k, CollectionStats global) {
+        if (k <= 0) return List.of();
+        List<PostingList> lists = new ArrayList<>();
+        List<String> terms = new ArrayList<>();
+        for (String t : new LinkedHashSet<>(normalizedTerms(query))) {
+            PostingList pl = index.get(t);
+            if (pl != null) {
+                lists.add(pl);
+                terms.add(t);
+            }
+        }
         if (lists.isEmpty()) return List.of();
-        PostingList acc = lists.get(0);
-        for (int i = 1; i < lists.size(); i++) {
-            acc = orMerge(acc, lists.get(i));
+
+        int n = lists.size();
+        int N = (global != null) ? global.docCount() : (lengths != null) ? lengths.docCount() : docs.size();
+        PostingList[] pl = lists.toArray(new PostingList[0]);
+        PostingList.Cursor[] cur = new PostingList.Cursor[n];
+        double[] idf = new double[n], ub = new double[n];
+        for (int j = 0; j < n; j++) {
+            cur[j] = pl[j].cursor();
+            cur[j].nextDoc();
+            int df = (global != null) ? global.df(terms.get(j), pl[j].df()) : pl[j].df();
+            idf[j] = Math.log((double) Math.max(N, df) / df);
+            ub[j] = tfIdf(pl[j].maxTf(), idf[j]);
+        }
+        int[] order = new int[n]; // termini ordinati per docID corrente
+        for (int j = 0; j < n; j++) order[j] = j;
+
+        PriorityQueue<ScoredDoc> heap = new PriorityQueue<>(k, WORST_FIRST);
+        while (true) {
+            sortByDoc(order, cur);
+            // entrano solo punteggi > soglia: a parità vince il docID minore, già nello heap
+            double theta = (heap.size() < k) ? -1.0 : heap.peek().score();
+
+            // pivot: primo termine in cui la somma dei limiti supera la soglia
+            double acc = 0;
+            int p = -1;
+            for (int i = 0; i < n; i++) {
+                if (cur[order[i]].docID() == PostingList.Cursor.NO_MORE_DOCS) break;
+                acc += ub[order[i]];
+                if (acc > theta) { p = i; break; }
+            }
+            if (p < 0) break;
+            int pivot = cur[order[p]].docID();
+            // tutti i termini posizionati sul pivot (anche dopo p) contribuiscono
+            while (p + 1 < n && cur[order[p + 1]].docID() == pivot) p++;
+
+            if (cur[order[0]].docID() != pivot) {
+                // nessun documento prima del pivot può superare la soglia
+                for (int i = 0; i < p; i++) {
+                    int j = order[i];
+                    if (cur[j].docID() < pivot) cur[j].advance(pivot);
+                }
+                continue;
+            }
+
+            // block-max: limite più stretto usando solo i blocchi correnti
+            double blockBound = 0;
+            int next = (p + 1 < n) ? cur[order[p + 1]].docID() : PostingList.Cursor.NO_MORE_DOCS;
+            for (int i = 0; i <= p; i++) {
+                int j = order[i];
+                int b = cur[j].index() / PostingList.BLOCK_SIZE;
+                blockBound += tfIdf(pl[j].blockMaxTf(b), idf[j]);
+                next = Math.min(next, pl[j].blockLastDoc(b) + 1);
+            }
+            if (blockBound <= theta) {
+                // fino a fine blocco (o al prossimo termine) nessun documento può entrare
+                for (int i = 0; i <= p; i++) cur[order[i]].advance(next);
+                continue;
+            }
+
+            double score = 0;
+            for (int i = 0; i <= p; i++) {
+                int j = order[i];
+                score += tfIdf(cur[j].tf(), idf[j]);
+                cur[j].nextDoc();
+            }
+            offer(heap, k, pivot, score);
         }
-        return acc.docIds();
+        return drainDescending(heap);
+    }
+
+    private static double tfIdf(int tf, double idf) {
+        return tf <= 0 ? 0.0 : (1.0 + Math.log(tf)) * idf;
+    }
+
+    // insertion sort: pochi termini e ordine quasi invariato tra un passo e l'altro
+    private static void sortByDoc(int[] order, PostingList.Cursor[] cur) {
+        for (int i = 1; i < order.length; i++) {
+            int x = order[i];
+            int d = cur[x].docID(), j = i - 1;
+            while (j >= 0 && cur[order[j]].docID() > d) { order[j + 1] = order[j]; j--; }
+            order[j + 1] = x;
+        }
+    }
+
+    static final Comparator<ScoredDoc> WORST_FIRST = (a, b) -> a.score() != b.score()
+            ? Double.compare(a.score(), b.score())
+            : Integer.compare(b.docID(), a.docID());
+
+    static void offer(PriorityQueue<ScoredDoc> heap, int k, int doc, double score) {
+        if (heap.size() < k) {
+            heap.add(new ScoredDoc(doc, score));
+        } else {
+            ScoredDoc worst = heap.peek();
+            if (score > worst.score() || (score == worst.score() && doc < worst.docID())) {
+                heap.poll();
+                heap.add(new ScoredDoc(doc, score));
+            }
+        }
+    }
+
+    static List<ScoredDoc> drainDescending(PriorityQueue<ScoredDoc> heap) {
+        ScoredDoc[] out = new ScoredDoc[heap.size()];
+        for (int i = out.length - 1; i >= 0; i--) out[i] = heap.poll();
+        return Arrays.asList(out);
     }
 
-    private List<String> normalizedTerms(String q) {
+    /**
+     * Frase esatta: i termini devono comparire consecutivi nel documento.
+     * Le stop words della query contano come posizioni, come in indicizzazione.
+     */
+    public List<Integer> searchPhrase(String phrase) {
+        List<Integer> offsets = new ArrayList<>();
+        List<String> terms = normalizedTerms(phrase, offsets);
+        return positionalSearch(terms, offsets, -1);
+    }
+
+    /** Tutti i termini della query entro una finestra di k posizioni (per due termini: |p1-p2| <= k). */
+    public List<Integer> searchNear(String query, int k) {
+        List<Integer> offsets = new ArrayList<>();
+        List<String> terms = normalizedTerms(query, offsets);
+        return positionalSearch(terms, offsets, k);
+    }
+
+    List<String> normalizedTerms(String q) {
+        return normalizedTerms(q, null);
+    }
+
+    /** Termini stemmati senza stop words; se offsets != null vi aggiunge la posizione di ciascuno nella query. */
+    private List<String> normalizedTerms(String q, List<Integer> offsets) {
         List<String> out = new ArrayList<>();
+        int pos = 0;
         for (String tok : tokenizer.tokenize(q)) {
-            String t = stemmer.stem(tok.toLowerCase(Locale.ROOT));
-            if (!stopWords.isStop(t)) out.add(t);
+            String lower = tok.toLowerCase(Locale.ROOT);
+            String t = (sharedStemmer != null) ? sharedStemmer.stem(lower) : stemmer.stem(lower);
+            if (!stopWords.isStop(t)) {
+                out.add(t);
+                if (offsets != null) offsets.add(pos);
+            }
+            pos++;
         }
         return out;
     }
 
-    // AND con skip pointers
-    private PostingList andWithSkips(PostingList A, PostingList B) {
-        List<Posting> res = new ArrayList<>();
-        int i = 0, j = 0;
-        while (i < A.size() && j < B.size()) {
-            int a = A.get(i).docID, b = B.get(j).docID;
-            if (a == b) { res.add(new Posting(a)); i++; j++; }
-            else if (a < b) {
-                Integer skipTo = A.skipFrom(i);
-                if (skipTo != null && A.get(skipTo).docID <= b) i = skipTo;
-                else i++;
-            } else {
-                Integer skipTo = B.skipFrom(j);
-                if (skipTo != null && B.get(skipTo).docID <= a) j = skipTo;
-                else j++;
+    /**
+     * Intersezione posizionale: la lista più rara guida, le altre avanzano con advance()
+     * (skip pointer) e le posizioni sono decodificate solo per i documenti in comune.
+     * window < 0: frase esatta con gli offset della query; altrimenti NEAR/window.
+     */
+    private List<Integer> positionalSearch(List<String> terms, List<Integer> offsets, int window) {
+        int n = terms.size();
+        if (n == 0) return List.of();
+        PostingList[] lists = new PostingList[n];
+        PostingList.Cursor[] cur = new PostingList.Cursor[n];
+        int[] off = new int[n];
+        int lead = 0;
+        for (int j = 0; j < n; j++) {
+            lists[j] = index.get(terms.get(j));
+            if (lists[j] == null) return List.of();
+            if (!lists[j].hasPositions())
+                throw new IllegalArgumentException("L'indice non ha le posizioni (frasi e NEAR): reindicizzare");
+            cur[j] = lists[j].cursor();
+            off[j] = offsets.get(j);
+            if (lists[j].df() < lists[lead].df()) lead = j;
+        }
+        int[] ptr = new int[n];
+        List<Integer> out = new ArrayList<>();
+        int doc = cur[lead].nextDoc();
+        outer:
+        while (doc != PostingList.Cursor.NO_MORE_DOCS) {
+            for (int j = 0; j < n; j++) {
+                if (j == lead) continue;
+                int d = cur[j].advance(doc);
+                if (d > doc) {
+                    doc = cur[lead].advance(d);
+                    continue outer;
+                }
             }
+            boolean match = (window < 0) ? phraseMatch(lists, cur, off) : nearMatch(lists, cur, window, ptr);
+            if (match) out.add(doc);
+            doc = cur[lead].nextDoc();
         }
-        PostingList R = new PostingList();
-        for (Posting p : res) R.add(p);
-        R.sortByDocId();
-        R.computeSkips();
-        return R;
+        return out;
     }
 
-    // OR merge lineare
-    private PostingList orMerge(PostingList A, PostingList B) {
-        List<Posting> res = new ArrayList<>();
-        int i = 0, j = 0;
-        while (i < A.size() || j < B.size()) {
-            if (j >= B.size() || (i < A.size() && A.get(i).docID <= B.get(j).docID)) {
-                pushIfNew(res, A.get(i).docID);
-                i++;
-            } else {
-                pushIfNew(res, B.get(j).docID);
-                j++;
+    private static boolean phraseMatch(PostingList[] lists, PostingList.Cursor[] cur, int[] off) {
+        // si parte dal termine con meno occorrenze nel documento
+        int a = 0;
+        for (int j = 1; j < lists.length; j++) {
+            if (lists[j].positionCount(cur[j].index()) < lists[a].positionCount(cur[a].index())) a = j;
+        }
+        int ia = cur[a].index();
+        for (int k = 0; k < lists[a].positionCount(ia); k++) {
+            int start = lists[a].position(ia, k) - off[a];
+            boolean all = true;
+            for (int j = 0; j < lists.length && all; j++) {
+                if (j != a) all = lists[j].hasPosition(cur[j].index(), start + off[j]);
             }
+            if (all) return true;
         }
-        PostingList R = new PostingList();
-        for (Posting p : res) R.add(p);
-        R.sortByDocId();
-        R.computeSkips();
-        return R;
+        return false;
     }
 
-    private void pushIfNew(List<Posting> res, int docId) {
-        if (res.isEmpty() || res.get(res.size()-1).docID != docId) res.add(new Posting(docId));
+    // finestra minima che contiene un'occorrenza di ogni termine: si avanza sempre il minimo
+    private static boolean nearMatch(PostingList[] lists, PostingList.Cursor[] cur, int window, int[] ptr) {
+        for (int j = 0; j < lists.length; j++) {
+            if (lists[j].positionCount(cur[j].index()) == 0) return false; // posting senza posizioni
+        }
+        Arrays.fill(ptr, 0);
+        while (true) {
+            int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE, argMin = 0;
+            for (int j = 0; j < lists.length; j++) {
+                int p = lists[j].position(cur[j].index(), ptr[j]);
+                if (p < min) { min = p; argMin = j; }
+                if (p > max) max = p;
+            }
+            if (max - min <= window) return true;
+            if (++ptr[argMin] >= lists[argMin].positionCount(cur[argMin].index())) return false;
+        }
     }
 }
@@ -0,0 +1,4 @@
+package ir;
+
+/** Documento con il suo punteggio di ranking. */
+public record ScoredDoc(int docID, double score) {}
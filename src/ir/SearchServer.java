@@ -0,0 +1,341 @@
+package ir;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Server HTTP di ricerca (com.sun.net.httpserver del JDK) su un IndexHandle condiviso:
+ * ogni richiesta prende la versione in uso dell'indice (un IndexSnapshot aperto una volta sola,
+ * da cui si prende un Retriever, oppure un ShardedSearcher che fa da coordinatore per gli shard)
+ * e la restituisce a fine richiesta, così una ricarica non interrompe le query in corso.
+ *
+ *   GET /search?q=...&mode=and|or|bool|phrase|near/K|ranked|wand&top=10&limit=100
+ *       {"mode":..., "query":..., "count":N, "micros":..., "results":[{"doc":id, "path":..., "score":...}]}
+ *       (score solo per ranked/wand; count è il totale, results al più limit voci)
+ *       per le richieste di un coordinatore anche &docs=N&length=L&df=termine:df,... (statistiche
+ *       globali per il ranking) e &shard=1 (punteggi con tutte le cifre, da confrontare tra shard, e niente path)
+ *   GET /termstats?q=...
+ *       {"docs":N, "length":L, "df":{"termine":df,...}} per i termini della query (CollectionStats)
+ *   GET /terms?q=pattern&limit=100
+ *       {"terms":[...]} termini del dizionario che corrispondono al pattern con * e ?
+ *   POST /reload[?force=1]
+ *       apre la versione pubblicata in CURRENT (con force anche se non è cambiata) e la mette in uso:
+ *       {"reloaded":true|false, "version":...}
+ *   GET /stats
+ *       richieste, errori, versione dell'indice e contatori delle cache
+ *
+ * Una richiesta per thread: virtual thread se il JDK li ha (21+, cercati per reflection
+ * così il sorgente compila anche con JDK 17), altrimenti un pool di thread che cresce a richiesta.
+ * Il server del JDK scrive intestazioni e corpo separatamente: senza -Dsun.net.httpserver.nodelay=true
+ * (impostato da "Main serve") con Nagle il corpo aspetta l'ACK ritardato del client, ~40 ms a richiesta.
+ */
+public final class SearchServer implements Closeable {
+    private final HttpServer http;
+    private final ExecutorService executor;
+    private final boolean virtualThreads;
+    private final IndexHandle handle;
+    private final List<Object> caches = new ArrayList<>(); // solo per /stats
+    private final LongAdder requests = new LongAdder(), errors = new LongAdder();
+
+    public SearchServer(IndexHandle handle, InetSocketAddress address) throws IOException {
+        this.handle = handle;
+        ExecutorService vt = virtualThreadExecutor();
+        this.virtualThreads = vt != null;
+        this.executor = (vt != null) ? vt : cachedPool();
+        this.http = HttpServer.create(address, 0);
+        http.setExecutor(executor);
+        http.createContext("/search", guarded(this::search));
+        http.createContext("/termstats", guarded(this::termStats));
+        http.createContext("/terms", guarded(this::terms));
+        http.createContext("/reload", guarded(this::reload));
+        http.createContext("/stats", guarded(this::stats));
+    }
+
+    private interface Handler {
+        void handle(HttpExchange ex) throws IOException;
+    }
+
+    /**
+     * Ogni risposta parte da qui: un'eccezione non gestita dal metodo diventa una risposta JSON
+     * (400 per parametri non validi, es. un escape % sbagliato nell'URL; 500 per il resto)
+     * invece di una connessione chiusa senza risposta, e lo scambio si chiude sempre.
+     */
+    private HttpHandler guarded(Handler h) {
+        return ex -> {
+            try {
+                h.handle(ex);
+            } catch (RuntimeException e) {
+                errors.increment();
+                if (ex.getResponseCode() != -1) return; // risposta già iniziata: si può solo chiudere
+                boolean bad = e instanceof IllegalArgumentException;
+                send(ex, bad ? 400 : 500, "{\"error\":" + Json.quote(bad ? "richiesta non valida: " + e.getMessage() : e.toString()) + "}");
+            } finally {
+                ex.close();
+            }
+        };
+    }
+
+    /** Cache da riportare in /stats oltre a quelle della versione in uso (es. PostingCache). */
+    public void reportCache(Object cache) {
+        if (cache != null) caches.add(cache);
+    }
+
+    public void start() { http.start(); }
+
+    public InetSocketAddress address() { return http.getAddress(); }
+
+    public boolean usesVirtualThreads() { return virtualThreads; }
+
+    private static ExecutorService virtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null; // JDK senza virtual thread
+        }
+    }
+
+    private static ExecutorService cachedPool() {
+        AtomicInteger n = new AtomicInteger();
+        return Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "search-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    private void search(HttpExchange ex) throws IOException {
+        requests.increment();
+        if (!ex.getRequestMethod().equals("GET")) {
+            send(ex, 405, "{\"error\":\"usa GET\"}");
+            return;
+        }
+        Map<String, String> p = params(ex.getRequestURI().getRawQuery());
+        String q = p.get("q");
+        if (q == null || q.isBlank()) {
+            errors.increment();
+            send(ex, 400, "{\"error\":\"parametro q mancante\"}");
+            return;
+        }
+        String mode = p.getOrDefault("mode", "and").toLowerCase(Locale.ROOT);
+        int top, limit;
+        CollectionStats global;
+        try {
+            top = Integer.parseInt(p.getOrDefault("top", "10"));
+            limit = Integer.parseInt(p.getOrDefault("limit", "100"));
+            global = globalStats(p);
+        } catch (NumberFormatException e) {
+            errors.increment();
+            send(ex, 400, "{\"error\":" + Json.quote("numero non valido: " + e.getMessage()) + "}");
+            return;
+        }
+
+        long t0 = System.nanoTime();
+        List<ScoredDoc> results;
+        Map<Integer, String> docs;
+        IndexHandle.Version v = handle.acquire();
+        try {
+            results = v.searcher().search(mode, q, top, global);
+            docs = v.docs(); // della stessa versione dei risultati
+        } catch (IllegalArgumentException e) {
+            errors.increment();
+            send(ex, 400, "{\"error\":" + Json.quote(e.getMessage()) + "}");
+            return;
+        } catch (IOException e) {
+            errors.increment(); // uno shard remoto non ha risposto
+            send(ex, 502, "{\"error\":" + Json.quote(String.valueOf(e.getMessage())) + "}");
+            return;
+        } finally {
+            handle.release(v);
+        }
+        long micros = (System.nanoTime() - t0) / 1000;
+
+        boolean ranked = Retriever.isRanked(mode);
+        boolean shard = p.containsKey("shard");
+        StringBuilder sb = new StringBuilder(64 + 48 * Math.min(limit, results.size()));
+        sb.append("{\"mode\":").append(Json.quote(mode))
+          .append(",\"query\":").append(Json.quote(q))
+          .append(",\"count\":").append(results.size())
+          .append(",\"micros\":").append(micros)
+          .append(",\"results\":[");
+        for (int i = 0; i < results.size() && i < limit; i++) {
+            ScoredDoc d = results.get(i);
+            if (i > 0) sb.append(',');
+            sb.append("{\"doc\":").append(d.docID());
+            if (!shard) {
+                sb.append(",\"path\":");
+                Json.quote(sb, docs.getOrDefault(d.docID(), ""));
+            }
+            if (ranked) sb.append(",\"score\":").append(shard ? Double.toString(d.score()) : String.format(Locale.ROOT, "%.4f", d.score()));
+            sb.append('}');
+        }
+        sb.append("]}");
+        send(ex, 200, sb.toString());
+    }
+
+    private void termStats(HttpExchange ex) throws IOException {
+        requests.increment();
+        String q = params(ex.getRequestURI().getRawQuery()).get("q");
+        if (q == null) {
+            errors.increment();
+            send(ex, 400, "{\"error\":\"parametro q mancante\"}");
+            return;
+        }
+        CollectionStats st;
+        IndexHandle.Version v = handle.acquire();
+        try {
+            st = v.searcher().stats(q);
+        } catch (IOException e) {
+            errors.increment();
+            send(ex, 502, "{\"error\":" + Json.quote(String.valueOf(e.getMessage())) + "}");
+            return;
+        } finally {
+            handle.release(v);
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"docs\":").append(st.docCount())
+          .append(",\"length\":").append(st.totalLength())
+          .append(",\"df\":{");
+        int i = 0;
+        for (Map.Entry<String, Integer> e : st.df().entrySet()) {
+            if (i++ > 0) sb.append(',');
+            Json.quote(sb, e.getKey());
+            sb.append(':').append(e.getValue());
+        }
+        sb.append("}}");
+        send(ex, 200, sb.toString());
+    }
+
+    private void terms(HttpExchange ex) throws IOException {
+        requests.increment();
+        Map<String, String> p = params(ex.getRequestURI().getRawQuery());
+        String q = p.get("q");
+        if (q == null) {
+            errors.increment();
+            send(ex, 400, "{\"error\":\"parametro q mancante\"}");
+            return;
+        }
+        int limit = Integer.parseInt(p.getOrDefault("limit", "100")); // non valido: 400 da guarded
+        List<String> terms;
+        IndexHandle.Version v = handle.acquire();
+        try {
+            terms = v.searcher().terms(q, limit);
+        } catch (IOException e) {
+            errors.increment();
+            send(ex, 502, "{\"error\":" + Json.quote(String.valueOf(e.getMessage())) + "}");
+            return;
+        } finally {
+            handle.release(v);
+        }
+        StringBuilder sb = new StringBuilder("{\"terms\":[");
+        for (int i = 0; i < terms.size(); i++) {
+            if (i > 0) sb.append(',');
+            Json.quote(sb, terms.get(i));
+        }
+        sb.append("]}");
+        send(ex, 200, sb.toString());
+    }
+
+    /** Statistiche globali passate da un coordinatore (docs, length, df), null se assenti. */
+    private static CollectionStats globalStats(Map<String, String> p) {
+        if (!p.containsKey("docs")) return null;
+        Map<String, Integer> df = new HashMap<>();
+        String list = p.getOrDefault("df", "");
+        for (String item : list.split(",")) {
+            int colon = item.lastIndexOf(':');
+            if (colon <= 0) continue;
+            df.put(URLDecoder.decode(item.substring(0, colon), StandardCharsets.UTF_8), Integer.parseInt(item.substring(colon + 1)));
+        }
+        return new CollectionStats(Integer.parseInt(p.get("docs")), Long.parseLong(p.getOrDefault("length", "0")), df);
+    }
+
+    private void reload(HttpExchange ex) throws IOException {
+        if (!ex.getRequestMethod().equals("POST")) {
+            send(ex, 405, "{\"error\":\"usa POST\"}");
+            return;
+        }
+        boolean force = params(ex.getRequestURI().getRawQuery()).containsKey("force");
+        boolean reloaded;
+        try {
+            reloaded = handle.reload(force); // le richieste in corso continuano sulla versione vecchia
+        } catch (IOException | RuntimeException e) {
+            send(ex, 500, "{\"error\":" + Json.quote(String.valueOf(e.getMessage())) + "}");
+            return;
+        }
+        send(ex, 200, "{\"reloaded\":" + reloaded + ",\"version\":" + Json.quote(handle.versionName()) + "}");
+    }
+
+    private void stats(HttpExchange ex) throws IOException {
+        List<Object> all = new ArrayList<>();
+        IndexHandle.Version v = handle.acquire();
+        try {
+            all.addAll(v.caches());
+        } finally {
+            handle.release(v);
+        }
+        all.addAll(caches);
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"requests\":").append(requests.sum())
+          .append(",\"errors\":").append(errors.sum())
+          .append(",\"virtualThreads\":").append(virtualThreads)
+          .append(",\"index\":").append(Json.quote(handle.toString()))
+          .append(",\"caches\":[");
+        for (int i = 0; i < all.size(); i++) {
+            if (i > 0) sb.append(',');
+            Json.quote(sb, all.get(i).toString());
+        }
+        sb.append("]}");
+        send(ex, 200, sb.toString());
+    }
+
+    private static void send(HttpExchange ex, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        ex.sendResponseHeaders(status, body.length);
+        try (OutputStream out = ex.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static Map<String, String> params(String rawQuery) {
+        Map<String, String> out = new HashMap<>();
+        if (rawQuery == null) return out;
+        for (String kv : rawQuery.split("&")) {
+            if (kv.isEmpty()) continue;
+            int eq = kv.indexOf('=');
+            String k = (eq < 0) ? kv : kv.substring(0, eq);
+            String v = (eq < 0) ? "" : kv.substring(eq + 1);
+            out.put(URLDecoder.decode(k, StandardCharsets.UTF_8), URLDecoder.decode(v, StandardCharsets.UTF_8));
+        }
+        return out;
+    }
+
+    /** Smette di accettare richieste, attende al più delaySeconds quelle in corso. */
+    public void stop(int delaySeconds) {
+        http.stop(delaySeconds);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(delaySeconds, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close() {
+        stop(0);
+    }
+}
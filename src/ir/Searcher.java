@@ -0,0 +1,30 @@
+package ir;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Qualcosa che esegue query nei modi della CLI: un indice locale (IndexSnapshot),
+ * uno shard in un altro processo (RemoteShard) o un insieme di shard (ShardedSearcher).
+ * Thread-safe: le query arrivano da più thread insieme.
+ */
+public interface Searcher extends Closeable {
+
+    /** Statistiche dei termini della query su questi documenti (vedi CollectionStats). */
+    CollectionStats stats(String query) throws IOException;
+
+    /** Termini del dizionario (già stemmati) che corrispondono al pattern con * e ?, in ordine, al più limit. */
+    List<String> terms(String pattern, int limit) throws IOException;
+
+    /**
+     * Risultati come Retriever.search: docID in ordine per i modi booleani,
+     * primi top per punteggio per ranked/wand, calcolato con global se non è null.
+     * @throws IllegalArgumentException se il modo o la query non sono validi
+     */
+    List<ScoredDoc> search(String mode, String query, int top, CollectionStats global) throws IOException;
+
+    default List<ScoredDoc> search(String mode, String query, int top) throws IOException {
+        return search(mode, query, top, null);
+    }
+}
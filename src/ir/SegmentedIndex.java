@@ -0,0 +1,173 @@
+package ir;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Vista unica su indice base + segmenti incrementali.
+ * I segmenti successivi contengono sempre docID più alti dei precedenti,
+ * quindi la posting list di un termine si ottiene concatenando le liste
+ * delle parti nell'ordine, saltando i documenti marcati come cancellati.
+ * Con una PostingCache si memorizzano le liste già unite (le parti non usano cache).
+ */
+public class SegmentedIndex extends AbstractMap<String, PostingList> implements SortedTerms, Closeable {
+    private final List<Map<String, PostingList>> parts;
+    private final BitSet deleted;
+    private final int deletedCount;
+    private volatile SortedSet<String> keys; // unione dei dizionari, calcolata solo se serve
+    private volatile PostingCache cache; // null = unione a ogni accesso
+
+    public SegmentedIndex(List<Map<String, PostingList>> parts, BitSet deleted) {
+        this.parts = List.copyOf(parts);
+        this.deleted = deleted;
+        this.deletedCount = deleted.cardinality();
+    }
+
+    /** Tiene le liste unite in cache (null per disattivarla). */
+    public void setPostingCache(PostingCache cache) {
+        PostingCache old = this.cache;
+        if (old != null && old != cache) old.invalidate(this);
+        this.cache = cache;
+    }
+
+    @Override
+    public PostingList get(Object key) {
+        if (!(key instanceof String term)) return null;
+        PostingCache c = cache;
+        return (c == null) ? merge(term) : c.get(this, term, this::merge);
+    }
+
+    private PostingList merge(String key) {
+        List<PostingList> lists = new ArrayList<>(parts.size());
+        for (Map<String, PostingList> part : parts) {
+            PostingList pl = part.get(key);
+            if (pl != null) lists.add(pl);
+        }
+        if (lists.isEmpty()) return null;
+        if (lists.size() == 1 && !containsDeleted(lists.get(0))) return lists.get(0);
+
+        PostingList out = new PostingList();
+        for (PostingList pl : lists) {
+            for (int i = 0; i < pl.size(); i++) {
+                int d = pl.docId(i);
+                if (!deleted.get(d)) out.add(d, pl.tf(i));
+            }
+        }
+        if (out.isEmpty()) return null;
+        out.setLazyPositions(lists, deleted); // index.pos si legge solo per frasi e NEAR
+        out.computeSkips();
+        out.maxTf(); // calcolato qui: la lista può poi essere letta da più thread
+        return out;
+    }
+
+    private boolean containsDeleted(PostingList pl) {
+        if (deleted.isEmpty()) return false;
+        for (int i = 0; i < pl.size(); i++) if (deleted.get(pl.docId(i))) return true;
+        return false;
+    }
+
+    /**
+     * Il termine ha ancora un documento non cancellato? Serve a enumerare il dizionario senza
+     * unire le liste: i docID delle parti sono disgiunti, quindi se i posting sono più dei
+     * documenti cancellati la risposta è sì guardando solo i df; altrimenti si cerca il primo
+     * posting vivo, senza costruire la lista unita.
+     */
+    private boolean isLive(String key) {
+        if (deletedCount == 0) return true;
+        long postings = 0;
+        for (Map<String, PostingList> part : parts) postings += df(part, key);
+        if (postings > deletedCount) return true;
+        for (Map<String, PostingList> part : parts) {
+            PostingList pl = part.get(key);
+            if (pl == null) continue;
+            for (int i = 0; i < pl.size(); i++) if (!deleted.get(pl.docId(i))) return true;
+        }
+        return false;
+    }
+
+    private static int df(Map<String, PostingList> part, String key) {
+        if (part instanceof MappedIndex mi) return mi.df(key); // solo il dizionario, la lista non si decodifica
+        PostingList pl = part.get(key);
+        return pl == null ? 0 : pl.df();
+    }
+
+    @Override
+    public boolean containsKey(Object key) { return get(key) != null; }
+
+    @Override
+    public Set<String> keySet() {
+        if (keys == null) {
+            SortedSet<String> all = new TreeSet<>();
+            for (Map<String, PostingList> part : parts) all.addAll(part.keySet());
+            if (deletedCount > 0) all.removeIf(t -> !isLive(t)); // termini rimasti solo in documenti cancellati
+            keys = Collections.unmodifiableSortedSet(all);
+        }
+        return keys;
+    }
+
+    @Override
+    public int size() { return keySet().size(); }
+
+    /** Merge ordinato dei dizionari delle parti, senza materializzare l'unione. */
+    @Override
+    public Iterator<String> termsFrom(String from) {
+        if (keys != null) return keys.tailSet(from).iterator();
+        List<Iterator<String>> its = new ArrayList<>(parts.size());
+        for (Map<String, PostingList> part : parts) its.add(SortedTerms.termsFrom(part, from));
+        String[] heads = new String[its.size()];
+        for (int p = 0; p < heads.length; p++) heads[p] = its.get(p).hasNext() ? its.get(p).next() : null;
+        return new Iterator<>() {
+            String next = advance();
+
+            // minimo tra le teste, avanzando tutte le parti che lo contengono
+            private String advance() {
+                while (true) {
+                    String min = null;
+                    for (String h : heads) if (h != null && (min == null || h.compareTo(min) < 0)) min = h;
+                    if (min == null) return null;
+                    for (int p = 0; p < heads.length; p++) {
+                        if (min.equals(heads[p])) heads[p] = its.get(p).hasNext() ? its.get(p).next() : null;
+                    }
+                    // si saltano i termini rimasti solo in documenti cancellati; le liste si uniscono
+                    // solo con get(), per i termini che la query usa davvero
+                    if (isLive(min)) return min;
+                }
+            }
+
+            @Override public boolean hasNext() { return next != null; }
+
+            @Override public String next() {
+                if (next == null) throw new NoSuchElementException();
+                String t = next;
+                next = advance();
+                return t;
+            }
+        };
+    }
+
+    @Override
+    public Set<Entry<String, PostingList>> entrySet() {
+        return new AbstractSet<>() {
+            @Override public int size() { return keySet().size(); }
+            @Override public Iterator<Entry<String, PostingList>> iterator() {
+                Iterator<String> it = keySet().iterator();
+                return new Iterator<>() {
+                    @Override public boolean hasNext() { return it.hasNext(); }
+                    @Override public Entry<String, PostingList> next() {
+                        String t = it.next();
+                        return new SimpleImmutableEntry<>(t, merge(t));
+                    }
+                };
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        setPostingCache(null);
+        for (Map<String, PostingList> part : parts) {
+            if (part instanceof Closeable c) c.close();
+        }
+    }
+}
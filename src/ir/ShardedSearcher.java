@@ -0,0 +1,174 @@
+package ir;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Coordinatore di un indice diviso in shard (Shards): ogni query va a tutti gli shard
+ * in parallelo e i risultati si uniscono. I docID degli shard sono disgiunti, quindi per i
+ * modi booleani basta fondere liste già ordinate; per ranked/wand si prendono i primi top
+ * dall'unione dei top di ciascuno shard. Per il ranking si fanno due giri: prima le
+ * statistiche dei termini (df, numero e lunghezza dei documenti) da sommare, poi la query
+ * con le statistiche globali, così i punteggi coincidono con quelli dell'indice non diviso.
+ * Le parole con * e ? (modo bool) sono contate sull'unione dei dizionari prima di interrogare gli shard.
+ * Gli shard possono essere IndexSnapshot nello stesso processo o RemoteShard in altri.
+ */
+public final class ShardedSearcher implements Searcher {
+    private final List<Searcher> shards;
+    private final Map<Integer, String> docs;
+    private final ExecutorService pool;
+
+    public ShardedSearcher(List<? extends Searcher> shards, Map<Integer, String> docs) {
+        if (shards.isEmpty()) throw new IllegalArgumentException("Nessuno shard");
+        this.shards = List.copyOf(shards);
+        this.docs = Collections.unmodifiableMap(docs);
+        AtomicInteger n = new AtomicInteger();
+        this.pool = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "shard-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Apre gli shard elencati in root/shards.map. Se remotes non è vuota, lo shard i
+     * è servito all'indirizzo remotes[i] e qui si caricano solo le docs.map (per i percorsi);
+     * altrimenti ogni shard è aperto in questo processo, con postings come cache delle liste.
+     */
+    public static ShardedSearcher open(IndexFiles root, PostingCache postings, List<URI> remotes) throws IOException {
+        List<Shards.Shard> layout = Shards.list(root);
+        if (!remotes.isEmpty() && remotes.size() != layout.size())
+            throw new IllegalArgumentException("Servono " + layout.size() + " indirizzi remoti, uno per shard: " + remotes.size());
+        List<Searcher> opened = new ArrayList<>();
+        Map<Integer, String> docs = new HashMap<>();
+        try {
+            for (int i = 0; i < layout.size(); i++) {
+                IndexFiles files = layout.get(i).files();
+                if (remotes.isEmpty()) {
+                    IndexSnapshot s = IndexSnapshot.open(files, postings);
+                    opened.add(s);
+                    docs.putAll(s.docs());
+                } else {
+                    opened.add(new RemoteShard(remotes.get(i)));
+                    docs.putAll(IndexIO.loadDocs(files.docs()));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            for (Searcher s : opened) s.close();
+            throw e;
+        }
+        return new ShardedSearcher(opened, docs);
+    }
+
+    public List<Searcher> shards() { return shards; }
+
+    /** docID -> percorso di tutti gli shard (sola lettura). */
+    public Map<Integer, String> docs() { return docs; }
+
+    @Override
+    public CollectionStats stats(String query) throws IOException {
+        CollectionStats sum = null;
+        for (CollectionStats st : scatter(s -> s.stats(query))) sum = (sum == null) ? st : sum.plus(st);
+        return sum;
+    }
+
+    /** Unione dei termini degli shard, primi limit in ordine. */
+    @Override
+    public List<String> terms(String pattern, int limit) throws IOException {
+        TreeSet<String> all = new TreeSet<>();
+        for (List<String> part : scatter(s -> s.terms(pattern, limit))) all.addAll(part);
+        List<String> out = new ArrayList<>(all);
+        return out.subList(0, Math.min(limit, out.size()));
+    }
+
+    @Override
+    public List<ScoredDoc> search(String mode, String query, int top, CollectionStats global) throws IOException {
+        if (mode.equals("bool")) checkExpansions(query);
+        if (!Retriever.isRanked(mode)) return mergeByDoc(scatter(s -> s.search(mode, query, top)));
+        if (top <= 0) return List.of();
+        CollectionStats stats = (global != null) ? global : stats(query);
+        PriorityQueue<ScoredDoc> heap = new PriorityQueue<>(top, Retriever.WORST_FIRST);
+        for (List<ScoredDoc> part : scatter(s -> s.search(mode, query, top, stats))) {
+            for (ScoredDoc d : part) Retriever.offer(heap, top, d.docID(), d.score());
+        }
+        return Retriever.drainDescending(heap);
+    }
+
+    /**
+     * Il limite di termini per pattern vale sull'unione dei dizionari, come nell'indice intero:
+     * ogni shard espande il pattern solo sui suoi termini (un sottoinsieme dell'unione), quindi se
+     * l'unione sta nel limite nessuno shard lo supera e i risultati coincidono con quelli non divisi.
+     */
+    private void checkExpansions(String query) throws IOException {
+        for (String pattern : QueryPlanner.wildcards(QueryParser.parse(query))) {
+            if (terms(pattern, QueryPlanner.MAX_EXPANSION + 1).size() > QueryPlanner.MAX_EXPANSION)
+                throw QueryPlanner.tooManyTerms(pattern);
+        }
+    }
+
+    private interface ShardCall<T> {
+        T call(Searcher s) throws IOException;
+    }
+
+    /** Esegue call su tutti gli shard in parallelo (il primo nel thread chiamante); risultati in ordine di shard. */
+    private <T> List<T> scatter(ShardCall<T> call) throws IOException {
+        List<Future<T>> futures = new ArrayList<>(shards.size());
+        for (int i = 1; i < shards.size(); i++) {
+            Searcher s = shards.get(i);
+            futures.add(pool.submit(() -> call.call(s)));
+        }
+        List<T> out = new ArrayList<>(shards.size());
+        try {
+            out.add(call.call(shards.get(0)));
+            for (Future<T> f : futures) out.add(f.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Query interrotta");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) throw io;
+            if (cause instanceof RuntimeException re) throw re; // query non valida: uguale su tutti gli shard
+            throw new IOException("Shard fallito", cause);
+        } finally {
+            for (Future<T> f : futures) f.cancel(true); // dopo un errore gli altri shard non servono più
+        }
+        return out;
+    }
+
+    // fusione di liste ordinate per docID e disgiunte: shard con intervalli contigui, ma non si assume l'ordine
+    private static List<ScoredDoc> mergeByDoc(List<List<ScoredDoc>> parts) {
+        int total = 0;
+        for (List<ScoredDoc> p : parts) total += p.size();
+        List<ScoredDoc> out = new ArrayList<>(total);
+        int[] pos = new int[parts.size()];
+        PriorityQueue<Integer> heads = new PriorityQueue<>(Comparator.comparingInt(i -> parts.get(i).get(pos[i]).docID()));
+        for (int i = 0; i < parts.size(); i++) {
+            if (!parts.get(i).isEmpty()) heads.add(i);
+        }
+        while (!heads.isEmpty()) {
+            int i = heads.poll();
+            out.add(parts.get(i).get(pos[i]++));
+            if (pos[i] < parts.get(i).size()) heads.add(i);
+        }
+        return out;
+    }
+
+    @Override
+    public void close() throws IOException {
+        pool.shutdownNow();
+        IOException first = null;
+        for (Closeable s : shards) {
+            try {
+                s.close();
+            } catch (IOException e) {
+                if (first == null) first = e;
+            }
+        }
+        if (first != null) throw first;
+    }
+}
@@ -0,0 +1,137 @@
+package ir;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Indice diviso per documenti in N shard: ogni shard ha un intervallo di docID disgiunto
+ * e contiguo e una cartella shard_i con un indice completo (index.terms/post/pos, docs.map,
+ * doc.len, docs.stamp, collection.freq, stop_by_freq.cache), apribile da solo da IndexSnapshot o da
+ * "serve --dir=shard_i" in un altro processo. I docID restano quelli dell'indice intero,
+ * quindi i risultati degli shard si uniscono senza tradurli (ShardedSearcher).
+ * shards.map nella cartella principale elenca gli shard: shard_i\tprimo docID\tultimo docID.
+ */
+public final class Shards {
+    private Shards() {}
+
+    /** Uno shard: cartella e intervallo di docID [first, last]. */
+    public record Shard(IndexFiles files, int first, int last) {}
+
+    public static boolean isSharded(IndexFiles root) {
+        return Files.exists(root.shards());
+    }
+
+    public static List<Shard> list(IndexFiles root) throws IOException {
+        List<Shard> out = new ArrayList<>();
+        for (String line : Files.readAllLines(root.shards())) {
+            if (line.isBlank()) continue;
+            String[] f = line.split("\t");
+            out.add(new Shard(IndexFiles.in(root.dir.resolve(f[0])), Integer.parseInt(f[1]), Integer.parseInt(f[2])));
+        }
+        return out;
+    }
+
+    /**
+     * Divide l'indice appena costruito in root in n shard con lo stesso numero di documenti
+     * (al più uno di differenza). Le posting list si leggono una alla volta in ordine di termine
+     * e ciascuna è spezzata per intervallo di docID: la memoria non dipende dalla dimensione
+     * dell'indice. Alla fine index.terms/post/pos, doc.len e docs.stamp di root sono rimossi;
+     * restano docs.map e collection.freq dell'intera collezione.
+     * @return numero di shard scritti (meno di n se i documenti sono meno di n)
+     */
+    public static int split(IndexFiles root, int n) throws IOException {
+        if (n < 1) throw new IllegalArgumentException("Numero di shard non valido: " + n);
+        Map<Integer, String> docs = IndexIO.loadDocs(root.docs());
+        int[] ids = docs.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+        if (ids.length == 0) throw new IOException("Indice senza documenti: niente da dividere in shard");
+        n = Math.min(n, ids.length);
+        // lows[i] = primo docID dello shard i
+        int[] lows = new int[n];
+        for (int i = 0; i < n; i++) lows[i] = ids[(int) ((long) i * ids.length / n)];
+
+        clear(root);
+        BinaryIndexWriter[] writers = new BinaryIndexWriter[n];
+        Map<String, PostingList> index = IndexIO.openIndex(root);
+        try {
+            for (int i = 0; i < n; i++) {
+                Files.createDirectories(root.shard(i).dir);
+                writers[i] = new BinaryIndexWriter(root.shard(i));
+            }
+            PostingList[] parts = new PostingList[n];
+            for (Iterator<String> it = SortedTerms.termsFrom(index, ""); it.hasNext(); ) {
+                String term = it.next();
+                PostingList pl = index.get(term);
+                Arrays.fill(parts, null);
+                int s = 0;
+                for (int j = 0; j < pl.size(); j++) {
+                    int doc = pl.docId(j);
+                    while (s + 1 < n && doc >= lows[s + 1]) s++; // docID crescenti: lo shard non torna indietro
+                    if (parts[s] == null) parts[s] = new PostingList();
+                    parts[s].add(doc, pl.tf(j));
+                    for (int k = 0; k < pl.positionCount(j); k++) parts[s].addPosition(pl.position(j, k));
+                }
+                for (int i = 0; i < n; i++) {
+                    if (parts[i] != null) writers[i].add(term, parts[i]);
+                }
+            }
+        } finally {
+            for (BinaryIndexWriter w : writers) {
+                if (w != null) w.close();
+            }
+            if (index instanceof Closeable c) c.close();
+        }
+
+        DocLengths lengths = IndexIO.loadLengths(root);
+        Map<Integer, String> stamps = IndexIO.loadStamps(root.stamps());
+        StringBuilder map = new StringBuilder();
+        for (int i = 0; i < n; i++) {
+            int first = lows[i];
+            int last = (i + 1 < n) ? lows[i + 1] - 1 : ids[ids.length - 1];
+            IndexFiles shard = root.shard(i);
+            Map<Integer, String> shardDocs = new HashMap<>(), shardStamps = new HashMap<>();
+            Map<Integer, Integer> shardLengths = new HashMap<>();
+            for (Map.Entry<Integer, String> e : docs.entrySet()) {
+                int id = e.getKey();
+                if (id < first || id > last) continue;
+                shardDocs.put(id, e.getValue());
+                if (stamps.containsKey(id)) shardStamps.put(id, stamps.get(id));
+                if (lengths != null) shardLengths.put(id, lengths.length(id));
+            }
+            IndexIO.saveDocs(shardDocs, shard.docs());
+            IndexIO.saveStamps(shardStamps, shard.stamps());
+            if (lengths != null) DocLengths.of(shardLengths).save(shard.lengths());
+            if (Files.exists(root.cf())) Files.copy(root.cf(), shard.cf(), StandardCopyOption.REPLACE_EXISTING);
+            // stop words dell'intera collezione: uno shard servito altrove normalizza le query come qui
+            Path byFreq = Files.exists(root.stopByFreq()) ? root.stopByFreq() : Indexer.STOP_BY_FREQ_CACHE;
+            if (Files.exists(byFreq)) Files.copy(byFreq, shard.stopByFreq(), StandardCopyOption.REPLACE_EXISTING);
+            map.append(shard.dir.getFileName()).append('\t').append(first).append('\t').append(last).append('\n');
+        }
+        Files.writeString(root.shards(), map);
+
+        Files.deleteIfExists(root.terms());
+        Files.deleteIfExists(root.postings());
+        Files.deleteIfExists(root.positions());
+        Files.deleteIfExists(root.lengths());
+        Files.deleteIfExists(root.stamps());
+        return n;
+    }
+
+    /** Rimuove shards.map e le cartelle shard_i (ricostruzione senza shard). */
+    public static void clear(IndexFiles root) throws IOException {
+        Files.deleteIfExists(root.shards());
+        if (!Files.isDirectory(root.dir.toAbsolutePath())) return;
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(root.dir.toAbsolutePath(), "shard_*")) {
+            for (Path p : ds) {
+                if (!Files.isDirectory(p)) continue;
+                IndexFiles shard = IndexFiles.in(p);
+                IndexIO.clearSegments(shard);
+                for (Path f : List.of(shard.terms(), shard.postings(), shard.positions(), shard.docs(),
+                        shard.cf(), shard.lengths(), shard.stamps(), shard.stopByFreq())) {
+                    Files.deleteIfExists(f);
+                }
+                Files.deleteIfExists(p);
+            }
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package ir;
+
+/**
+ * Sequenza di docID strettamente crescenti con accesso per indice
+ * (posting list o risultato intermedio di una query).
+ */
+public interface SortedDocIds {
+    int size();
+
+    int docId(int i);
+
+    /**
+     * Ricerca esponenziale (galloping): primo indice >= from con docId >= target,
+     * size() se non esiste. Costa O(log d) con d = distanza dal punto di partenza.
+     */
+    default int gallop(int from, int target) {
+        int n = size();
+        if (from >= n || docId(from) >= target) return from;
+        int lo = from, step = 1, hi = from + 1;
+        while (hi < n && docId(hi) < target) {
+            lo = hi;
+            step <<= 1;
+            hi = from + step;
+        }
+        if (hi > n) hi = n;
+        // docId(lo) < target e (hi == n oppure docId(hi) >= target)
+        while (lo + 1 < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (docId(mid) < target) lo = mid;
+            else hi = mid;
+        }
+        return hi;
+    }
+}
@@ -0,0 +1,19 @@
+package ir;
+
+import java.util.*;
+
+/**
+ * Dizionario che sa enumerare i termini in ordine lessicografico a partire da un termine
+ * (MappedIndex, SegmentedIndex): prefissi, wildcard e intervalli di termini
+ * senza materializzare l'intero vocabolario.
+ */
+interface SortedTerms {
+    /** Termini >= from (tutti se from è vuoto), in ordine. */
+    Iterator<String> termsFrom(String from);
+
+    /** termsFrom per un indice qualsiasi: per le mappe senza ordine si ordinano le chiavi. */
+    static Iterator<String> termsFrom(Map<String, PostingList> index, String from) {
+        if (index instanceof SortedTerms st) return st.termsFrom(from);
+        return new TreeSet<>(index.keySet()).tailSet(from).iterator();
+    }
+}
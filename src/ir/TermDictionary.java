@@ -0,0 +1,273 @@
+package ir;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Dizionario dei termini (index.terms) a blocchi front-coded, letto direttamente dal file mappato:
+ * in heap non resta nulla per termine, e all'apertura non si legge il vocabolario.
+ *
+ * index.terms:
+ *   magic "IRDX" | version | termCount (int) | blockCount (int) | offset dell'indice dei blocchi (long)
+ *   poi i blocchi, ognuno di BLOCK_TERMS termini in ordine (l'ultimo può essere più corto):
+ *     offset in index.post (long) | offset in index.pos (long) del primo termine del blocco
+ *     per ogni termine: prefisso in comune col precedente | lunghezza suffisso | suffisso (byte UTF-8)
+ *                       | df | tf massimo | codifica (byte) | lunghezza in index.post | lunghezza in index.pos
+ *     (tutti i numeri tranne gli offset in variable-byte; il primo termine del blocco è completo)
+ *   infine l'indice dei blocchi: offset di ogni blocco in index.terms (long).
+ * Le liste sono contigue nei file delle posting, quindi l'offset di un termine è quello del
+ * precedente più la sua lunghezza: si salvano solo le lunghezze.
+ *
+ * Ricerca: binaria sui primi termini dei blocchi, poi scansione di al più BLOCK_TERMS voci.
+ * I termini sono confrontati come byte UTF-8, cioè per code point: per i termini del
+ * Tokenizer ([a-z]+) coincide con l'ordine di String.compareTo usato dal writer.
+ */
+final class TermDictionary implements Closeable {
+    static final int BLOCK_TERMS = 16;
+    private static final int HEADER_BYTES = BinaryIndexWriter.HEADER_BYTES + 16;
+    private static final int BLOCK_HEADER = 16;
+
+    /** Voce del dizionario: statistiche e posizione delle liste nei file index.post / index.pos. */
+    record TermInfo(String term, int df, int maxTf, byte encoding,
+                    long postOffset, int postLength, long posOffset, int posLength) {}
+
+    private final MappedFile file;
+    private final int termCount;
+    private final int blockCount;
+    private final long indexOffset;
+    private final ByteBuffer blockIndex; // solo letture assolute: condivisibile tra thread
+
+    private TermDictionary(MappedFile file) {
+        this.file = file;
+        ByteBuffer h = file.slice(BinaryIndexWriter.HEADER_BYTES, HEADER_BYTES - BinaryIndexWriter.HEADER_BYTES);
+        this.termCount = h.getInt();
+        this.blockCount = h.getInt();
+        this.indexOffset = h.getLong();
+        this.blockIndex = file.slice(indexOffset, blockCount * 8).slice(); // indici assoluti da 0
+    }
+
+    static TermDictionary open(Path path) throws IOException {
+        MappedFile f = MappedFile.open(path, BinaryIndexWriter.TERMS_MAGIC);
+        try {
+            return new TermDictionary(f);
+        } catch (RuntimeException e) {
+            f.close();
+            throw e;
+        }
+    }
+
+    int size() { return termCount; }
+
+    /** Voce di term, null se assente. */
+    TermInfo get(String term) {
+        byte[] key = term.getBytes(StandardCharsets.UTF_8);
+        int blk = floorBlock(key);
+        if (blk < 0) return null;
+        Cursor c = new Cursor(blk);
+        while (c.nextInBlock()) {
+            int cmp = c.compareTo(key);
+            if (cmp == 0) return c.info();
+            if (cmp > 0) return null;
+        }
+        return null;
+    }
+
+    /** Voci con termine >= from, in ordine. */
+    Iterator<TermInfo> from(String from) {
+        if (blockCount == 0) return Collections.emptyIterator();
+        byte[] key = from.getBytes(StandardCharsets.UTF_8);
+        Cursor c = new Cursor(Math.max(0, floorBlock(key)));
+        return new Iterator<>() {
+            boolean ready = advance(true);
+
+            private boolean advance(boolean skipSmaller) {
+                while (c.next()) {
+                    if (!skipSmaller || c.compareTo(key) >= 0) return true;
+                }
+                return false;
+            }
+
+            @Override public boolean hasNext() { return ready; }
+
+            @Override public TermInfo next() {
+                if (!ready) throw new NoSuchElementException();
+                TermInfo t = c.info();
+                ready = advance(false);
+                return t;
+            }
+        };
+    }
+
+    /** Ultimo blocco il cui primo termine è <= key, -1 se key precede tutto il dizionario. */
+    private int floorBlock(byte[] key) {
+        int lo = 0, hi = blockCount - 1, found = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compareFirst(mid, key) <= 0) {
+                found = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    // primo termine del blocco (completo, prefisso 0) confrontato con key senza copiarlo
+    private int compareFirst(int blk, byte[] key) {
+        ByteBuffer b = block(blk);
+        b.position(b.position() + BLOCK_HEADER);
+        VByte.read(b);
+        int n = VByte.read(b);
+        for (int i = 0; i < n && i < key.length; i++) {
+            int cmp = Byte.compareUnsigned(b.get(), key[i]);
+            if (cmp != 0) return cmp;
+        }
+        return Integer.compare(n, key.length);
+    }
+
+    private ByteBuffer block(int blk) {
+        long start = blockIndex.getLong(blk * 8);
+        long end = (blk + 1 < blockCount) ? blockIndex.getLong((blk + 1) * 8) : indexOffset;
+        return file.slice(start, (int) (end - start));
+    }
+
+    /** Scansione sequenziale delle voci a partire da un blocco. */
+    private final class Cursor {
+        private int blk;
+        private ByteBuffer b;
+        private int left; // voci ancora da leggere nel blocco
+        private byte[] term = new byte[32];
+        private int len;
+        private int df, maxTf, postLength, posLength;
+        private byte encoding;
+        private long postOffset, posOffset;
+
+        Cursor(int blk) { seek(blk); }
+
+        private void seek(int k) {
+            blk = k;
+            b = block(k);
+            left = Math.min(BLOCK_TERMS, termCount - k * BLOCK_TERMS);
+            postOffset = b.getLong();
+            posOffset = b.getLong();
+            postLength = posLength = 0;
+            len = 0;
+        }
+
+        boolean next() {
+            while (left == 0) {
+                if (blk + 1 >= blockCount) return false;
+                seek(blk + 1);
+            }
+            return nextInBlock();
+        }
+
+        boolean nextInBlock() {
+            if (left == 0) return false;
+            int prefix = VByte.read(b), suffix = VByte.read(b);
+            len = prefix + suffix;
+            if (len > term.length) term = Arrays.copyOf(term, Math.max(len, term.length * 2));
+            b.get(term, prefix, suffix);
+            df = VByte.read(b);
+            maxTf = VByte.read(b);
+            encoding = b.get();
+            postOffset += postLength;
+            posOffset += posLength;
+            postLength = VByte.read(b);
+            posLength = VByte.read(b);
+            left--;
+            return true;
+        }
+
+        int compareTo(byte[] key) {
+            return Arrays.compareUnsigned(term, 0, len, key, 0, key.length);
+        }
+
+        TermInfo info() {
+            return new TermInfo(new String(term, 0, len, StandardCharsets.UTF_8), df, maxTf, encoding,
+                    postOffset, postLength, posOffset, posLength);
+        }
+    }
+
+    @Override
+    public void close() throws IOException { file.close(); }
+
+    /** Scrive index.terms; le voci devono arrivare in ordine e con liste contigue. */
+    static final class Writer implements Closeable {
+        private final Path path;
+        private final OutputStream out;
+        private final ByteArrayOutputStream block = new ByteArrayOutputStream();
+        private long[] blockOffsets = new long[64];
+        private int blockCount = 0;
+        private int termCount = 0;
+        private long written = HEADER_BYTES;
+        private byte[] last = new byte[0];
+
+        Writer(Path path) throws IOException {
+            this.path = path;
+            this.out = new BufferedOutputStream(Files.newOutputStream(path));
+            DataOutputStream h = new DataOutputStream(out);
+            h.writeInt(BinaryIndexWriter.TERMS_MAGIC);
+            h.writeInt(BinaryIndexWriter.FORMAT_VERSION);
+            h.writeInt(0);  // termCount, blockCount e offset dell'indice riscritti in close()
+            h.writeInt(0);
+            h.writeLong(0);
+        }
+
+        void add(String term, int df, int maxTf, byte encoding,
+                 long postOffset, int postLength, long posOffset, int posLength) throws IOException {
+            byte[] t = term.getBytes(StandardCharsets.UTF_8);
+            if (termCount > 0 && Arrays.compareUnsigned(t, last) <= 0)
+                throw new IllegalArgumentException("Termini non ordinati (UTF-8): " + new String(last, StandardCharsets.UTF_8) + " >= " + term);
+            int prefix = 0;
+            if (termCount % BLOCK_TERMS == 0) {
+                flushBlock();
+                DataOutputStream h = new DataOutputStream(block);
+                h.writeLong(postOffset);
+                h.writeLong(posOffset);
+            } else {
+                int max = Math.min(t.length, last.length);
+                while (prefix < max && t[prefix] == last[prefix]) prefix++;
+            }
+            VByte.write(block, prefix);
+            VByte.write(block, t.length - prefix);
+            block.write(t, prefix, t.length - prefix);
+            VByte.write(block, df);
+            VByte.write(block, maxTf);
+            block.write(encoding);
+            VByte.write(block, postLength);
+            VByte.write(block, posLength);
+            last = t;
+            termCount++;
+        }
+
+        private void flushBlock() throws IOException {
+            if (block.size() == 0) return;
+            if (blockCount == blockOffsets.length) blockOffsets = Arrays.copyOf(blockOffsets, blockCount * 2);
+            blockOffsets[blockCount++] = written;
+            block.writeTo(out);
+            written += block.size();
+            block.reset();
+        }
+
+        int termCount() { return termCount; }
+
+        @Override
+        public void close() throws IOException {
+            flushBlock();
+            DataOutputStream d = new DataOutputStream(out);
+            for (int i = 0; i < blockCount; i++) d.writeLong(blockOffsets[i]);
+            out.close();
+            try (FileChannel ch = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                ByteBuffer h = ByteBuffer.allocate(HEADER_BYTES - BinaryIndexWriter.HEADER_BYTES);
+                h.putInt(termCount).putInt(blockCount).putLong(written).flip();
+                ch.write(h, BinaryIndexWriter.HEADER_BYTES);
+            }
+        }
+    }
+}
@@ -1,51 +1,152 @@
 package ir;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
 import java.text.Normalizer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
+/**
+ * Tokenizer in streaming: legge il testo a blocchi da un Reader e restituisce
+ * i token uno alla volta (next()), con memoria costante per documento.
+ *
+ * Ogni carattere passa da una tabella di piegatura calcolata una volta sola
+ * (al primo incontro del carattere) con la stessa pipeline di prima, applicata
+ * al singolo carattere:
+ *   1) NFD (carattere base + diacritici)   2) rimozione dei diacritici (\p{M})
+ *   3) legature non gestite da NFD (ß -> ss, Æ -> AE, Œ -> OE, Ø -> O, Ð -> D, Þ -> TH)
+ *   4) minuscolo (Locale.ROOT)
+ * I token sono le sequenze [a-z]+ del testo piegato, lunghe almeno 2 caratteri.
+ * I diacritici isolati spariscono senza spezzare la parola, come con replaceAll("\\p{M}+", "").
+ */
 public class Tokenizer {
+    private static final int CHUNK = 8192;
+    private static final char[] NONE = {};
 
-    // Precompiled pattern: only a-z sequences
-    private static final Pattern WORD = Pattern.compile("[a-z]+");
+    // piegatura di ogni carattere BMP, null finché non serve; le righe calcolate tardi sono
+    // pubblicate con setRelease/getAcquire, così un altro thread non vede mai un char[] a metà
+    private static final AtomicReferenceArray<char[]> FOLD = new AtomicReferenceArray<>(1 << 16);
+    static {
+        for (char c = 0; c < 128; c++) FOLD.set(c, computeFold(String.valueOf(c)));
+    }
+
+    private final TokenStream stream = new TokenStream();
 
     public List<String> tokenize(String text) {
         if (text == null || text.isBlank()) return List.of();
+        List<String> out = new ArrayList<>();
+        TokenStream ts = stream(new StringReader(text));
+        try {
+            for (String tok; (tok = ts.next()) != null; ) out.add(tok);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // StringReader non fallisce
+        }
+        return out;
+    }
 
-        // 1) Normalize to NFD (base char + diacritics)
-        String norm = Normalizer.normalize(text, Normalizer.Form.NFD);
-        // 2) Remove diacritics (Mn)
-        norm = norm.replaceAll("\\p{M}+", "");
+    /** Stream di token su in; riusa i buffer di questo Tokenizer (uno stream alla volta). */
+    public TokenStream stream(Reader in) {
+        stream.reset(in);
+        return stream;
+    }
+
+    private static char[] fold(char c) {
+        char[] f = FOLD.getAcquire(c);
+        if (f == null) {
+            f = computeFold(String.valueOf(c));
+            FOLD.setRelease(c, f); // deterministico: se due thread lo calcolano insieme scrivono lo stesso valore
+        }
+        return f;
+    }
 
-        // 3) Handle special cases not fixed by NFD
-        //    Using Unicode escapes to stay ASCII-safe under any source encoding.
-       norm = norm
-        .replace("\u00DF", "ss")   // U+00DF (LATIN SMALL LETTER SHARP S) -> ss
-        .replace("\u00C6", "AE")   // U+00C6 (LATIN CAPITAL LETTER AE) -> AE
-        .replace("\u00E6", "ae")   // U+00E6 (LATIN SMALL LETTER AE) -> ae
-        .replace("\u0152", "OE")   // U+0152 (LATIN CAPITAL LIGATURE OE) -> OE
-        .replace("\u0153", "oe")   // U+0153 (LATIN SMALL LIGATURE OE) -> oe
-        .replace("\u00D8", "O")    // U+00D8 (LATIN CAPITAL LETTER O WITH STROKE) -> O
-        .replace("\u00F8", "o")    // U+00F8 (LATIN SMALL LETTER O WITH STROKE) -> o
-        .replace("\u00D0", "D")    // U+00D0 (LATIN CAPITAL LETTER ETH) -> D
-        .replace("\u00F0", "d")    // U+00F0 (LATIN SMALL LETTER ETH) -> d
-        .replace("\u00DE", "TH")   // U+00DE (LATIN CAPITAL LETTER THORN) -> TH
-        .replace("\u00FE", "th");  // U+00FE (LATIN SMALL LETTER THORN) -> th
-
-        // 4) Lowercase (locale neutral)
+    private static char[] computeFold(String s) {
+        String norm = Normalizer.normalize(s, Normalizer.Form.NFD);
+        norm = norm.replaceAll("\\p{M}+", "");
+        // Using Unicode escapes to stay ASCII-safe under any source encoding.
+        norm = norm
+            .replace("\u00DF", "ss")   // U+00DF (LATIN SMALL LETTER SHARP S) -> ss
+            .replace("\u00C6", "AE")   // U+00C6 (LATIN CAPITAL LETTER AE) -> AE
+            .replace("\u00E6", "ae")   // U+00E6 (LATIN SMALL LETTER AE) -> ae
+            .replace("\u0152", "OE")   // U+0152 (LATIN CAPITAL LIGATURE OE) -> OE
+            .replace("\u0153", "oe")   // U+0153 (LATIN SMALL LIGATURE OE) -> oe
+            .replace("\u00D8", "O")    // U+00D8 (LATIN CAPITAL LETTER O WITH STROKE) -> O
+            .replace("\u00F8", "o")    // U+00F8 (LATIN SMALL LETTER O WITH STROKE) -> o
+            .replace("\u00D0", "D")    // U+00D0 (LATIN CAPITAL LETTER ETH) -> D
+            .replace("\u00F0", "d")    // U+00F0 (LATIN SMALL LETTER ETH) -> d
+            .replace("\u00DE", "TH")   // U+00DE (LATIN CAPITAL LETTER THORN) -> TH
+            .replace("\u00FE", "th");  // U+00FE (LATIN SMALL LETTER THORN) -> th
         norm = norm.toLowerCase(Locale.ROOT);
+        return norm.isEmpty() ? NONE : norm.toCharArray();
+    }
 
-        // 5) Extract only [a-z]+ tokens
-        Matcher m = WORD.matcher(norm);
-        List<String> out = new ArrayList<>();
-        while (m.find()) {
-            String tok = m.group();
-            // Optional: drop 1-char tokens to reduce noise
-            if (tok.length() >= 2) out.add(tok);
+    /** Token di un Reader, uno alla volta. */
+    public static final class TokenStream {
+        private Reader in;
+        private final char[] buf = new char[CHUNK];
+        private int pos, lim;
+        private char[] pending = NONE; // piegatura del carattere corrente non ancora consumata
+        private int pendingIdx;
+        private char[] tok = new char[32];
+
+        private void reset(Reader in) {
+            this.in = in;
+            pos = lim = 0;
+            pending = NONE;
+            pendingIdx = 0;
+        }
+
+        /** Prossimo token, null a fine testo. */
+        public String next() throws IOException {
+            int len = 0;
+            while (true) {
+                int c = nextFolded();
+                if (c >= 'a' && c <= 'z') {
+                    if (len == tok.length) tok = Arrays.copyOf(tok, len * 2);
+                    tok[len++] = (char) c;
+                    continue;
+                }
+                // separatore o fine testo; i token di 1 carattere si scartano
+                if (len >= 2) return new String(tok, 0, len);
+                len = 0;
+                if (c < 0) return null;
+            }
+        }
+
+        /** Prossimo carattere del testo piegato, -1 a fine testo. */
+        private int nextFolded() throws IOException {
+            while (pendingIdx == pending.length) {
+                int c = read();
+                if (c < 0) return -1;
+                char ch = (char) c;
+                if (Character.isHighSurrogate(ch)) {
+                    int lo = read();
+                    if (lo >= 0 && Character.isLowSurrogate((char) lo)) {
+                        pending = computeFold(new String(new char[] { ch, (char) lo }));
+                    } else {
+                        pending = computeFold(String.valueOf(ch));
+                        if (lo >= 0) pos--; // il carattere letto appartiene al passo successivo
+                    }
+                } else {
+                    pending = fold(ch);
+                }
+                pendingIdx = 0;
+            }
+            return pending[pendingIdx++];
+        }
+
+        private int read() throws IOException {
+            if (pos == lim) {
+                int n = in.read(buf, 0, buf.length);
+                if (n <= 0) return -1;
+                pos = 0;
+                lim = n;
+            }
+            return buf[pos++];
         }
-        return out;
     }
 }
@@ -0,0 +1,43 @@
+package ir;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Variable-byte encoding degli interi non negativi:
+ * 7 bit per byte, il bit alto segnala che seguono altri byte.
+ * Usato per i gap di docID e per i tf nel file delle posting.
+ */
+final class VByte {
+    private VByte() {}
+
+    static void write(OutputStream out, int v) throws IOException {
+        while ((v & ~0x7F) != 0) {
+            out.write((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out.write(v);
+    }
+
+    static int read(ByteBuffer in) {
+        int b = in.get();
+        int v = b & 0x7F;
+        for (int shift = 7; (b & 0x80) != 0; shift += 7) {
+            b = in.get();
+            v |= (b & 0x7F) << shift;
+        }
+        return v;
+    }
+
+    static int read(DataInput in) throws IOException {
+        int b = in.readByte();
+        int v = b & 0x7F;
+        for (int shift = 7; (b & 0x80) != 0; shift += 7) {
+            b = in.readByte();
+            v |= (b & 0x7F) << shift;
+        }
+        return v;
+    }
+}
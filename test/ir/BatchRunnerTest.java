@@ -0,0 +1,70 @@
+package ir;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Un errore su una query diventa una riga di errore; il batch continua e l'ordine resta quello dell'input. */
+class BatchRunnerTest {
+
+    /** Searcher finto: "boom" fallisce con un'eccezione imprevista, "bad" come query non valida. */
+    private static final Searcher SEARCHER = new Searcher() {
+        @Override
+        public CollectionStats stats(String query) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<String> terms(String pattern, int limit) {
+            return List.of();
+        }
+
+        @Override
+        public List<ScoredDoc> search(String mode, String query, int top, CollectionStats global) {
+            if (query.equals("boom")) throw new IllegalStateException("lista corrotta");
+            if (query.equals("bad")) throw new IllegalArgumentException("Query non valida");
+            return List.of(new ScoredDoc(query.length(), 0.0), new ScoredDoc(100 + query.length(), 0.0));
+        }
+
+        @Override
+        public void close() {}
+    };
+
+    private static String run(BatchRunner.Format format, String input, int[] errors) throws IOException {
+        StringWriter out = new StringWriter();
+        BatchRunner.Stats stats = new BatchRunner(SEARCHER, 4, format, "and", 10, 0)
+                .run(new BufferedReader(new StringReader(input)), out);
+        errors[0] = stats.errors();
+        assertEquals(input.split("\n").length, stats.queries());
+        return out.toString();
+    }
+
+    @Test
+    void runtimeFailureMidBatchIsReportedPerLineTsv() throws IOException {
+        int[] errors = new int[1];
+        String out = run(BatchRunner.Format.TSV, "ab\nboom\nbad\nabcd\n", errors);
+        assertEquals(String.join("\n",
+                "1\tab\t2\t2 102",
+                "2\tboom\tERROR\tjava.lang.IllegalStateException: lista corrotta",
+                "3\tbad\tERROR\tQuery non valida",
+                "4\tabcd\t2\t4 104") + "\n", out);
+        assertEquals(2, errors[0]);
+    }
+
+    @Test
+    void runtimeFailureMidBatchIsReportedPerLineJsonl() throws IOException {
+        int[] errors = new int[1];
+        String[] lines = run(BatchRunner.Format.JSONL, "ab\nboom\nabc\n", errors).split("\n");
+        assertEquals(3, lines.length);
+        assertEquals("{\"line\":1,\"query\":\"ab\",\"mode\":\"and\",\"count\":2,\"results\":[2,102]}", lines[0]);
+        assertEquals("{\"line\":2,\"query\":\"boom\",\"mode\":\"and\",\"error\":\"java.lang.IllegalStateException: lista corrotta\"}", lines[1]);
+        assertEquals("{\"line\":3,\"query\":\"abc\",\"mode\":\"and\",\"count\":2,\"results\":[3,103]}", lines[2]);
+        assertEquals(1, errors[0]);
+    }
+}
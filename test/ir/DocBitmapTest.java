@@ -0,0 +1,117 @@
+package ir;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** DocBitmap contro BitSet: contenitori array, bitmap e run, e passaggi dall'uno all'altro. */
+class DocBitmapTest {
+    private static final int SPAN = 4 * 65536; // quattro contenitori
+
+    // forme diverse per contenitore: vuoto, sparso, al limite di ARRAY_MAX, denso, a run
+    private static BitSet randomSet(Random rnd) {
+        BitSet s = new BitSet();
+        for (int key = 0; key < SPAN >>> 16; key++) {
+            int base = key << 16;
+            switch (rnd.nextInt(6)) {
+                case 0 -> { }
+                case 1 -> { for (int i = 0; i < 1 + rnd.nextInt(200); i++) s.set(base + rnd.nextInt(65536)); }
+                case 2 -> fill(s, base, DocBitmap.ARRAY_MAX + rnd.nextInt(3) - 1, rnd);
+                case 3 -> { for (int i = 0; i < 65536; i++) if (rnd.nextInt(3) == 0) s.set(base + i); }
+                case 4 -> {
+                    for (int r = 0; r < 1 + rnd.nextInt(5); r++) {
+                        int start = rnd.nextInt(60000);
+                        s.set(base + start, base + start + 1 + rnd.nextInt(5000));
+                    }
+                }
+                default -> s.set(base, base + 65536);
+            }
+        }
+        return s;
+    }
+
+    // esattamente n valori distinti nel contenitore
+    private static void fill(BitSet s, int base, int n, Random rnd) {
+        BitSet c = new BitSet();
+        while (c.cardinality() < n) c.set(rnd.nextInt(65536));
+        for (int i = c.nextSetBit(0); i >= 0; i = c.nextSetBit(i + 1)) s.set(base + i);
+    }
+
+    private static DocBitmap bitmap(BitSet s) {
+        DocIdBuffer ids = new DocIdBuffer();
+        for (int i = s.nextSetBit(0); i >= 0; i = s.nextSetBit(i + 1)) ids.add(i);
+        return DocBitmap.of(ids);
+    }
+
+    private static void assertSame(BitSet expected, DocBitmap actual) {
+        assertArrayEquals(expected.stream().toArray(), actual.toArray());
+        assertEquals(expected.cardinality(), actual.cardinality());
+        DocIdBuffer buf = new DocIdBuffer();
+        actual.toBuffer(buf);
+        assertArrayEquals(expected.stream().toArray(), buf.toArray());
+    }
+
+    @Test
+    void setOperationsMatchBitSet() {
+        Random rnd = new Random(12);
+        for (int round = 0; round < 40; round++) {
+            BitSet a = randomSet(rnd), b = randomSet(rnd);
+            DocBitmap x = bitmap(a), y = bitmap(b);
+            assertSame(a, x);
+
+            BitSet and = (BitSet) a.clone();
+            and.and(b);
+            assertSame(and, x.and(y));
+            BitSet or = (BitSet) a.clone();
+            or.or(b);
+            assertSame(or, x.or(y));
+            BitSet andNot = (BitSet) a.clone();
+            andNot.andNot(b);
+            assertSame(andNot, x.andNot(y));
+            assertSame(new BitSet(), x.andNot(x));
+
+            for (int i = 0; i < 2000; i++) {
+                int d = rnd.nextInt(SPAN + 100);
+                assertEquals(a.get(d), x.contains(d), "contains " + d);
+            }
+        }
+    }
+
+    @Test
+    void containersSwitchAtArrayMax() {
+        BitSet dense = new BitSet();
+        dense.set(0, DocBitmap.ARRAY_MAX + 1);          // bitmap, un valore oltre il limite
+        BitSet other = new BitSet();
+        other.set(DocBitmap.ARRAY_MAX - 10, DocBitmap.ARRAY_MAX + 100);
+        // l'AND di due bitmap è piccolo: deve tornare array e restare corretto
+        BitSet and = (BitSet) dense.clone();
+        and.and(other);
+        assertSame(and, bitmap(dense).and(bitmap(other)));
+        // l'OR di due array che insieme superano ARRAY_MAX diventa bitmap
+        BitSet evens = new BitSet(), odds = new BitSet();
+        for (int i = 0; i < 2 * DocBitmap.ARRAY_MAX; i += 2) { evens.set(i); odds.set(i + 1); }
+        BitSet or = (BitSet) evens.clone();
+        or.or(odds);
+        DocBitmap union = bitmap(evens).or(bitmap(odds));
+        assertSame(or, union);
+        assertSame(evens, union.andNot(bitmap(odds)));
+    }
+
+    @Test
+    void writeAndReadRoundTrip() throws IOException {
+        Random rnd = new Random(34);
+        for (int round = 0; round < 20; round++) {
+            BitSet s = randomSet(rnd);
+            if (s.isEmpty()) continue;
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            bitmap(s).write(out);
+            DocBitmap back = DocBitmap.read(ByteBuffer.wrap(out.toByteArray()));
+            assertSame(s, back);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package ir;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** doc.len: versione propria, e i file scritti con la versione delle posting si leggono ancora. */
+class DocLengthsTest {
+    @TempDir Path tmp;
+
+    private Path write(int version, int... lengths) throws IOException {
+        Path file = tmp.resolve("doc" + version + ".len");
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(file))) {
+            out.writeInt(DocLengths.MAGIC);
+            out.writeInt(version);
+            out.writeInt(lengths.length);
+            for (int len : lengths) out.writeInt(len);
+        }
+        return file;
+    }
+
+    @Test
+    void saveAndLoad() throws IOException {
+        Path file = tmp.resolve("doc.len");
+        DocLengths.of(Map.of(0, 10, 2, 30)).save(file);
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+            in.readInt();
+            assertEquals(DocLengths.VERSION, in.readInt());
+        }
+        DocLengths l = DocLengths.load(file);
+        assertEquals(2, l.docCount());
+        assertEquals(30, l.length(2));
+        assertEquals(0, l.length(1));
+        assertEquals(20.0, l.avgLength());
+    }
+
+    @Test
+    void filesWrittenWithThePostingsVersionStillLoad() throws IOException {
+        for (int v = 2; v <= 5; v++) assertEquals(7, DocLengths.load(write(v, 7, 0)).length(0));
+        assertThrows(IOException.class, () -> DocLengths.load(write(99, 7)));
+    }
+}
@@ -0,0 +1,90 @@
+package ir;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Aggiornamenti incrementali: docID mai riusati, anche dopo un aggiornamento interrotto, e merge. */
+class IndexUpdaterTest {
+    @TempDir Path tmp;
+
+    private IndexFiles files;
+    private Path data;
+
+    // indice base vuoto: tutti i documenti arrivano dai segmenti
+    private IndexUpdater updater() throws IOException {
+        if (files == null) {
+            files = IndexFiles.in(Files.createDirectories(tmp.resolve("idx")));
+            data = Files.createDirectories(tmp.resolve("data"));
+            BinaryIndexWriter.write(new HashMap<>(), files);
+            IndexIO.saveDocs(Map.of(), files.docs());
+        }
+        return new IndexUpdater(files, new StopWords(Paths.get("nessuna-stoplist.txt"), 0.0));
+    }
+
+    private List<Integer> docIds(String term) throws IOException {
+        Map<String, PostingList> index = IndexIO.openIndex(files);
+        try {
+            PostingList pl = index.get(term);
+            return pl == null ? List.of() : pl.docIds();
+        } finally {
+            if (index instanceof Closeable c) c.close();
+        }
+    }
+
+    @Test
+    void interruptedUpdateDoesNotReuseDocIds() throws IOException {
+        IndexUpdater u = updater();
+        Files.writeString(data.resolve("a.txt"), "alpha beta");
+        Files.writeString(data.resolve("b.txt"), "alpha gamma");
+        assertEquals(1, u.update(data).segment());
+        byte[] docs = Files.readAllBytes(files.docs());
+        byte[] stamps = Files.readAllBytes(files.stamps());
+
+        Files.writeString(data.resolve("c.txt"), "alpha delta");
+        assertEquals(2, u.update(data).segment());
+        // interruzione dopo il segmento: docs.map e docs.stamp non sono stati riscritti
+        Files.write(files.docs(), docs);
+        Files.write(files.stamps(), stamps);
+        Files.deleteIfExists(files.deleted());
+
+        IndexUpdater.Result r = u.update(data);
+        assertEquals(1, r.added());
+        assertEquals(3, r.segment());
+        assertEquals(List.of(0, 1, 3), docIds("alpha")); // il docID 2 del segmento orfano è cancellato
+        assertEquals(List.of(3), docIds("delta"));
+        assertEquals(Set.of(0, 1, 3), IndexIO.loadDocs(files.docs()).keySet());
+    }
+
+    @Test
+    void mergeDropsDeletedDocsAndThenHasNothingToDo() throws IOException {
+        IndexUpdater u = updater();
+        Files.writeString(data.resolve("a.txt"), "alpha beta");
+        Files.writeString(data.resolve("b.txt"), "alpha gamma");
+        u.update(data);
+        Files.delete(data.resolve("a.txt"));
+        assertEquals(1, u.update(data).deleted());
+
+        u.mergeSegments();
+        assertTrue(IndexIO.listSegments(files).isEmpty());
+        assertFalse(Files.exists(files.deleted()));
+        List<Integer> alpha = docIds("alpha"); // resta solo b.txt
+        assertEquals(IndexIO.loadDocs(files.docs()).keySet(), Set.copyOf(alpha));
+        assertEquals(List.of(), docIds("beta"));
+
+        Object key = Files.readAttributes(files.terms(), "unix:ino").get("ino");
+        u.mergeSegments(); // niente segmenti né cancellati: l'indice base non si riscrive
+        assertEquals(key, Files.readAttributes(files.terms(), "unix:ino").get("ino"));
+
+        // i docID non tornano indietro dopo il merge
+        Files.writeString(data.resolve("c.txt"), "alpha delta");
+        u.update(data);
+        assertEquals(List.of(alpha.get(0), 2), docIds("alpha"));
+    }
+}
@@ -0,0 +1,74 @@
+package ir;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Sottoinsieme più grande in cache: confronto con la ricerca su tutti i sottoinsiemi della query. */
+class IntersectionCacheTest {
+    private static final List<String> VOCABULARY = List.of("aa", "bb", "cc", "dd", "ee", "ff", "gg", "hh", "ii", "jj", "kk", "ll");
+
+    @Test
+    void largestSubsetMatchesExhaustiveSearch() {
+        Random rnd = new Random(7);
+        IntersectionCache ic = new IntersectionCache(40, 1L << 20); // piccola: la LRU scarta voci
+        for (int step = 0; step < 3000; step++) {
+            List<String> query = randomTerms(rnd, 2 + rnd.nextInt(10));
+            if (rnd.nextBoolean()) {
+                // in cache coppie e query intere, come fa Retriever
+                List<String> sub = rnd.nextBoolean() ? query : randomSubset(rnd, query, 2);
+                ic.put(sub, ids(sub));
+                continue;
+            }
+            List<String> found = new ArrayList<>();
+            int[] hit = ic.largestSubset(query, found);
+            int best = 0;
+            for (int mask = 1; mask < (1 << query.size()); mask++) {
+                if (Integer.bitCount(mask) < 2 || Integer.bitCount(mask) <= best) continue;
+                List<String> sub = new ArrayList<>();
+                for (int i = 0; i < query.size(); i++) if ((mask & (1 << i)) != 0) sub.add(query.get(i));
+                if (ic.contains(IntersectionCache.key(sub))) best = sub.size();
+            }
+            if (best == 0) {
+                assertNull(hit, query.toString());
+                assertTrue(found.isEmpty());
+            } else {
+                assertNotNull(hit, query.toString());
+                assertEquals(best, found.size(), query.toString());
+                assertTrue(query.containsAll(found));
+                assertArrayEquals(ids(found), hit);
+            }
+        }
+    }
+
+    @Test
+    void bindToAnotherIndexForgetsSubsets() {
+        IntersectionCache ic = new IntersectionCache(10, 1L << 20);
+        ic.bind("indice 1");
+        ic.put(List.of("aa", "bb"), new int[] {1, 2});
+        List<String> found = new ArrayList<>();
+        assertArrayEquals(new int[] {1, 2}, ic.largestSubset(List.of("aa", "bb", "cc"), found));
+        assertEquals(List.of("aa", "bb"), found);
+        ic.bind("indice 2");
+        assertNull(ic.largestSubset(List.of("aa", "bb", "cc"), new ArrayList<>()));
+    }
+
+    private static List<String> randomTerms(Random rnd, int n) {
+        List<String> shuffled = new ArrayList<>(VOCABULARY);
+        Collections.shuffle(shuffled, rnd);
+        return new ArrayList<>(new TreeSet<>(shuffled.subList(0, n)));
+    }
+
+    private static List<String> randomSubset(Random rnd, List<String> terms, int n) {
+        List<String> shuffled = new ArrayList<>(terms);
+        Collections.shuffle(shuffled, rnd);
+        return new ArrayList<>(new TreeSet<>(shuffled.subList(0, n)));
+    }
+
+    // risultato fittizio che identifica il sottoinsieme
+    private static int[] ids(List<String> sortedTerms) {
+        return new int[] {IntersectionCache.key(sortedTerms).hashCode()};
+    }
+}
@@ -0,0 +1,140 @@
+package ir;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Stemmer sul posto: stem attesi fissati con la versione precedente a String (esempi classici
+ * di Porter e radici combinate con i suffissi delle tabelle dei passi), e CachingStemmer identico.
+ */
+class PorterStemmerTest {
+    // parola:stem
+    private static final String EXPECTED = """
+            abatbiliti:abatbl abatentli:abat abatful:abat abativeness:ab abattional:abatt activalli:activ
+            activate:activ activbiliti:activbl activiciti:activ activization:activ adjustable:adjust adjusted:adjust
+            adjustement:adjust adjustical:adjust adjusticate:adjust adjustment:adjust adoptal:adopt adopting:adopt
+            adoption:adopt adoptive:adopt adoptly:adoptli adopts:adopt adorement:ador adorou:ador
+            adorsion:adors agrebiliti:agrebl agreed:agre agreeli:agre agreion:agreion agreization:agreiz
+            agresion:agres agretion:agret airlinable:airlin airliner:airlin airlinies:airlini airlinousli:airlin
+            allowalize:allow allowance:allow alloweli:allow allowousli:allow allowsses:allowss alumnable:alumn
+            alumnal:alumn alumnive:alumn alumnly:alumnli alumnness:alumn analogbiliti:analogbl analogousli:analog
+            angularative:angular angularic:angular angulariti:angular beance:beanc bee:bee beentli:beentli
+            beful:beful beic:beic beization:beizat bess:bess betion:betion blable:blabl
+            blanci:blanci bled:bled blible:blibl blment:blment blness:blness bltional:bltional
+            bowdleralli:bowdler bowdlerant:bowdler bowdlering:bowdler bowdlerize:bowdler bowdlersion:bowdlers bowdlerss:bowdlerss
+            callousanci:callous calloused:callous callousiveness:callous callousiviti:callous callousness:callous calloussses:callousss
+            caresaliti:cares caresation:cares caresed:cares caresible:cares caress:caress caresses:caress
+            cats:cat cease:ceas communal:commun communator:commun communbiliti:communbl commune:commun
+            communiciti:commun communism:commun communize:commun communsion:communs computation:comput computational:comput
+            computed:comput computedly:computedli computeli:comput computer:comput computing:comput computive:comput
+            computous:comput condital:condit conditional:condit conditiviti:condit conditness:condit conditousli:condit
+            condits:condit conflated:conflat conformabli:conform conformant:conform conformeed:conforme conformement:conform
+            conforment:confor conformion:conformion conformment:conform conformous:conform connected:connect connectful:connect
+            connecting:connect connection:connect connections:connect connective:connect connectness:connect controll:control
+            cryate:cryate cryation:cryation cryent:cryent cryicate:cryicat crying:crying cryings:crying
+            cryiti:cryiti cryize:cryize cryly:cryly cryy:cryy decisentli:decis decisical:decis
+            decisings:decis decisiveness:decis decisization:decis decisss:decisss defensible:defens defensly:defensli
+            dependant:depend dependent:depend dependiciti:depend dependtion:dependt differative:differ differator:differ
+            differentli:differ differicate:differ digitizer:digit effective:effect electration:electr electreed:electre
+            electrical:electr electriciti:electr electricity:electr electrousli:electr electrsses:electrss faileli:fail
+            failence:failenc failicate:failic failing:fail fall:fall fallaliti:fallal fallanci:fallanc
+            fallational:fallat fallic:fallic falling:fal fallion:fallion fallousli:fallous feed:feed
+            feudalism:feudal feudence:feudenc feudiciti:feudic feudou:feudou feudtional:feudtion filed:file
+            fileli:file filing:file filiveness:filiv fizzable:fizzabl fizzed:fiz fizzism:fizzism
+            fizzizer:fizziz fizzousli:fizzous formalance:formal formaler:formal formaliti:formal formaliveness:formal
+            formalize:formal formative:form generabli:gener generalizations:gener generalli:gener generedly:generedli
+            generentli:gener generic:gener generll:generl generment:gener generous:gener goodalli:goodal
+            goodative:good goodentli:goodent goodive:goodiv goodll:goodll goodness:good goodous:goodou
+            gyroscopable:gyroscop gyroscopaliti:gyroscop gyroscopalli:gyroscop gyroscopational:gyroscop gyroscopic:gyroscop gyroscopousness:gyroscop
+            happance:happanc happational:happat happations:happat happful:happ happily:happili happousness:happous
+            happy:happi hesitanci:hesit hesitation:hesit hesitence:hesit hesitic:hesit hesiticate:hesit
+            hesitization:hesit hesitou:hesit hesitous:hesit hisseli:hiss hissicate:hissic hissing:his
+            hissment:hissment hissousli:hissous homologalism:homolog homologator:homolog homologed:homolog homologenci:homolog
+            homologicate:homolog homologing:homolog homologou:homolog homologous:homolog homologtion:homologt hopate:hopat
+            hopeable:hopeabl hopeentli:hopeent hopeful:hope hopefulness:hope hopeiciti:hopeic hopeli:hope
+            hopence:hopenc hoper:hoper hopiciti:hopic hopive:hopiv hopment:hopment hopping:hop
+            inference:infer inferion:inferion inferism:infer inferou:infer infersion:infers infery:inferi
+            information:inform irritabli:irrit irritalism:irrit irritalli:irrit irritant:irrit irriteli:irrit
+            irritiviti:irrit irrits:irrit lazienci:lazienc lazifulness:lazi laziing:lazi laziion:laziion
+            lazition:lazit lazitional:lazit lazy:lazi marveledly:marveledli marvelly:marvelli motoral:motor
+            motorful:motor motoring:motor motorism:motor motoriti:motor nat:nat natalism:natal
+            nataliti:natal national:nation nations:nation operanci:oper operations:oper operator:oper
+            operly:operli oscilalism:oscil oscilings:oscil oscilizer:oscil oscillators:oscil oscilousness:oscil
+            plastance:plastanc plastered:plaster plastiveness:plastiv plastly:plastli plastss:plastss ponentli:ponent
+            ponies:poni ponings:pone ponsion:ponsion ponsses:ponss predicaliti:predic predication:predic
+            predicator:predic predicenci:predic predicize:predic predicousli:predic probate:probat radicalli:radic
+            radicance:radic radicical:radic radiciciti:radic radiciveness:radic radicous:radic rate:rate
+            rational:ration relatence:relat relating:relat relational:relat relatizer:relat relatss:relatss
+            replacable:replac replacement:replac replaciciti:replac replacings:replac replacly:replacli replacousli:replac
+            retrieval:retriev revival:reviv revivanci:reviv reviventli:reviv revivou:reviv roll:roll
+            runal:runal runanci:runanc rune:rune runement:runement runion:runion runiveness:runiv
+            runment:runment runner:runner running:run runtional:runtion sensibaliti:sensib sensibation:sensib
+            sensibiciti:sensib sensibiliti:sensibl sensibive:sensib sensibtion:sensibt sensitible:sensit sensitiviti:sensit
+            sing:sing singate:singat singement:singement singiti:singiti sizalli:sizal sizator:sizat
+            sized:size sizfulness:siz sizous:sizou sizsses:sizss siztion:siztion sky:sky
+            skyedly:skyedli skyenci:skyenci skyiti:skyiti skyly:skyly skytional:skytional tannalism:tannal
+            tannance:tannanc tannanci:tannanc tanned:tan tannible:tannibl tial:tial ties:ti
+            tiies:tii tiings:ti tiive:tiiv timent:timent travalism:traval travbiliti:travbl
+            travousli:travous travss:travss treeous:treeou trialiti:trialiti triedly:triedli trienci:trienci
+            triness:triness triplalism:triplal triplation:triplat triplic:triplic triplicate:triplic trision:trision
+            trouble:troubl troubled:troubl troublentli:troublent troubliviti:troubliv troublll:troublll valenal:valen
+            valenational:valen valenci:valenc valeneed:valene valenful:valen valeniviti:valen valenizer:valen
+            valension:valens vietnamed:vietnam vietnameed:vietname vietnameli:vietnam vietnamiciti:vietnam vietnamiveness:vietnam
+            vietnamization:vietnam vietnamous:vietnam vileli:vile vilment:vilment viltion:viltion
+            """;
+
+    private static Map<String, String> expected() {
+        Map<String, String> out = new LinkedHashMap<>();
+        for (String pair : EXPECTED.trim().split("\\s+")) {
+            int c = pair.indexOf(':');
+            out.put(pair.substring(0, c), pair.substring(c + 1));
+        }
+        return out;
+    }
+
+    @Test
+    void stemsMatchTheReferenceList() {
+        Map<String, String> expected = expected();
+        assertTrue(expected.size() > 400);
+        PorterStemmer stemmer = new PorterStemmer();
+        for (Map.Entry<String, String> e : expected.entrySet()) assertEquals(e.getValue(), stemmer.stem(e.getKey()), e.getKey());
+        // il buffer è riusato: in ordine inverso (parole lunghe poi corte e viceversa) non cambia nulla
+        List<String> words = new ArrayList<>(expected.keySet());
+        Collections.reverse(words);
+        for (String w : words) assertEquals(expected.get(w), stemmer.stem(w), w);
+    }
+
+    @Test
+    void shortWordsAndNullAreUnchanged() {
+        PorterStemmer stemmer = new PorterStemmer();
+        assertNull(stemmer.stem(null));
+        for (String w : List.of("", "a", "is", "as")) assertSame(w, stemmer.stem(w));
+    }
+
+    @Test
+    void cachingStemmerGivesTheSameStems() throws Exception {
+        Map<String, String> expected = expected();
+        CachingStemmer cached = new CachingStemmer(100); // più piccola del vocabolario: anche i miss non memorizzati
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> runs = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                runs.add(pool.submit(() -> {
+                    for (int round = 0; round < 3; round++) {
+                        for (Map.Entry<String, String> e : expected.entrySet()) assertEquals(e.getValue(), cached.stem(e.getKey()), e.getKey());
+                    }
+                }));
+            }
+            for (Future<?> f : runs) f.get();
+        } finally {
+            pool.shutdown();
+        }
+        assertTrue(cached.size() < expected.size(), "cache limitata");
+        assertEquals(4L * 3 * expected.size(), cached.hits() + cached.misses());
+        assertTrue(cached.hits() > 0);
+    }
+}
@@ -0,0 +1,81 @@
+package ir;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Frasi e NEAR: con e senza posizioni nell'indice (il vecchio index.dict non le ha). */
+class PositionalSearchTest {
+
+    private static Retriever retriever(Map<String, PostingList> index) throws IOException {
+        Map<Integer, String> docs = Map.of(0, "a.txt", 1, "b.txt");
+        return new Retriever(index, docs, new StopWords(Paths.get("nessuna-stoplist.txt"), 0.0));
+    }
+
+    private static PostingList withPositions(int[][] postings) {
+        PostingList pl = new PostingList();
+        for (int[] p : postings) {
+            pl.add(p[0], p.length - 1);
+            for (int k = 1; k < p.length; k++) pl.addPosition(p[k]);
+        }
+        pl.computeSkips();
+        return pl;
+    }
+
+    private static PostingList withoutPositions(int... docs) {
+        PostingList pl = new PostingList();
+        for (int d : docs) pl.add(d, 1);
+        pl.computeSkips();
+        return pl;
+    }
+
+    @Test
+    void nearAndPhraseWithPositions() throws IOException {
+        Map<String, PostingList> index = new HashMap<>();
+        index.put("cat", withPositions(new int[][] {{0, 3}, {1, 10}}));
+        index.put("dog", withPositions(new int[][] {{0, 4}, {1, 20}}));
+        Retriever r = retriever(index);
+        assertEquals(List.of(0), r.searchPhrase("cat dog"));
+        assertEquals(List.of(0), r.searchNear("cat dog", 5));
+        assertEquals(List.of(0, 1), r.searchNear("cat dog", 10));
+    }
+
+    @Test
+    void positionlessIndexIsRejectedWithClearError() throws IOException {
+        Map<String, PostingList> index = new HashMap<>();
+        index.put("cat", withoutPositions(0, 1));
+        index.put("dog", withoutPositions(0, 1));
+        Retriever r = retriever(index);
+        IllegalArgumentException near = assertThrows(IllegalArgumentException.class, () -> r.searchNear("cat dog", 5));
+        assertTrue(near.getMessage().contains("posizioni"));
+        assertThrows(IllegalArgumentException.class, () -> r.searchPhrase("cat dog"));
+        assertThrows(IllegalArgumentException.class, () -> r.search("near/3", "cat dog", 10));
+        // le query booleane non usano le posizioni
+        assertEquals(List.of(0, 1), r.searchAnd("cat dog"));
+    }
+
+    @Test
+    void postingWithoutPositionsDoesNotMatchNear() throws IOException {
+        // lista con posizioni ma un posting che non ne ha: nessuna eccezione, il documento non combacia
+        PostingList cat = new PostingList();
+        cat.add(0, 1);
+        cat.addPosition(3);
+        cat.add(1, 1); // senza posizioni
+        cat.computeSkips();
+        Map<String, PostingList> index = new HashMap<>();
+        index.put("cat", cat);
+        index.put("dog", withPositions(new int[][] {{0, 4}, {1, 7}}));
+        assertEquals(List.of(0), retriever(index).searchNear("cat dog", 5));
+    }
+
+    @Test
+    void hasPositions() {
+        assertTrue(new PostingList().hasPositions());
+        assertTrue(withPositions(new int[][] {{0, 1}}).hasPositions());
+        assertFalse(withoutPositions(0, 2).hasPositions());
+    }
+}
@@ -0,0 +1,38 @@
+package ir;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** AND a coppie con un Intersector (buffer out e scratch alternati) contro il galloping. */
+class QueryEngineTest {
+
+    private static PostingList randomList(Random rnd, int universe, double density) {
+        PostingList pl = new PostingList();
+        for (int d = 0; d < universe; d++) if (rnd.nextDouble() < density) pl.add(d, 1);
+        pl.computeSkips();
+        return pl;
+    }
+
+    @Test
+    void blockIntersectionMatchesGalloping() {
+        Random rnd = new Random(3);
+        DocIdBuffer expected = new DocIdBuffer(), out = new DocIdBuffer(), scratch = new DocIdBuffer();
+        for (int round = 0; round < 300; round++) {
+            SortedDocIds[] lists = new SortedDocIds[2 + rnd.nextInt(5)]; // numero di passi pari e dispari
+            for (int j = 0; j < lists.length; j++) lists[j] = randomList(rnd, 3000, 0.05 + rnd.nextDouble() * 0.9);
+            QueryEngine.and(lists, expected);
+            try {
+                QueryEngine.setIntersector(Intersector.SCALAR);
+                QueryEngine.and(lists, out, scratch); // stessi buffer a ogni giro
+                assertArrayEquals(expected.toArray(), out.toArray(), "liste: " + lists.length);
+                QueryEngine.and(lists, out);
+                assertArrayEquals(expected.toArray(), out.toArray());
+            } finally {
+                QueryEngine.setIntersector(null);
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package ir;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Ogni richiesta riceve una risposta JSON, anche quando la ricerca fallisce in modo imprevisto. */
+class SearchServerTest {
+
+    /** "boom" fallisce con un'eccezione imprevista, "bad" come query non valida. */
+    private static final Searcher SEARCHER = new Searcher() {
+        @Override
+        public CollectionStats stats(String query) {
+            if (query.equals("boom")) throw new IllegalStateException("statistiche corrotte");
+            return new CollectionStats(1, 10, Map.of());
+        }
+
+        @Override
+        public List<String> terms(String pattern, int limit) {
+            return List.of();
+        }
+
+        @Override
+        public List<ScoredDoc> search(String mode, String query, int top, CollectionStats global) {
+            if (query.equals("boom")) throw new IllegalStateException("lista corrotta");
+            if (query.equals("bad")) throw new IllegalArgumentException("Query non valida");
+            return List.of(new ScoredDoc(1, 0.0));
+        }
+
+        @Override
+        public void close() {}
+    };
+
+    @TempDir
+    Path dir;
+
+    private IndexHandle handle;
+    private SearchServer server;
+    private final HttpClient http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+    @BeforeEach
+    void start() throws IOException {
+        handle = IndexHandle.open(IndexFiles.in(dir), files -> new IndexHandle.Opened(SEARCHER, Map.of(1, "a.txt"), List.of()));
+        server = new SearchServer(handle, new InetSocketAddress("127.0.0.1", 0));
+        server.start();
+    }
+
+    @AfterEach
+    void stop() {
+        server.close();
+        handle.close();
+    }
+
+    private HttpResponse<String> get(String pathAndQuery) throws IOException, InterruptedException {
+        URI uri = URI.create("http://127.0.0.1:" + server.address().getPort() + pathAndQuery);
+        return http.send(HttpRequest.newBuilder(uri).GET().build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    /** Richiesta scritta a mano: HttpClient rifiuta gli URI con escape non validi. Restituisce status e corpo. */
+    private String raw(String pathAndQuery) throws IOException {
+        try (Socket socket = new Socket("127.0.0.1", server.address().getPort())) {
+            OutputStream out = socket.getOutputStream();
+            out.write(("GET " + pathAndQuery + " HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            InputStream in = socket.getInputStream();
+            String response = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            String status = response.substring(response.indexOf(' ') + 1, response.indexOf(' ') + 4);
+            return status + " " + response.substring(response.indexOf("\r\n\r\n") + 4);
+        }
+    }
+
+    @Test
+    void normalSearch() throws Exception {
+        HttpResponse<String> r = get("/search?q=ok");
+        assertEquals(200, r.statusCode());
+        assertTrue(r.body().contains("\"path\":\"a.txt\""), r.body());
+    }
+
+    @Test
+    void unexpectedFailureIs500WithJsonBody() throws Exception {
+        HttpResponse<String> r = get("/search?q=boom");
+        assertEquals(500, r.statusCode());
+        assertEquals("{\"error\":\"java.lang.IllegalStateException: lista corrotta\"}", r.body());
+        assertEquals(500, get("/termstats?q=boom").statusCode());
+        // il server continua a rispondere
+        assertEquals(200, get("/search?q=ok").statusCode());
+        assertTrue(get("/stats").body().contains("\"errors\":2"));
+    }
+
+    @Test
+    void malformedEscapeIs400() throws Exception {
+        // il server del JDK scarta già l'URI non valido; altrimenti URLDecoder in params() darebbe 400 da guarded()
+        assertTrue(raw("/search?q=%zz").startsWith("400 "));
+        assertTrue(raw("/termstats?q=ab%2").startsWith("400 "));
+        assertEquals(200, get("/search?q=ok").statusCode());
+    }
+
+    @Test
+    void invalidQueryIs400() throws Exception {
+        HttpResponse<String> r = get("/search?q=bad");
+        assertEquals(400, r.statusCode());
+        assertEquals("{\"error\":\"Query non valida\"}", r.body());
+    }
+}
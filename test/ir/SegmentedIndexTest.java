@@ -0,0 +1,96 @@
+package ir;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Indice base + segmenti con cancellazioni: i termini rimasti solo in documenti cancellati spariscono. */
+class SegmentedIndexTest {
+
+    private static PostingList list(int... docs) {
+        PostingList pl = new PostingList();
+        for (int d : docs) pl.add(d, 1);
+        pl.computeSkips();
+        return pl;
+    }
+
+    private static SegmentedIndex index() {
+        Map<String, PostingList> base = new HashMap<>();
+        base.put("aa", list(0, 1));
+        base.put("ab", list(1));          // solo in un documento cancellato
+        base.put("ac", list(1, 2));       // un posting cancellato, uno vivo
+        Map<String, PostingList> seg = new HashMap<>();
+        seg.put("ab", list(5));           // ancora vivo grazie al segmento
+        seg.put("ad", list(6, 7));        // tutti cancellati
+        BitSet deleted = new BitSet();
+        deleted.set(1);
+        deleted.set(6);
+        deleted.set(7);
+        return new SegmentedIndex(List.of(base, seg), deleted);
+    }
+
+    @Test
+    void enumerationSkipsTermsWithOnlyDeletedDocs() {
+        SegmentedIndex idx = index();
+        assertEquals(List.of("aa", "ab", "ac"), iterate(idx.termsFrom("")));
+        assertEquals(List.of("ac"), iterate(idx.termsFrom("ac")));
+        assertEquals(Set.of("aa", "ab", "ac"), idx.keySet());
+        assertNull(idx.get("ad"));
+    }
+
+    @Test
+    void mergedListsDropDeletedDocs() {
+        SegmentedIndex idx = index();
+        assertEquals(List.of(0), idx.get("aa").docIds());
+        assertEquals(List.of(5), idx.get("ab").docIds());
+        assertEquals(List.of(2), idx.get("ac").docIds());
+    }
+
+    // lista con le posizioni da decodificare al primo accesso, come quelle di MappedIndex
+    private static PostingList lazy(ByteBuffer[] buffer, int[][] postings) throws IOException {
+        PostingList pl = new PostingList();
+        ByteArrayOutputStream pos = new ByteArrayOutputStream();
+        for (int[] p : postings) {
+            pl.add(p[0], p.length - 1);
+            VByte.write(pos, p.length - 1);
+            for (int k = 1, prev = 0; k < p.length; prev = p[k++]) VByte.write(pos, p[k] - prev);
+        }
+        pl.computeSkips();
+        buffer[0] = ByteBuffer.wrap(pos.toByteArray());
+        pl.setLazyPositions(buffer[0]);
+        return pl;
+    }
+
+    @Test
+    void mergedListsReadPositionsOnlyWhenAsked() throws IOException {
+        ByteBuffer[] baseBuf = new ByteBuffer[1], segBuf = new ByteBuffer[1];
+        Map<String, PostingList> base = Map.of("aa", lazy(baseBuf, new int[][] {{0, 1, 5}, {1, 2}}));
+        Map<String, PostingList> seg = Map.of("aa", lazy(segBuf, new int[][] {{5, 3, 4, 9}}));
+        BitSet deleted = new BitSet();
+        deleted.set(1);
+        PostingList aa = new SegmentedIndex(List.of(base, seg), deleted).get("aa");
+
+        assertEquals(List.of(0, 5), aa.docIds());
+        assertEquals(3, aa.maxTf());
+        assertEquals(0, baseBuf[0].position(), "AND/OR e ranking non leggono le posizioni");
+        assertEquals(0, segBuf[0].position());
+
+        assertEquals(2, aa.positionCount(0));
+        assertEquals(5, aa.position(0, 1));
+        assertEquals(3, aa.positionCount(1));
+        assertEquals(List.of(3, 4, 9), List.of(aa.position(1, 0), aa.position(1, 1), aa.position(1, 2)));
+        assertTrue(aa.hasPosition(1, 9));
+        assertTrue(aa.hasPositions());
+    }
+
+    private static List<String> iterate(Iterator<String> it) {
+        List<String> out = new ArrayList<>();
+        it.forEachRemaining(out::add);
+        return out;
+    }
+}
@@ -0,0 +1,67 @@
+package ir;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Pattern con * e ?: stesso limite di espansione e stessi risultati con e senza shard. */
+class ShardedSearchTest {
+    private static final int DOCS = 1200;
+    private static final String LETTERS = "bcdfghjk"; // solo consonanti: lo stemmer non tocca i termini
+
+    @TempDir
+    Path tmp;
+
+    // termine distinto per ogni documento: zz + 4 consonanti
+    private static String word(int i) {
+        StringBuilder sb = new StringBuilder("zz");
+        for (int k = 0; k < 4; k++, i /= LETTERS.length()) sb.append(LETTERS.charAt(i % LETTERS.length()));
+        return sb.toString();
+    }
+
+    private static IndexFiles buildIndex(Path data, Path dir) throws IOException {
+        Files.createDirectories(dir);
+        IndexFiles files = IndexFiles.in(dir);
+        Indexer indexer = new Indexer(dir.resolve("stoplist.txt"), 0.0); // nessuna stop word
+        indexer.build(data);
+        BinaryIndexWriter.write(indexer.index, files);
+        IndexIO.saveDocs(indexer.docTable, files.docs());
+        IndexIO.saveCF(indexer.collectionFreq, files.cf());
+        DocLengths.of(indexer.docLengths).save(files.lengths());
+        return files;
+    }
+
+    @Test
+    void wildcardCapAppliesToMergedTermsAndResultsMatch() throws IOException {
+        Path data = tmp.resolve("data");
+        Files.createDirectories(data);
+        for (int i = 0; i < DOCS; i++) Files.writeString(data.resolve("d" + i + ".txt"), "common " + word(i));
+        IndexFiles whole = buildIndex(data, tmp.resolve("whole"));
+        IndexFiles split = buildIndex(data, tmp.resolve("split"));
+        assertEquals(2, Shards.split(split, 2));
+
+        try (IndexSnapshot single = IndexSnapshot.open(whole, null);
+             ShardedSearcher sharded = ShardedSearcher.open(split, null, List.of())) {
+            // 1200 termini in tutto, circa 600 per shard: ogni shard starebbe nel limite di 1000
+            for (Searcher s : sharded.shards()) assertTrue(s.terms("zz*", 2000).size() <= QueryPlanner.MAX_EXPANSION);
+            assertEquals(DOCS, sharded.terms("zz*", 2000).size());
+            IllegalArgumentException a = assertThrows(IllegalArgumentException.class, () -> single.search("bool", "zz*", 0));
+            IllegalArgumentException b = assertThrows(IllegalArgumentException.class, () -> sharded.search("bool", "zz*", 0));
+            assertEquals(a.getMessage(), b.getMessage());
+            assertThrows(IllegalArgumentException.class, () -> sharded.search("bool", "common AND NOT zz*", 0));
+
+            // sotto il limite: stessi documenti
+            for (String q : List.of("zzb*", "zz?b*", "common AND zzc*", "common AND NOT zzd*", "zzbb?? OR zzkk??")) {
+                assertEquals(single.search("bool", q, 0), sharded.search("bool", q, 0), q);
+            }
+            assertEquals(DOCS / LETTERS.length(), sharded.search("bool", "zzb*", 0).size());
+            assertEquals(single.terms("zzb*", 10), sharded.terms("zzb*", 10));
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package ir;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Dizionario front-coded contro un TreeSet: ricerca puntuale, enumerazione da un termine
+ * e prefissi/intervalli/wildcard, con vocabolari che finiscono prima, su e dopo il confine
+ * di un blocco di BLOCK_TERMS termini.
+ */
+class TermDictionaryTest {
+    @TempDir Path tmp;
+
+    private static final int B = TermDictionary.BLOCK_TERMS;
+
+    // alfabeto piccolo: molti prefissi in comune, quindi front coding vero
+    private static TreeSet<String> vocabulary(Random rnd, int n) {
+        TreeSet<String> terms = new TreeSet<>();
+        while (terms.size() < n) {
+            StringBuilder sb = new StringBuilder();
+            for (int k = 0, len = 1 + rnd.nextInt(8); k < len; k++) sb.append("abcd".charAt(rnd.nextInt(4)));
+            terms.add(sb.toString());
+        }
+        return terms;
+    }
+
+    private MappedIndex write(TreeSet<String> terms, String name) throws IOException {
+        Map<String, PostingList> index = new HashMap<>();
+        int df = 1;
+        for (String t : terms) {
+            PostingList pl = new PostingList();
+            for (int d = 0; d < df; d++) pl.add(d, 1);
+            pl.computeSkips();
+            index.put(t, pl);
+            df = df % 5 + 1;
+        }
+        IndexFiles files = IndexFiles.in(Files.createDirectories(tmp.resolve(name)));
+        BinaryIndexWriter.write(index, files);
+        return MappedIndex.open(files);
+    }
+
+    // termini presenti, assenti tra due termini, prima del primo e dopo l'ultimo
+    private static List<String> probes(TreeSet<String> terms, Random rnd) {
+        List<String> out = new ArrayList<>(terms);
+        out.addAll(List.of("", "a", "aa", "b", "dddddddddd", "e", "zz"));
+        for (String t : terms) {
+            out.add(t + "a");
+            out.add(t.substring(0, t.length() - 1));
+        }
+        out.addAll(vocabulary(rnd, 50));
+        return out;
+    }
+
+    private static List<String> list(Iterator<String> it) {
+        List<String> out = new ArrayList<>();
+        it.forEachRemaining(out::add);
+        return out;
+    }
+
+    @Test
+    void lookupAndEnumerationAroundBlockBoundaries() throws IOException {
+        Random rnd = new Random(99);
+        for (int n : new int[] {1, B - 1, B, B + 1, 2 * B, 2 * B + 1, 500}) {
+            TreeSet<String> terms = vocabulary(rnd, n);
+            try (MappedIndex idx = write(terms, "n" + n)) {
+                assertEquals(n, idx.size());
+                assertEquals(new ArrayList<>(terms), list(idx.termsFrom("")), "n=" + n);
+                int expectedDf = 1;
+                for (String t : terms) {
+                    assertEquals(expectedDf, idx.df(t), t);
+                    assertEquals(expectedDf, idx.get(t).df(), t);
+                    expectedDf = expectedDf % 5 + 1;
+                }
+                for (String p : probes(terms, rnd)) {
+                    assertEquals(terms.contains(p), idx.containsKey(p), "n=" + n + " " + p);
+                    assertEquals(terms.contains(p) ? 1 : 0, Math.min(1, idx.df(p)), p);
+                    assertEquals(new ArrayList<>(terms.tailSet(p)), list(idx.termsFrom(p)), "n=" + n + " da " + p);
+                }
+            }
+        }
+    }
+
+    @Test
+    void prefixRangeAndWildcardTerms() throws IOException {
+        Random rnd = new Random(5);
+        TreeSet<String> terms = vocabulary(rnd, 300);
+        try (MappedIndex idx = write(terms, "w")) {
+            Retriever r = new Retriever(idx, Map.of(0, "a.txt"), new StopWords(Paths.get("nessuna-stoplist.txt"), 0.0));
+            for (String p : List.of("a", "ab", "abc", "d", "dd", "bca", "e")) {
+                List<String> expected = terms.stream().filter(t -> t.startsWith(p)).toList();
+                assertEquals(expected, r.prefixTerms(p, 1000), p);
+                assertEquals(expected.subList(0, Math.min(3, expected.size())), r.prefixTerms(p, 3), p);
+            }
+            for (String[] range : new String[][] {{"a", "b"}, {"ab", "abd"}, {"", "c"}, {"cc", "zz"}, {"b", "b"}}) {
+                List<String> expected = new ArrayList<>(terms.subSet(range[0], range[1]));
+                assertEquals(expected, r.rangeTerms(range[0], range[1], 1000), Arrays.toString(range));
+            }
+            for (String w : List.of("a*", "*b", "a?c*", "?", "??", "*a*d", "b*c?", "d*", "*")) {
+                Pattern re = Pattern.compile(w.replace("?", ".").replace("*", ".*"));
+                List<String> expected = terms.stream().filter(t -> re.matcher(t).matches()).toList();
+                assertEquals(expected, r.wildcardTerms(w, 1000), w);
+            }
+        }
+    }
+}
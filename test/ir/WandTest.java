@@ -0,0 +1,102 @@
+package ir;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * WAND + block-max contro la valutazione esaustiva: su una collezione casuale i primi k
+ * devono essere gli stessi del tf-idf calcolato documento per documento.
+ * Le liste sono lunghe diversi blocchi e il tf è concentrato in alcuni blocchi,
+ * così i limiti per blocco sono diversi da quello della lista e il salto per blocco scatta.
+ */
+class WandTest {
+    private static final double EPS = 1e-9;
+    // solo consonanti: lo stemmer le lascia invariate
+    private static final String[] TERMS = {"bb", "cc", "dd", "ff", "gg", "kk", "mm", "nn", "pp", "tt", "bcd", "fgk"};
+
+    @Test
+    void topKMatchesExhaustiveTfIdf() throws IOException {
+        Random rnd = new Random(20240917L);
+        int n = 5000;
+        Map<String, Map<Integer, Integer>> tfs = new TreeMap<>();
+        Map<String, PostingList> index = new HashMap<>();
+        for (int t = 0; t < TERMS.length; t++) {
+            // densità da molto rara a quasi ovunque (l'ultimo termine è in tutti i documenti: idf 0)
+            double p = (t == TERMS.length - 1) ? 1.0 : 0.005 + 0.08 * t;
+            Map<Integer, Integer> postings = new TreeMap<>();
+            PostingList pl = new PostingList();
+            for (int d = 0; d < n; d++) {
+                if (rnd.nextDouble() >= p) continue;
+                boolean hot = ((d / 400) % 5) == t % 5; // tratti di collezione con tf alti
+                int tf = hot ? 1 + rnd.nextInt(40) : 1 + (rnd.nextInt(8) == 0 ? rnd.nextInt(4) : 0);
+                postings.put(d, tf);
+                pl.add(d, tf);
+            }
+            pl.computeSkips();
+            tfs.put(TERMS[t], postings);
+            index.put(TERMS[t], pl);
+        }
+        assertTrue(index.get("tt").blockCount() > 4, "liste su più blocchi");
+
+        Map<Integer, String> docs = new HashMap<>();
+        for (int d = 0; d < n; d++) docs.put(d, "doc" + d + ".txt");
+        Retriever r = new Retriever(index, docs, new StopWords(Paths.get("nessuna-stoplist.txt"), 0.0));
+
+        for (int q = 0; q < 200; q++) {
+            int len = 1 + rnd.nextInt(5);
+            List<String> words = new ArrayList<>();
+            for (int i = 0; i < len; i++) words.add(TERMS[rnd.nextInt(TERMS.length)]);
+            if (rnd.nextInt(10) == 0) words.add("assente"); // termine fuori dal dizionario
+            String query = String.join(" ", words);
+            for (int k : new int[] {1, 10, 100}) {
+                assertSameTopK(exhaustive(tfs, new LinkedHashSet<>(words), n), r.searchWand(query, k), k, query);
+            }
+        }
+    }
+
+    // tf-idf di ogni documento, w = (1 + ln tf) * ln(N / df), ordinato per punteggio e poi docID
+    private static List<ScoredDoc> exhaustive(Map<String, Map<Integer, Integer>> tfs, Set<String> terms, int n) {
+        double[] score = new double[n];
+        boolean[] matched = new boolean[n];
+        for (String t : terms) {
+            Map<Integer, Integer> postings = tfs.get(t);
+            if (postings == null) continue;
+            double idf = Math.log((double) n / postings.size());
+            for (Map.Entry<Integer, Integer> e : postings.entrySet()) {
+                score[e.getKey()] += (1.0 + Math.log(e.getValue())) * idf;
+                matched[e.getKey()] = true;
+            }
+        }
+        List<ScoredDoc> all = new ArrayList<>();
+        for (int d = 0; d < n; d++) if (matched[d]) all.add(new ScoredDoc(d, score[d]));
+        all.sort(Retriever.WORST_FIRST.reversed());
+        return all;
+    }
+
+    // le somme sono fatte in ordine diverso: punteggi confrontati a meno di EPS, e ai pari merito
+    // sul k-esimo punteggio si accetta qualunque documento con quel punteggio
+    private static void assertSameTopK(List<ScoredDoc> expected, List<ScoredDoc> actual, int k, String query) {
+        assertEquals(Math.min(k, expected.size()), actual.size(), query);
+        Map<Integer, Double> exact = new HashMap<>();
+        for (ScoredDoc s : expected) exact.put(s.docID(), s.score());
+        for (int i = 0; i < actual.size(); i++) {
+            ScoredDoc a = actual.get(i);
+            assertEquals(expected.get(i).score(), a.score(), EPS, query + " rango " + i);
+            assertNotNull(exact.get(a.docID()), query + " doc " + a.docID());
+            assertEquals(exact.get(a.docID()), a.score(), EPS, query + " doc " + a.docID());
+        }
+        if (actual.isEmpty()) return;
+        double last = actual.get(actual.size() - 1).score();
+        Set<Integer> got = new HashSet<>();
+        for (ScoredDoc a : actual) got.add(a.docID());
+        for (ScoredDoc e : expected) {
+            if (e.score() <= last + EPS) break;
+            assertTrue(got.contains(e.docID()), query + ": manca il doc " + e.docID());
+        }
+    }
+}